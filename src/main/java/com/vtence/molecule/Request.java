@@ -14,6 +14,7 @@ import java.nio.charset.Charset;
 import java.util.*;
 
 import static com.vtence.molecule.http.HeaderNames.CONTENT_LENGTH;
+import static com.vtence.molecule.http.HeaderNames.CONTENT_TYPE;
 import static java.lang.Long.parseLong;
 
 /**
@@ -24,6 +25,9 @@ import static java.lang.Long.parseLong;
 public class Request {
 
     private final Headers headers = new Headers();
+
+    private String contentTypeHeader;
+    private ContentType contentType;
     private final Map<String, List<String>> parameters = new LinkedHashMap<String, List<String>>();
     private final Map<Object, Object> attributes = new HashMap<Object, Object>();
     private final List<BodyPart> parts = new ArrayList<BodyPart>();
@@ -369,11 +373,9 @@ public class Request {
      * @return the charset of this request or null if <code>Content-Type</code> is missing.
      */
     public Charset charset() {
-        ContentType contentType = ContentType.of(this);
-        if (contentType == null || contentType.charset() == null) {
-            return Charsets.ISO_8859_1;
-        }
-        return contentType.charset();
+        ContentType contentType = parsedContentType();
+        Charset charset = contentType != null ? contentType.charset() : null;
+        return charset != null ? charset : Charsets.ISO_8859_1;
     }
 
     /**
@@ -489,7 +491,7 @@ public class Request {
      * @return the <code>Content-Type</code> header value or null
      */
     public String contentType() {
-        ContentType contentType = ContentType.of(this);
+        ContentType contentType = parsedContentType();
         return contentType != null ? contentType.mediaType() : null;
     }
 
@@ -663,4 +665,15 @@ public class Request {
     public Map<Object, Object> attributes() {
         return Collections.unmodifiableMap(attributes);
     }
-}
\ No newline at end of file
+
+    private ContentType parsedContentType() {
+        String header = header(CONTENT_TYPE);
+        if (header == null) return null;
+        // Parse again only when the header has changed
+        if (!header.equals(contentTypeHeader)) {
+            contentType = ContentType.parse(header);
+            contentTypeHeader = header;
+        }
+        return contentType;
+    }
+}
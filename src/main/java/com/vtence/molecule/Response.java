@@ -25,6 +25,9 @@ import static java.lang.String.valueOf;
 public class Response {
     private final Headers headers = new Headers();
 
+    private String contentTypeHeader;
+    private ContentType contentType;
+
     private int statusCode = HttpStatus.OK.code;
     private String statusText = HttpStatus.OK.text;
     private Body body = BinaryBody.empty();
@@ -303,7 +306,7 @@ public class Response {
      * @param charsetName the name of the character encoding to use
      */
     public Response charset(String charsetName) {
-        ContentType contentType = ContentType.of(this);
+        ContentType contentType = parsedContentType();
         if (contentType == null) return this;
         contentType(new ContentType(contentType.type(), contentType.subType(), charsetName).toString());
         return this;
@@ -316,11 +319,9 @@ public class Response {
      * @return the charset set in the content type header or <code> ISO-8859-1</code>
      */
     public Charset charset() {
-        ContentType contentType = ContentType.of(this);
-        if (contentType == null || contentType.charset() == null) {
-            return ISO_8859_1;
-        }
-        return contentType.charset();
+        ContentType contentType = parsedContentType();
+        Charset charset = contentType != null ? contentType.charset() : null;
+        return charset != null ? charset : ISO_8859_1;
     }
 
     /**
@@ -383,4 +384,15 @@ public class Response {
     public boolean empty() {
         return size() == 0;
     }
-}
\ No newline at end of file
+
+    private ContentType parsedContentType() {
+        String header = header(CONTENT_TYPE);
+        if (header == null) return null;
+        // Parse again only when the header has changed
+        if (!header.equals(contentTypeHeader)) {
+            contentType = ContentType.parse(header);
+            contentTypeHeader = header;
+        }
+        return contentType;
+    }
+}
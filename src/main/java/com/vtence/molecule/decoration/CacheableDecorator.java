@@ -0,0 +1,15 @@
+package com.vtence.molecule.decoration;
+
+import com.vtence.molecule.Request;
+
+/**
+ * A decorator whose output depends only on the page content and on the request inputs it declares.
+ */
+public interface CacheableDecorator extends Decorator {
+
+    /**
+     * @return the request inputs used by this decorator - such as a locale or a user role - or null
+     * if the decoration does not depend on the request
+     */
+    Object varyOn(Request request);
+}
@@ -0,0 +1,218 @@
+package com.vtence.molecule.decoration;
+
+import com.vtence.molecule.Application;
+import com.vtence.molecule.Body;
+import com.vtence.molecule.BodyPart;
+import com.vtence.molecule.Request;
+import com.vtence.molecule.Response;
+import com.vtence.molecule.lib.ChunkedBody;
+import com.vtence.molecule.lib.TextBody;
+import com.vtence.molecule.templating.IntrospectableTemplate;
+import com.vtence.molecule.templating.Template;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Assembles a page from independent fragments, produced concurrently and written in order.
+ *
+ * <p>
+ * Each fragment is produced by its own template - rendered with the page content chunks - or
+ * application - which handles a copy of the page request. Each fragment is produced and rendered by a
+ * single task on the executor. Fragments are written as soon as they and all the fragments that precede
+ * them are rendered, so a page takes as long to render as its slowest fragment.
+ * </p>
+ */
+public class Composite implements IntrospectableDecorator {
+
+    private interface Fragment {
+        Set<String> chunks() throws IOException;
+
+        Body produce(Request request, Map<String, String> content) throws Exception;
+    }
+
+    private final ExecutorService executor;
+    private final List<Fragment> fragments = new ArrayList<Fragment>();
+
+    public Composite(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    public Composite template(final Template template) {
+        fragments.add(new Fragment() {
+            public Set<String> chunks() throws IOException {
+                if (!(template instanceof IntrospectableTemplate)) return null;
+                return ((IntrospectableTemplate) template).variables();
+            }
+
+            public Body produce(Request request, Map<String, String> content) throws Exception {
+                return template.render(content);
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Adds a fragment produced by an application. Each application fragment handles its own copy of the
+     * page request, without its body. A fragment that does not respond with a success status fails the page.
+     */
+    public Composite application(final Application application) {
+        fragments.add(new Fragment() {
+            public Set<String> chunks() {
+                return Collections.emptySet();
+            }
+
+            public Body produce(Request request, Map<String, String> content) throws Exception {
+                Response response = new Response();
+                application.handle(request, response);
+                int status = response.statusCode();
+                if (status < 200 || status >= 300) {
+                    response.body().close();
+                    throw new IOException("Page fragment failed with status " + status);
+                }
+                return response.body();
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Adds a chunk of the page content, e.g. the page body.
+     */
+    public Composite chunk(final String name) {
+        fragments.add(new Fragment() {
+            public Set<String> chunks() {
+                return Collections.singleton(name);
+            }
+
+            public Body produce(Request request, Map<String, String> content) throws Exception {
+                String chunk = content.get(name);
+                return TextBody.text(chunk != null ? chunk : "");
+            }
+        });
+        return this;
+    }
+
+    public Set<String> chunks() throws IOException {
+        Set<String> chunks = new HashSet<String>();
+        for (Fragment fragment : fragments) {
+            Set<String> read = fragment.chunks();
+            if (read == null) return null;
+            chunks.addAll(read);
+        }
+        return chunks;
+    }
+
+    public Body merge(Request request, Map<String, String> content) throws IOException {
+        return new CompositeBody(request, content);
+    }
+
+    private class CompositeBody extends ChunkedBody {
+        private final Request request;
+        private final Map<String, String> content;
+        private final List<Future<byte[]>> rendered = new ArrayList<Future<byte[]>>();
+
+        public CompositeBody(Request request, Map<String, String> content) {
+            this.request = request;
+            this.content = content;
+        }
+
+        public void writeTo(OutputStream out, Charset charset) throws IOException {
+            for (Fragment fragment : fragments) {
+                // Requests are not thread safe, so every fragment gets its own
+                rendered.add(executor.submit(render(fragment, copy(request), charset)));
+            }
+
+            try {
+                for (Future<byte[]> fragment : rendered) {
+                    out.write(await(fragment));
+                    out.flush();
+                }
+            } finally {
+                cancel();
+            }
+        }
+
+        private Callable<byte[]> render(final Fragment fragment, final Request request, final Charset charset) {
+            return new Callable<byte[]>() {
+                public byte[] call() throws Exception {
+                    Body body = fragment.produce(request, content);
+                    try {
+                        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                        body.writeTo(buffer, charset);
+                        return buffer.toByteArray();
+                    } finally {
+                        body.close();
+                    }
+                }
+            };
+        }
+
+        public void close() throws IOException {
+            cancel();
+        }
+
+        private void cancel() {
+            for (Future<byte[]> fragment : rendered) {
+                fragment.cancel(true);
+            }
+        }
+    }
+
+    private static Request copy(Request request) {
+        Request copy = new Request()
+                .uri(request.uri())
+                .path(request.path())
+                .remoteIp(request.remoteIp())
+                .remoteHost(request.remoteHost())
+                .remotePort(request.remotePort())
+                .protocol(request.protocol())
+                .secure(request.secure())
+                .timestamp(request.timestamp())
+                .method(request.method());
+        for (String name : request.headerNames()) {
+            for (String value : request.headers(name)) {
+                copy.addHeader(name, value);
+            }
+        }
+        for (Map.Entry<String, List<String>> parameter : request.allParameters().entrySet()) {
+            for (String value : parameter.getValue()) {
+                copy.addParameter(parameter.getKey(), value);
+            }
+        }
+        for (Map.Entry<Object, Object> attribute : request.attributes().entrySet()) {
+            copy.attribute(attribute.getKey(), attribute.getValue());
+        }
+        for (BodyPart part : request.parts()) {
+            copy.addPart(part);
+        }
+        return copy;
+    }
+
+    private static <T> T await(Future<T> result) throws IOException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while assembling page");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException("Failed to render page fragment", cause);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.vtence.molecule.decoration;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.CoderResult;
+
+/**
+ * Decodes the bytes written to this stream and writes the resulting characters to a writer.
+ */
+class DecodingOutputStream extends OutputStream {
+    private static final int SIZE_8K = 8 * 1024;
+
+    private final Writer out;
+    private final CharsetDecoder decoder;
+    private final ByteBuffer bytes = ByteBuffer.allocate(SIZE_8K);
+    private final CharBuffer chars = CharBuffer.allocate(SIZE_8K);
+
+    public DecodingOutputStream(Writer out, Charset charset) {
+        this.out = out;
+        this.decoder = charset.newDecoder()
+                              .onMalformedInput(CodingErrorAction.REPLACE)
+                              .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        while (length > 0) {
+            int count = Math.min(bytes.remaining(), length);
+            bytes.put(buffer, offset, count);
+            offset += count;
+            length -= count;
+            decode(false);
+        }
+    }
+
+    public void close() throws IOException {
+        decode(true);
+        while (decoder.flush(chars).isOverflow()) {
+            drain();
+        }
+        drain();
+        out.close();
+    }
+
+    private void decode(boolean endOfInput) throws IOException {
+        bytes.flip();
+        CoderResult result;
+        do {
+            result = decoder.decode(bytes, chars, endOfInput);
+            drain();
+        } while (result.isOverflow());
+        bytes.compact();
+    }
+
+    private void drain() throws IOException {
+        chars.flip();
+        out.write(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
+        chars.clear();
+    }
+}
@@ -0,0 +1,233 @@
+package com.vtence.molecule.decoration;
+
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Extracts the head, title, body and meta data of an html document in a single pass, as the document
+ * is written.
+ *
+ * <p>
+ * Only the extracted chunks are kept in memory, the rest of the document is discarded as it is scanned.
+ * </p>
+ */
+class HtmlScanner extends Writer {
+
+    private enum State { OUTSIDE, HEAD, TITLE, BODY }
+
+    private final Map<String, String> chunks = new HashMap<String, String>();
+    private final StringBuilder tag = new StringBuilder();
+    private final StringBuilder head = new StringBuilder();
+    private final StringBuilder title = new StringBuilder();
+    private final StringBuilder body = new StringBuilder();
+
+    private State state = State.OUTSIDE;
+    private boolean lessThan;
+    private boolean inTag;
+    private char quote;
+    private boolean headSeen;
+    private boolean titleSeen;
+    private boolean bodySeen;
+    private boolean skipNewline;
+    private boolean skipWhitespace;
+    private String titleTag;
+
+    public Map<String, String> chunks() {
+        return chunks;
+    }
+
+    public void write(char[] buffer, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            scan(buffer[i]);
+        }
+    }
+
+    public void flush() {
+    }
+
+    public void close() {
+        if (lessThan) {
+            lessThan = false;
+            text('<');
+        }
+        if (inTag) {
+            inTag = false;
+            text(tag);
+        }
+    }
+
+    private void scan(char c) {
+        if (lessThan) {
+            lessThan = false;
+            if (opensTag(c)) {
+                startTag(c);
+                return;
+            }
+            text('<');
+        }
+
+        if (inTag && quote != 0) {
+            tag.append(c);
+            if (c == quote) quote = 0;
+        } else if (c == '<') {
+            // A stray < in text is not a tag, and a tag cannot contain another one
+            if (inTag) {
+                inTag = false;
+                text(tag);
+            }
+            lessThan = true;
+        } else if (inTag) {
+            tag.append(c);
+            if (c == '>') {
+                inTag = false;
+                tag(tag.toString());
+            } else if ((c == '"' || c == '\'') && tag.charAt(tag.length() - 2) == '=') {
+                quote = c;
+            }
+        } else {
+            text(c);
+        }
+    }
+
+    private boolean opensTag(char c) {
+        return Character.isLetter(c) || c == '/' || c == '!';
+    }
+
+    private void startTag(char c) {
+        inTag = true;
+        quote = 0;
+        skipNewline = false;
+        skipWhitespace = false;
+        tag.setLength(0);
+        tag.append('<').append(c);
+    }
+
+    private void text(char c) {
+        if (skipWhitespace) {
+            if (Character.isWhitespace(c)) return;
+            skipWhitespace = false;
+        }
+        if (skipNewline) {
+            skipNewline = false;
+            if (c == '\n') return;
+        }
+        StringBuilder capture = capture();
+        if (capture != null) capture.append(c);
+    }
+
+    private void text(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            text(text.charAt(i));
+        }
+    }
+
+    private StringBuilder capture() {
+        switch (state) {
+            case HEAD: return head;
+            case TITLE: return title;
+            case BODY: return body;
+            default: return null;
+        }
+    }
+
+    private void tag(String tag) {
+        String name = nameOf(tag);
+        if (name.equals("meta")) addMetaData(tag);
+
+        switch (state) {
+            case OUTSIDE:
+                if (name.equals("head") && !headSeen) {
+                    headSeen = true;
+                    enter(State.HEAD);
+                } else if (name.equals("body") && !bodySeen) {
+                    bodySeen = true;
+                    enter(State.BODY);
+                }
+                break;
+            case HEAD:
+                if (name.equals("title") && !titleSeen) {
+                    titleTag = tag;
+                    state = State.TITLE;
+                } else if (name.equals("/head")) {
+                    leave("head", head);
+                } else {
+                    head.append(tag);
+                }
+                break;
+            case TITLE:
+                if (name.equals("/title")) {
+                    titleSeen = true;
+                    chunks.put("title", title.toString().trim());
+                    state = State.HEAD;
+                    skipWhitespace = true;
+                } else if (name.equals("/head")) {
+                    head.append(titleTag).append(title);
+                    leave("head", head);
+                } else {
+                    title.append(tag);
+                }
+                break;
+            case BODY:
+                if (name.equals("/body")) {
+                    leave("body", body);
+                } else {
+                    body.append(tag);
+                }
+                break;
+        }
+    }
+
+    private void enter(State state) {
+        this.state = state;
+        skipNewline = true;
+    }
+
+    private void leave(String chunk, StringBuilder content) {
+        int length = content.length();
+        if (length > 0 && content.charAt(length - 1) == '\n') content.setLength(length - 1);
+        chunks.put(chunk, content.toString());
+        state = State.OUTSIDE;
+    }
+
+    private String nameOf(String tag) {
+        int end = 1;
+        if (end < tag.length() && tag.charAt(end) == '/') end++;
+        while (end < tag.length() && Character.isLetterOrDigit(tag.charAt(end))) end++;
+        return tag.substring(1, end).toLowerCase();
+    }
+
+    private void addMetaData(String tag) {
+        String name = null;
+        String content = null;
+        int pos = nameOf(tag).length() + 1;
+        while (pos < tag.length()) {
+            while (pos < tag.length() && isSeparator(tag.charAt(pos))) pos++;
+            int start = pos;
+            while (pos < tag.length() && !isSeparator(tag.charAt(pos)) && tag.charAt(pos) != '=') pos++;
+            String attribute = tag.substring(start, pos).toLowerCase();
+            if (pos >= tag.length() || tag.charAt(pos) != '=') continue;
+
+            pos++;
+            String value;
+            if (pos < tag.length() && (tag.charAt(pos) == '"' || tag.charAt(pos) == '\'')) {
+                int close = tag.indexOf(tag.charAt(pos), pos + 1);
+                if (close == -1) break;
+                value = tag.substring(pos + 1, close);
+                pos = close + 1;
+            } else {
+                start = pos;
+                while (pos < tag.length() && !isSeparator(tag.charAt(pos))) pos++;
+                value = tag.substring(start, pos);
+            }
+
+            if (attribute.equals("name")) name = value;
+            if (attribute.equals("content")) content = value;
+        }
+        if (name != null && content != null) chunks.put(name, content);
+    }
+
+    private boolean isSeparator(char c) {
+        return Character.isWhitespace(c) || c == '/' || c == '>';
+    }
+}
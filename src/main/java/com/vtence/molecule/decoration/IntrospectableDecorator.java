@@ -0,0 +1,16 @@
+package com.vtence.molecule.decoration;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * A decorator that can tell, without merging, which chunks of the page content it reads.
+ */
+public interface IntrospectableDecorator extends Decorator {
+
+    /**
+     * @return the names of the content chunks read by the decorator, or null if they cannot be known
+     * before merging
+     */
+    Set<String> chunks() throws IOException;
+}
@@ -2,18 +2,29 @@ package com.vtence.molecule.decoration;
 
 import com.vtence.molecule.Body;
 import com.vtence.molecule.Request;
+import com.vtence.molecule.templating.IntrospectableTemplate;
 import com.vtence.molecule.templating.Template;
 
 import java.io.IOException;
 import java.util.Map;
+import java.util.Set;
 
-public class LayoutTemplate implements Decorator {
+public class LayoutTemplate implements CacheableDecorator, IntrospectableDecorator {
     private final Template template;
 
     public LayoutTemplate(Template template) {
         this.template = template;
     }
 
+    public Object varyOn(Request request) {
+        return null;
+    }
+
+    public Set<String> chunks() throws IOException {
+        if (!(template instanceof IntrospectableTemplate)) return null;
+        return ((IntrospectableTemplate) template).variables();
+    }
+
     public Body merge(Request request, Map<String, String> content) throws IOException {
         return template.render(content);
     }
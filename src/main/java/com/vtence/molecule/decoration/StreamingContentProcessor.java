@@ -0,0 +1,16 @@
+package com.vtence.molecule.decoration;
+
+import com.vtence.molecule.Body;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+/**
+ * A content processor that extracts content chunks as the content is written, without first
+ * buffering the whole content.
+ */
+public interface StreamingContentProcessor extends ContentProcessor {
+
+    Map<String, String> process(Body content, Charset charset) throws IOException;
+}
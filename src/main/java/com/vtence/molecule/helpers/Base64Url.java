@@ -0,0 +1,73 @@
+package com.vtence.molecule.helpers;
+
+import java.util.Arrays;
+
+/**
+ * Base64 encoding using the URL and filename safe alphabet of RFC 4648, without padding.
+ */
+public final class Base64Url {
+
+    private static final char[] alphabet =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+    private static final int[] values = new int[128];
+
+    static {
+        Arrays.fill(values, -1);
+        for (int i = 0; i < alphabet.length; i++) values[alphabet[i]] = i;
+    }
+
+    public static String encode(byte[] bytes) {
+        char[] text = new char[(bytes.length * 4 + 2) / 3];
+        int pos = 0;
+        int i = 0;
+        for (; i + 2 < bytes.length; i += 3) {
+            int bits = (bytes[i] & 0xFF) << 16 | (bytes[i + 1] & 0xFF) << 8 | (bytes[i + 2] & 0xFF);
+            text[pos++] = alphabet[bits >>> 18];
+            text[pos++] = alphabet[bits >>> 12 & 0x3F];
+            text[pos++] = alphabet[bits >>> 6 & 0x3F];
+            text[pos++] = alphabet[bits & 0x3F];
+        }
+        int remaining = bytes.length - i;
+        if (remaining > 0) {
+            int bits = (bytes[i] & 0xFF) << 16 | (remaining == 2 ? (bytes[i + 1] & 0xFF) << 8 : 0);
+            text[pos++] = alphabet[bits >>> 18];
+            text[pos++] = alphabet[bits >>> 12 & 0x3F];
+            if (remaining == 2) text[pos] = alphabet[bits >>> 6 & 0x3F];
+        }
+        return new String(text);
+    }
+
+    public static byte[] decode(String text) {
+        int length = text.length();
+        if (length % 4 == 1) throw new IllegalArgumentException("Invalid base64 length: " + length);
+        byte[] bytes = new byte[length * 3 / 4];
+        int pos = 0;
+        int bits = 0;
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            bits = bits << 6 | valueOf(text.charAt(i));
+            if (++count == 4) {
+                bytes[pos++] = (byte) (bits >>> 16);
+                bytes[pos++] = (byte) (bits >>> 8);
+                bytes[pos++] = (byte) bits;
+                bits = 0;
+                count = 0;
+            }
+        }
+        if (count == 2) {
+            bytes[pos] = (byte) (bits >>> 4);
+        } else if (count == 3) {
+            bytes[pos++] = (byte) (bits >>> 10);
+            bytes[pos] = (byte) (bits >>> 2);
+        }
+        return bytes;
+    }
+
+    private static int valueOf(char c) {
+        int value = c < values.length ? values[c] : -1;
+        if (value < 0) throw new IllegalArgumentException("Invalid base64 character: " + c);
+        return value;
+    }
+
+    Base64Url() {}
+}
@@ -0,0 +1,112 @@
+package com.vtence.molecule.http;
+
+import com.vtence.molecule.Request;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static com.vtence.molecule.http.HeaderNames.ACCEPT;
+
+/**
+ * Negotiates the media type of a response from the media ranges accepted by the client.
+ */
+public class Accept {
+    private static final BoundedCache<String, Accept> parsed = new BoundedCache<String, Accept>(1000) {
+        protected Accept compute(String header) {
+            return new Accept(header);
+        }
+    };
+
+    private final List<Header.Value> ranges = new ArrayList<Header.Value>();
+    private final BoundedCache<List<String>, String> selections = new BoundedCache<List<String>, String>(16) {
+        protected String compute(List<String> candidates) {
+            return negotiate(candidates);
+        }
+    };
+
+    /**
+     * Reads the media types accepted by the client. Requests with the same header share the same instance,
+     * which remembers the media types it selects.
+     */
+    public static Accept of(Request request) {
+        String header = request.header(ACCEPT);
+        return parsed.get(header != null ? header : "");
+    }
+
+    public Accept(String header) {
+        this(new Header(header));
+    }
+
+    public Accept(Header header) {
+        for (Header.Value range : header.all()) {
+            if (!range.value().isEmpty()) ranges.add(range);
+        }
+    }
+
+    /**
+     * @return the acceptable media ranges, in order of preference
+     */
+    public List<String> list() {
+        List<String> acceptable = new ArrayList<String>();
+        for (Header.Value range : ranges) {
+            if (range.acceptable()) acceptable.add(range.value());
+        }
+        return Collections.unmodifiableList(acceptable);
+    }
+
+    public String selectBest(String... candidates) {
+        return selectBest(Arrays.asList(candidates));
+    }
+
+    /**
+     * Selects the candidate media type the client prefers. When the client likes several candidates
+     * equally, the first one wins. If the client does not say what it accepts, any media type will do.
+     *
+     * @return the preferred media type, or null if none of the candidates is acceptable
+     */
+    public String selectBest(Collection<String> candidates) {
+        return selections.get(new ArrayList<String>(candidates));
+    }
+
+    private String negotiate(List<String> candidates) {
+        if (ranges.isEmpty()) return candidates.isEmpty() ? null : candidates.get(0);
+
+        String best = null;
+        double bestQuality = 0;
+        for (String candidate : candidates) {
+            double quality = qualityOf(mediaTypeOf(candidate));
+            if (quality > bestQuality) {
+                best = candidate;
+                bestQuality = quality;
+            }
+        }
+        return best;
+    }
+
+    private double qualityOf(String mediaType) {
+        int slash = mediaType.indexOf('/');
+        String type = slash > 0 ? mediaType.substring(0, slash) : mediaType;
+
+        Header.Value match = null;
+        int specificity = 0;
+        for (Header.Value range : ranges) {
+            String value = range.value().toLowerCase();
+            int score = value.equals(mediaType) ? 3
+                    : value.equals(type + "/*") ? 2
+                    : value.equals("*/*") ? 1 : 0;
+            if (score > specificity) {
+                match = range;
+                specificity = score;
+            }
+        }
+        return match != null ? match.quality() : 0;
+    }
+
+    private static String mediaTypeOf(String candidate) {
+        int semicolon = candidate.indexOf(';');
+        return (semicolon >= 0 ? candidate.substring(0, semicolon) : candidate).trim().toLowerCase();
+    }
+}
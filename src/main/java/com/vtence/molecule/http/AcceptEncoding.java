@@ -10,11 +10,26 @@ import java.util.List;
 import static com.vtence.molecule.http.HeaderNames.ACCEPT_ENCODING;
 
 public class AcceptEncoding {
+    private static final BoundedCache<String, AcceptEncoding> parsed = new BoundedCache<String, AcceptEncoding>(1000) {
+        protected AcceptEncoding compute(String header) {
+            return new AcceptEncoding(header);
+        }
+    };
+
     private final List<Header.Value> values;
+    private final BoundedCache<List<String>, String> selections = new BoundedCache<List<String>, String>(16) {
+        protected String compute(List<String> candidates) {
+            return negotiate(candidates);
+        }
+    };
 
+    /**
+     * Reads the encodings accepted by the client. Requests with the same header share the same instance,
+     * which remembers the encodings it selects.
+     */
     public static AcceptEncoding of(Request request) {
         String header = request.header(ACCEPT_ENCODING);
-        return header != null ? new AcceptEncoding(header) : new AcceptEncoding("");
+        return parsed.get(header != null ? header : "");
     }
 
     public AcceptEncoding(String header) {
@@ -30,6 +45,10 @@ public class AcceptEncoding {
     }
 
     public String selectBestEncoding(Collection<String> candidates) {
+        return selections.get(new ArrayList<String>(candidates));
+    }
+
+    private String negotiate(Collection<String> candidates) {
         List<Header.Value> contentCodings = explicitContentCodings(candidates);
         List<String> acceptableEncodings = filterAcceptable(contentCodings);
         for (String acceptable : acceptableEncodings) {
@@ -7,11 +7,26 @@ import java.util.*;
 import static com.vtence.molecule.http.HeaderNames.ACCEPT_LANGUAGE;
 
 public class AcceptLanguage {
+    private static final BoundedCache<String, AcceptLanguage> parsed = new BoundedCache<String, AcceptLanguage>(1000) {
+        protected AcceptLanguage compute(String header) {
+            return new AcceptLanguage(header);
+        }
+    };
+
     private final List<Locale> locales = new ArrayList<Locale>();
+    private final BoundedCache<List<Locale>, Locale> selections = new BoundedCache<List<Locale>, Locale>(16) {
+        protected Locale compute(List<Locale> candidates) {
+            return negotiate(candidates);
+        }
+    };
 
+    /**
+     * Reads the languages accepted by the client. Requests with the same header share the same instance,
+     * which remembers the locales it selects.
+     */
     public static AcceptLanguage of(Request request) {
         String header = request.header(ACCEPT_LANGUAGE);
-        return header != null ? new AcceptLanguage(header) : new AcceptLanguage("");
+        return parsed.get(header != null ? header : "");
     }
 
     public AcceptLanguage(String header) {
@@ -37,6 +52,10 @@ public class AcceptLanguage {
     }
 
     public Locale selectBest(Collection<Locale> candidates) {
+        return selections.get(new ArrayList<Locale>(candidates));
+    }
+
+    private Locale negotiate(Collection<Locale> candidates) {
         for (Locale accepted : list()) {
             if (candidates.contains(accepted)) return accepted;
             if (candidates.contains(languageOf(accepted))) return languageOf(accepted);
@@ -0,0 +1,37 @@
+package com.vtence.molecule.http;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Memoizes computations safely across threads. When the cache is full it starts over, which suits
+ * the few distinct values found in request headers.
+ */
+abstract class BoundedCache<K, V> {
+    private static final Object NONE = new Object();
+
+    private final int capacity;
+    private final ConcurrentMap<K, Object> entries = new ConcurrentHashMap<K, Object>();
+
+    public BoundedCache(int capacity) {
+        this.capacity = capacity;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        Object cached = entries.get(key);
+        if (cached == null) {
+            V value = compute(key);
+            if (entries.size() >= capacity) entries.clear();
+            entries.put(key, value != null ? value : NONE);
+            return value;
+        }
+        return cached != NONE ? (V) cached : null;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    protected abstract V compute(K key);
+}
@@ -12,9 +12,16 @@ public class ContentType {
     private static final int TYPE = 0;
     private static final int SUB_TYPE = 1;
 
+    private static final BoundedCache<String, ContentType> parsed = new BoundedCache<String, ContentType>(256) {
+        protected ContentType compute(String header) {
+            return from(new Header(header));
+        }
+    };
+
     private final String type;
     private final String subType;
     private final String charset;
+    private volatile Charset resolvedCharset;
 
     public ContentType(String type, String subType, String charset) {
         this.type = type;
@@ -30,8 +37,12 @@ public class ContentType {
         return parse(request.header(CONTENT_TYPE));
     }
 
+    /**
+     * Parses a content type header. Content types are immutable, so the same instance is returned for
+     * headers that are seen often.
+     */
     public static ContentType parse(String header) {
-        return header != null ? from(new Header(header)) : null;
+        return header != null ? parsed.get(header) : null;
     }
 
     public static ContentType from(Header header) {
@@ -65,7 +76,9 @@ public class ContentType {
     }
 
     public Charset charset() {
-        return charset != null ? Charset.forName(charset) : null;
+        if (charset == null) return null;
+        if (resolvedCharset == null) resolvedCharset = Charset.forName(charset);
+        return resolvedCharset;
     }
 
     public String charsetName() {
@@ -2,96 +2,144 @@ package com.vtence.molecule.http;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class CookieDecoder {
 
-    private static final Pattern NAME_VALUE_PAIR = Pattern.compile("(?:\\s|[;,])*([^;=]+)(?:=([\"]((?:\\\\\"|[^\"])*)[\"]|[^;,]*))?");
-
-    private static final int NAME = 1;
-    private static final int VALUE = 2;
-
     private static final String VERSION = "$Version";
     private static final String PATH = "$Path";
     private static final String DOMAIN = "$Domain";
 
     public List<Cookie> decode(String header) {
         List<Cookie> cookies = new ArrayList<Cookie>();
-
-        Matcher pair = NAME_VALUE_PAIR.matcher(header);
-
-        int pos = 0;
-        int version = 1;
-
-        if (pair.find()) {
-            if (name(pair).equals(VERSION)) {
-                pos = pair.end();
-                version = version(pair);
-            }
+        Pairs pairs = new Pairs(header);
+        int version = version(pairs);
+        while (pairs.next()) {
+            cookies.add(cookie(pairs, pairs.name(), version));
         }
+        return cookies;
+    }
 
-        while (pair.find(pos)) {
-            pos = pair.end();
-
-            Cookie cookie = new Cookie(name(pair), value(pair));
-            cookie.version(version);
-
-            if (pair.find(pos)) {
-                if (name(pair).equals(PATH)) {
-                    pos = pair.end();
-                    cookie.path(value(pair));
-                }
-            }
-
-            if (pair.find(pos)) {
-                if (name(pair).equals(DOMAIN)) {
-                    pos = pair.end();
-                    cookie.domain(value(pair));
-                }
-            }
-
-            cookies.add(cookie);
+    /**
+     * Decodes only the cookie with the given name, skipping over the others. If the cookie appears
+     * more than once, the last one wins.
+     *
+     * @return the cookie or null if the header does not contain that cookie
+     */
+    public Cookie find(String header, String name) {
+        Pairs pairs = new Pairs(header);
+        int version = version(pairs);
+        Cookie found = null;
+        while (pairs.next()) {
+            if (pairs.named(name)) found = cookie(pairs, name, version);
         }
-        return cookies;
+        return found;
     }
 
-    private int version(Matcher pair) {
+    private int version(Pairs pairs) {
+        if (!pairs.peek(VERSION)) return 1;
         try {
-            return Integer.parseInt(value(pair));
+            return Integer.parseInt(pairs.value());
         } catch (Exception e) {
             return 1;
         }
     }
 
-    private String name(Matcher pair) {
-        return pair.group(NAME);
+    private Cookie cookie(Pairs pairs, String name, int version) {
+        Cookie cookie = new Cookie(name, pairs.value());
+        cookie.version(version);
+        if (pairs.peek(PATH)) cookie.path(pairs.value());
+        if (pairs.peek(DOMAIN)) cookie.domain(pairs.value());
+        return cookie;
     }
 
-    private String value(Matcher pair) {
-        return unescape(unquote(pair.group(VALUE)));
-    }
+    /**
+     * Scans name/value pairs separated by semicolons or commas. Values can be quoted, in which case
+     * separators and escaped quotes may appear within the quotes.
+     */
+    private static class Pairs {
+        private final String header;
+        private int pos;
+        private int nameStart, nameEnd;
+        private int valueStart = -1, valueEnd;
+
+        public Pairs(String header) {
+            this.header = header;
+        }
+
+        public boolean next() {
+            int length = header.length();
+            while (pos < length) {
+                char c = header.charAt(pos);
+                if (c == '=' || c == ';' || c == ',' || Character.isWhitespace(c)) pos++;
+                else break;
+            }
+            if (pos == length) return false;
 
-    private String unescape(String text) {
-        if (text == null) return null;
+            nameStart = pos;
+            while (pos < length && header.charAt(pos) != ';' && header.charAt(pos) != '=') pos++;
+            nameEnd = pos;
 
-        return text.replace("\\\"", "\"").replace("\\\\", "\\");
-    }
+            valueStart = -1;
+            if (pos < length && header.charAt(pos) == '=') {
+                valueStart = ++pos;
+                pos = pos < length && header.charAt(pos) == '"' ? endOfQuotedValue(pos) : endOfValue(pos);
+                valueEnd = pos;
+            }
+            return true;
+        }
+
+        /**
+         * Moves to the next pair only if it has the given name.
+         */
+        public boolean peek(String name) {
+            int start = pos;
+            if (next() && named(name)) return true;
+            pos = start;
+            return false;
+        }
 
-    private String unquote(String text) {
-        if (text == null) return null;
+        public boolean named(String name) {
+            return nameEnd - nameStart == name.length() && header.startsWith(name, nameStart);
+        }
 
-        if (text.length() > 2 && firstChar(text) == '"' && lastChar(text) == '"') {
-            return text.substring(1, text.length() - 1);
+        public String name() {
+            return header.substring(nameStart, nameEnd);
         }
-        return text;
-    }
 
-    private char lastChar(String text) {
-        return text.charAt(text.length() - 1);
-    }
+        public String value() {
+            return valueStart < 0 ? null : unescape(unquote(header.substring(valueStart, valueEnd)));
+        }
 
-    private char firstChar(String text) {
-        return text.charAt(0);
+        private int endOfValue(int from) {
+            int end = from;
+            while (end < header.length() && header.charAt(end) != ';' && header.charAt(end) != ',') end++;
+            return end;
+        }
+
+        private int endOfQuotedValue(int quote) {
+            int lastEscapedQuote = -1;
+            for (int i = quote + 1; i < header.length(); i++) {
+                char c = header.charAt(i);
+                if (c == '\\' && i + 1 < header.length() && header.charAt(i + 1) == '"') {
+                    lastEscapedQuote = ++i;
+                } else if (c == '"') {
+                    return i + 1;
+                }
+            }
+            // Without a closing quote, the last escaped quote closes the value
+            return lastEscapedQuote >= 0 ? lastEscapedQuote + 1 : endOfValue(quote);
+        }
+
+        private static String unescape(String text) {
+            if (text.indexOf('\\') < 0) return text;
+            return text.replace("\\\"", "\"").replace("\\\\", "\\");
+        }
+
+        private static String unquote(String text) {
+            if (text.length() > 2 && text.charAt(0) == '"' && text.charAt(text.length() - 1) == '"') {
+                return text.substring(1, text.length() - 1);
+            }
+            return text;
+        }
     }
 }
@@ -5,20 +5,9 @@ import com.vtence.molecule.helpers.Joiner;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.regex.Pattern;
 
 public class Header {
 
-    private static final String ZERO_OR_EVEN_NUMBER_OF_QUOTES_AHEAD = "(?=([^\"]*\"[^\"]*\")*[^\"]*$)";
-
-    private static Pattern ignoringQuotedStrings(String delimiter) {
-        return Pattern.compile("\\s*" + delimiter + "\\s*" + ZERO_OR_EVEN_NUMBER_OF_QUOTES_AHEAD);
-    }
-
-    private static final Pattern VALUES_DELIMITER = ignoringQuotedStrings(",");
-    private static final Pattern TOKENS_DELIMITER = ignoringQuotedStrings(";");
-    private static final Pattern NAME_VALUE_DELIMITER = ignoringQuotedStrings("=");
-
     private final List<Value> values;
 
     public Header(String header) {
@@ -41,30 +30,70 @@ public class Header {
         return values;
     }
 
+    /**
+     * Splits values on commas and parameters on semicolons in a single pass, ignoring delimiters that
+     * appear within quoted strings.
+     */
     private List<Value> parseValues(String header) {
         List<Value> values = new ArrayList<Value>();
-        for (String value : VALUES_DELIMITER.split(header)) {
-            String[] tokens = TOKENS_DELIMITER.split(value);
-            values.add(new Value(value(tokens), parameters(tokens)));
+        List<String> tokens = new ArrayList<String>();
+        int length = header.length();
+        int tokenStart = 0;
+        boolean quoted = false;
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? header.charAt(i) : ',';
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (!quoted || i == length) {
+                if (c == ';' || c == ',') {
+                    tokens.add(header.substring(tokenStart, i).trim());
+                    tokenStart = i + 1;
+                }
+                if (c == ',') {
+                    dropTrailingBlanks(tokens);
+                    values.add(new Value(tokens.isEmpty() ? "" : tokens.get(0), parameters(tokens)));
+                    tokens.clear();
+                }
+            }
         }
+        // A header such as "a, " holds a single value
+        while (values.size() > 1 && isBlank(values.get(values.size() - 1))) values.remove(values.size() - 1);
         return values;
     }
 
-    private String value(String[] tokens) {
-        return tokens[0];
+    private List<Parameter> parameters(List<String> tokens) {
+        if (tokens.size() <= 1) return new ArrayList<Parameter>();
+        List<Parameter> pairs = new ArrayList<Parameter>(tokens.size() - 1);
+        for (int i = 1; i < tokens.size(); i++) {
+            pairs.add(parameter(tokens.get(i)));
+        }
+        return pairs;
+    }
+
+    private Parameter parameter(String token) {
+        int equal = unquotedIndexOf(token, '=', 0);
+        if (equal < 0) return new Parameter(token, null);
+        int next = unquotedIndexOf(token, '=', equal + 1);
+        String value = token.substring(equal + 1, next < 0 ? token.length() : next).trim();
+        return new Parameter(token.substring(0, equal), value.isEmpty() && next < 0 ? null : value);
     }
 
-    private List<Parameter> parameters(String[] tokens) {
-        List<Parameter> pairs = new ArrayList<Parameter>();
-        for (int i = 1; i < tokens.length; i++) {
-            String token = tokens[i];
-            String[] parts = NAME_VALUE_DELIMITER.split(token);
-            String attribute = parts[0];
-            String value = parts.length > 1 ? parts[1] : null;
-            pairs.add(new Parameter(attribute, value));
+    private static int unquotedIndexOf(String text, char delimiter, int from) {
+        boolean quoted = false;
+        for (int i = from; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') quoted = !quoted;
+            else if (c == delimiter && !quoted) return i;
         }
+        return -1;
+    }
 
-        return pairs;
+    private static void dropTrailingBlanks(List<String> tokens) {
+        while (!tokens.isEmpty() && tokens.get(tokens.size() - 1).isEmpty()) tokens.remove(tokens.size() - 1);
+    }
+
+    private static boolean isBlank(Value value) {
+        return value.value().isEmpty() && value.parameters().isEmpty();
     }
 
     public String toString() {
@@ -72,13 +101,21 @@ public class Header {
     }
 
     private List<Value> sortByQuality(List<Value> entries) {
-        Collections.sort(entries);
+        for (int i = 1; i < entries.size(); i++) {
+            if (entries.get(i - 1).compareTo(entries.get(i)) > 0) {
+                Collections.sort(entries);
+                break;
+            }
+        }
         return entries;
     }
 
     public static class Value implements Comparable<Value> {
         private final String value;
-        private final double quality;
+        private static final int MAX_QUALITY = 1000;
+
+        // In thousandths, as per the three decimals allowed for qvalues
+        private final int quality;
         private final List<Parameter> parameters;
 
         public Value(String value, List<Parameter> parameters) {
@@ -96,7 +133,7 @@ public class Header {
         }
 
         public double quality() {
-            return quality;
+            return quality / (double) MAX_QUALITY;
         }
 
         public boolean acceptable() {
@@ -114,21 +151,43 @@ public class Header {
             return null;
         }
 
-        private double parseQuality() {
-            if (parameters.isEmpty()) return 1.0;
+        private int parseQuality() {
+            if (parameters.isEmpty()) return MAX_QUALITY;
 
             Parameter first = parameters.get(0);
-            if (!first.is("q") || first.value() == null) return 1.0;
+            if (!first.is("q") || first.value() == null) return MAX_QUALITY;
 
-            try {
-                return Double.parseDouble(first.value());
-            } catch (NumberFormatException e) {
-                return 1.0;
+            return parseQuality(first.value());
+        }
+
+        private static int parseQuality(String text) {
+            int length = text.length();
+            int pos = 0;
+            int units = 0;
+            while (pos < length && isDigit(text.charAt(pos))) {
+                units = Math.min(units * 10 + text.charAt(pos++) - '0', MAX_QUALITY);
+            }
+            if (pos == 0 && (length == 0 || text.charAt(0) != '.')) return MAX_QUALITY;
+
+            int thousandths = 0;
+            if (pos < length && text.charAt(pos) == '.') {
+                pos++;
+                int scale = 100;
+                for (; pos < length && isDigit(text.charAt(pos)); pos++, scale /= 10) {
+                    thousandths += (text.charAt(pos) - '0') * scale;
+                }
+                if (pos == 1) return MAX_QUALITY;
             }
+            if (pos < length) return MAX_QUALITY;
+            return Math.min(units * MAX_QUALITY + thousandths, MAX_QUALITY);
+        }
+
+        private static boolean isDigit(char c) {
+            return c >= '0' && c <= '9';
         }
 
         public int compareTo(Value other) {
-            return Double.compare(other.quality(), quality);
+            return other.quality < quality ? -1 : (other.quality == quality ? 0 : 1);
         }
 
         public String toString() {
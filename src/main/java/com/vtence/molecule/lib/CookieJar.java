@@ -1,29 +1,53 @@
 package com.vtence.molecule.lib;
 
 import com.vtence.molecule.Request;
+import com.vtence.molecule.Response;
 import com.vtence.molecule.http.Cookie;
+import com.vtence.molecule.http.CookieDecoder;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import static com.vtence.molecule.http.HeaderNames.SET_COOKIE;
+
 public class CookieJar {
-    private final Map<String, Cookie> cookies = new LinkedHashMap<String, Cookie>();
-    private final Map<String, Cookie> fresh = new LinkedHashMap<String, Cookie>();
-    private final Map<String, Cookie> discarded = new LinkedHashMap<String, Cookie>();
+    private static final CookieDecoder decoder = new CookieDecoder();
+
+    private final String header;
+    private Map<String, Cookie> cookies;
+    private Map<String, Cookie> changes;
+    private Map<String, Cookie> decoded;
+    private Map<String, Cookie> fresh;
+    private Map<String, Cookie> discarded;
 
     public CookieJar(Cookie... cookies) {
         this(Arrays.asList(cookies));
     }
 
     public CookieJar(Iterable<Cookie> cookies) {
+        this.header = null;
+        this.cookies = new LinkedHashMap<String, Cookie>();
         for (Cookie cookie : cookies) {
-            store(cookie);
+            this.cookies.put(cookie.name(), cookie);
         }
     }
 
+    /**
+     * Creates a jar holding the cookies of a <code>Cookie</code> header. Cookies are decoded when
+     * they are first read.
+     */
+    public static CookieJar parse(String header) {
+        return new CookieJar(header);
+    }
+
+    private CookieJar(String header) {
+        this.header = header;
+    }
+
     public static CookieJar get(Request request) {
         return request.attribute(CookieJar.class);
     }
@@ -37,19 +61,21 @@ public class CookieJar {
     }
 
     public int size() {
-        return cookies.size();
+        return contents().size();
     }
 
     public boolean empty() {
-        return cookies.isEmpty();
+        return contents().isEmpty();
     }
 
     public boolean has(String name) {
-        return cookies.containsKey(name);
+        return get(name) != null;
     }
 
     public Cookie get(String name) {
-        return cookies.get(name);
+        if (changes != null && changes.containsKey(name)) return changes.get(name);
+        if (cookies != null) return cookies.get(name);
+        return decode(name);
     }
 
     public Cookie add(String name, String value) {
@@ -57,7 +83,8 @@ public class CookieJar {
     }
 
     public Cookie add(Cookie cookie) {
-        store(cookie);
+        change(cookie.name(), cookie);
+        if (fresh == null) fresh = new LinkedHashMap<String, Cookie>();
         fresh.put(cookie.name(), cookie);
         return cookie;
     }
@@ -67,32 +94,91 @@ public class CookieJar {
     }
 
     private Cookie discard(Cookie cookie) {
-        cookies.remove(cookie.name());
+        change(cookie.name(), null);
+        if (discarded == null) discarded = new LinkedHashMap<String, Cookie>();
         discarded.put(cookie.name(), cookie);
         return cookie;
     }
 
     public List<Cookie> all() {
-        return new ArrayList<Cookie>(cookies.values());
+        return new ArrayList<Cookie>(contents().values());
     }
 
     public List<Cookie> fresh() {
-        return new ArrayList<Cookie>(fresh.values());
+        return fresh != null ? new ArrayList<Cookie>(fresh.values()) : new ArrayList<Cookie>();
     }
 
     public List<Cookie> discarded() {
-        return new ArrayList<Cookie>(discarded.values());
+        return discarded != null ? new ArrayList<Cookie>(discarded.values()) : new ArrayList<Cookie>();
     }
 
     public boolean fresh(String name) {
-        return fresh.containsKey(name);
+        return fresh != null && fresh.containsKey(name);
     }
 
     public boolean discarded(String name) {
-        return discarded.containsKey(name);
+        return discarded != null && discarded.containsKey(name);
+    }
+
+    /**
+     * Adds a <code>Set-Cookie</code> header to the response for each fresh cookie, and an expired
+     * one for each discarded cookie.
+     */
+    public void writeTo(Response response) {
+        if (fresh != null) {
+            for (Cookie cookie : fresh.values()) {
+                response.addHeader(SET_COOKIE, cookie.toString());
+            }
+        }
+        if (discarded != null) {
+            for (Cookie cookie : discarded.values()) {
+                response.addHeader(SET_COOKIE, cookie.maxAge(0).toString());
+            }
+        }
     }
 
-    private void store(Cookie cookie) {
-        cookies.put(cookie.name(), cookie);
+    private Cookie decode(String name) {
+        if (header == null) return null;
+        if (decoded == null) decoded = new LinkedHashMap<String, Cookie>();
+        if (decoded.containsKey(name)) return decoded.get(name);
+        Cookie cookie = decoder.find(header, name);
+        decoded.put(name, cookie);
+        return cookie;
+    }
+
+    private void change(String name, Cookie cookie) {
+        if (cookies != null) {
+            store(cookies, name, cookie);
+            return;
+        }
+        // Changes are replayed over the client cookies if they ever get decoded
+        if (changes == null) changes = new LinkedHashMap<String, Cookie>();
+        changes.remove(name);
+        changes.put(name, cookie);
+    }
+
+    private Map<String, Cookie> contents() {
+        if (cookies != null) return cookies;
+        cookies = new LinkedHashMap<String, Cookie>();
+        List<Cookie> client = header != null ? decoder.decode(header) : Collections.<Cookie>emptyList();
+        for (Cookie cookie : client) {
+            cookies.put(cookie.name(), cookie);
+        }
+        if (changes != null) {
+            for (Map.Entry<String, Cookie> change : changes.entrySet()) {
+                store(cookies, change.getKey(), change.getValue());
+            }
+            changes = null;
+        }
+        decoded = null;
+        return cookies;
+    }
+
+    private static void store(Map<String, Cookie> cookies, String name, Cookie cookie) {
+        if (cookie != null) {
+            cookies.put(name, cookie);
+        } else {
+            cookies.remove(name);
+        }
     }
-}
\ No newline at end of file
+}
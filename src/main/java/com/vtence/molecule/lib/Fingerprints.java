@@ -0,0 +1,166 @@
+package com.vtence.molecule.lib;
+
+import com.vtence.molecule.helpers.Hex;
+import com.vtence.molecule.helpers.Streams;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps the files found under a root directory to fingerprinted urls, e.g. <code>/css/app.css</code>
+ * to <code>/css/app-3f2a9c01.css</code>, using a digest of the file content.
+ *
+ * <p>
+ * Fingerprints are computed when files are first looked up and are recomputed whenever the modification
+ * time or the size of a file changes, so a fingerprinted url always designates the same content.
+ * </p>
+ */
+public class Fingerprints {
+    private static final int DEFAULT_LENGTH = 8;
+    private static final int SIZE_8K = 8 * 1024;
+
+    private final File root;
+    private final int length;
+    private final Map<String, Fingerprint> fingerprints = new ConcurrentHashMap<String, Fingerprint>();
+    private final Map<String, String> names = new ConcurrentHashMap<String, String>();
+
+    public static Fingerprints of(File root) throws IOException {
+        return new Fingerprints(root).scan();
+    }
+
+    public Fingerprints(File root) {
+        this(root, DEFAULT_LENGTH);
+    }
+
+    public Fingerprints(File root, int length) {
+        this.root = root;
+        this.length = length;
+    }
+
+    /**
+     * Computes the fingerprints of all files under the root directory.
+     */
+    public Fingerprints scan() throws IOException {
+        scan(root, "");
+        return this;
+    }
+
+    private void scan(File dir, String path) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            String name = path + "/" + file.getName();
+            if (file.isDirectory()) {
+                scan(file, name);
+            } else {
+                fingerprint(name);
+            }
+        }
+    }
+
+    /**
+     * Resolves the logical path of a file, e.g. <code>/css/app.css</code>, to its fingerprinted path.
+     * If the file cannot be fingerprinted, the logical path is returned unchanged.
+     *
+     * @param name the logical path of the file, relative to the root directory
+     * @return the fingerprinted path or the logical path if file cannot be read
+     */
+    public String path(String name) {
+        try {
+            Fingerprint fingerprint = fingerprint(name);
+            return fingerprint != null ? fingerprint.path : name;
+        } catch (IOException e) {
+            return name;
+        }
+    }
+
+    /**
+     * Resolves a fingerprinted path back to the logical path of the file. This method returns null
+     * if the path is not a fingerprinted path or if the fingerprint is no longer current.
+     *
+     * @param path the fingerprinted path
+     * @return the logical path of the file or null
+     */
+    public String resolve(String path) throws IOException {
+        String name = names.get(path);
+        if (name == null) return null;
+        Fingerprint current = fingerprint(name);
+        return current != null && current.path.equals(path) ? name : null;
+    }
+
+    private Fingerprint fingerprint(String name) throws IOException {
+        File file = new File(root, name);
+        Fingerprint known = fingerprints.get(name);
+        if (!file.isFile()) {
+            if (known != null) forget(name, known);
+            return null;
+        }
+        if (known != null && known.matches(file)) return known;
+
+        Fingerprint fingerprint = new Fingerprint(file.lastModified(), file.length(),
+                fingerprinted(name, digest(file)));
+        if (known != null) names.remove(known.path);
+        names.put(fingerprint.path, name);
+        fingerprints.put(name, fingerprint);
+        return fingerprint;
+    }
+
+    private void forget(String name, Fingerprint fingerprint) {
+        fingerprints.remove(name);
+        names.remove(fingerprint.path);
+    }
+
+    private String fingerprinted(String name, String hash) {
+        int slash = name.lastIndexOf('/');
+        int dot = name.lastIndexOf('.');
+        if (dot <= slash + 1) return name + "-" + hash;
+        return name.substring(0, dot) + "-" + hash + name.substring(dot);
+    }
+
+    private String digest(File file) throws IOException {
+        MessageDigest md5 = md5();
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+            byte[] buffer = new byte[SIZE_8K];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                md5.update(buffer, 0, read);
+            }
+        } finally {
+            Streams.close(in);
+        }
+        String hash = Hex.from(md5.digest());
+        return hash.substring(0, Math.min(length, hash.length()));
+    }
+
+    private MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Fingerprint {
+        public final long lastModified;
+        public final long size;
+        public final String path;
+
+        public Fingerprint(long lastModified, long size, String path) {
+            this.lastModified = lastModified;
+            this.size = size;
+            this.path = path;
+        }
+
+        public boolean matches(File file) {
+            return file.lastModified() == lastModified && file.length() == size;
+        }
+    }
+}
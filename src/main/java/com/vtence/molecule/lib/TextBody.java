@@ -6,10 +6,22 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
 
+import static com.vtence.molecule.helpers.Charsets.ISO_8859_1;
+import static com.vtence.molecule.helpers.Charsets.US_ASCII;
+import static com.vtence.molecule.helpers.Charsets.UTF_8;
+
+/**
+ * A body of text. The text is encoded once per charset and the encoded bytes are kept until more
+ * text is appended. The size of the body in single byte charsets and UTF-8 is computed without
+ * encoding the text.
+ */
 public class TextBody implements Body {
 
     private final StringBuilder content = new StringBuilder();
 
+    private Charset encodedCharset;
+    private byte[] encoded;
+
     public static TextBody text(String text) {
         return new TextBody().append(text);
     }
@@ -18,6 +30,7 @@ public class TextBody implements Body {
 
     public TextBody append(CharSequence text) {
         this.content.append(text);
+        this.encoded = null;
         return this;
     }
 
@@ -26,11 +39,55 @@ public class TextBody implements Body {
     }
 
     public long size(Charset charset) {
+        if (charset.equals(encodedCharset) && encoded != null) return encoded.length;
+        if (charset.equals(ISO_8859_1) || charset.equals(US_ASCII)) return singleByteLength();
+        if (charset.equals(UTF_8)) return utf8Length();
         return content(charset).length;
     }
 
+    private long singleByteLength() {
+        long length = 0;
+        int count = content.length();
+        for (int i = 0; i < count; i++, length++) {
+            // A surrogate pair is replaced with a single question mark
+            if (isSurrogatePair(i)) i++;
+        }
+        return length;
+    }
+
+    private long utf8Length() {
+        long length = 0;
+        int count = content.length();
+        for (int i = 0; i < count; i++) {
+            char c = content.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (isSurrogatePair(i)) {
+                length += 4;
+                i++;
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                // Malformed surrogates are replaced with a question mark
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private boolean isSurrogatePair(int index) {
+        return Character.isHighSurrogate(content.charAt(index))
+                && index + 1 < content.length() && Character.isLowSurrogate(content.charAt(index + 1));
+    }
+
     private byte[] content(Charset charset) {
-        return text().getBytes(charset);
+        if (encoded == null || !charset.equals(encodedCharset)) {
+            encoded = text().getBytes(charset);
+            encodedCharset = charset;
+        }
+        return encoded;
     }
 
     public void writeTo(OutputStream out, Charset charset) throws IOException {
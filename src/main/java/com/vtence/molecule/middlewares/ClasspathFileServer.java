@@ -0,0 +1,274 @@
+package com.vtence.molecule.middlewares;
+
+import com.vtence.molecule.Application;
+import com.vtence.molecule.Request;
+import com.vtence.molecule.Response;
+import com.vtence.molecule.helpers.Hex;
+import com.vtence.molecule.helpers.Joiner;
+import com.vtence.molecule.helpers.Streams;
+import com.vtence.molecule.http.AcceptEncoding;
+import com.vtence.molecule.http.HttpDate;
+import com.vtence.molecule.http.HttpMethod;
+import com.vtence.molecule.http.HttpStatus;
+import com.vtence.molecule.http.MimeTypes;
+import com.vtence.molecule.lib.BinaryBody;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.GZIPOutputStream;
+
+import static com.vtence.molecule.http.HeaderNames.ALLOW;
+import static com.vtence.molecule.http.HeaderNames.CONTENT_ENCODING;
+import static com.vtence.molecule.http.HeaderNames.ETAG;
+import static com.vtence.molecule.http.HeaderNames.IF_MODIFIED_SINCE;
+import static com.vtence.molecule.http.HeaderNames.IF_NONE_MATCH;
+import static com.vtence.molecule.http.HeaderNames.LAST_MODIFIED;
+import static com.vtence.molecule.http.HeaderNames.VARY;
+import static com.vtence.molecule.http.HttpMethod.GET;
+import static com.vtence.molecule.http.HttpMethod.HEAD;
+import static com.vtence.molecule.http.HttpStatus.METHOD_NOT_ALLOWED;
+import static com.vtence.molecule.http.HttpStatus.NOT_MODIFIED;
+import static com.vtence.molecule.http.MimeTypes.TEXT;
+
+/**
+ * Serves files packaged on the classpath, either in a directory or inside a jar.
+ *
+ * <p>
+ * All files found under the resource directory are loaded in memory when the server is created, along
+ * with their validation information, so no I/O occurs when serving them.
+ * </p>
+ */
+public class ClasspathFileServer implements Application {
+
+    private static final List<HttpMethod> ALLOWED_METHODS = Arrays.asList(GET, HEAD);
+    private static final String ALLOW_HEADER = Joiner.on(", ").join(ALLOWED_METHODS);
+    private static final String GZIP = "gzip";
+    private static final String IDENTITY = "identity";
+
+    private final MimeTypes mediaTypes = MimeTypes.defaults();
+    private final Map<String, String> headers = new HashMap<String, String>();
+
+    private volatile Map<String, Resource> resources;
+
+    public static ClasspathFileServer fromClasspath(String dir) throws IOException {
+        return new ClasspathFileServer(Thread.currentThread().getContextClassLoader(), dir);
+    }
+
+    public ClasspathFileServer(ClassLoader classLoader, String dir) throws IOException {
+        this.resources = index(classLoader, dir);
+    }
+
+    public void registerMediaType(String extension, String mediaType) {
+        mediaTypes.register(extension, mediaType);
+    }
+
+    public ClasspathFileServer header(String header, String value) {
+        headers.put(header, value);
+        return this;
+    }
+
+    /**
+     * Precomputes gzip variants of the resources, which are served to clients accepting gzip encoding.
+     * A variant is only kept when it is smaller than the original content.
+     */
+    public ClasspathFileServer gzip() throws IOException {
+        Map<String, Resource> compressed = new HashMap<String, Resource>();
+        for (Map.Entry<String, Resource> resource : resources.entrySet()) {
+            compressed.put(resource.getKey(), resource.getValue().compress());
+        }
+        resources = Collections.unmodifiableMap(compressed);
+        return this;
+    }
+
+    public int size() {
+        return resources.size();
+    }
+
+    public void handle(Request request, Response response) throws Exception {
+        if (!methodAllowed(request)) {
+            response.header(ALLOW, ALLOW_HEADER);
+            response.status(METHOD_NOT_ALLOWED);
+            return;
+        }
+
+        Resource resource = resources.get(request.path());
+        if (resource == null) {
+            response.status(HttpStatus.NOT_FOUND);
+            response.contentType(TEXT);
+            response.body("File not found: " + request.path());
+            return;
+        }
+
+        boolean gzipped = resource.gzipped != null && acceptsGzip(request);
+        String etag = gzipped ? resource.gzippedEtag : resource.etag;
+        if (notModified(request, etag, resource.lastModified)) {
+            response.header(ETAG, etag);
+            response.status(NOT_MODIFIED);
+            return;
+        }
+
+        addResourceHeaders(response, request.path(), etag, resource);
+        addCustomHeaders(response);
+
+        byte[] content = gzipped ? resource.gzipped : resource.content;
+        if (gzipped) response.header(CONTENT_ENCODING, GZIP);
+        response.contentLength(content.length);
+
+        response.status(HttpStatus.OK);
+        if (head(request)) return;
+
+        response.body(BinaryBody.bytes(content));
+    }
+
+    private boolean methodAllowed(Request request) {
+        return ALLOWED_METHODS.contains(request.method());
+    }
+
+    private boolean notModified(Request request, String etag, String lastModified) {
+        String noneMatch = request.header(IF_NONE_MATCH);
+        if (noneMatch != null) return noneMatch.equals(etag);
+        String lastTimeSeen = request.header(IF_MODIFIED_SINCE);
+        return lastTimeSeen != null && lastTimeSeen.equals(lastModified);
+    }
+
+    private void addResourceHeaders(Response response, String path, String etag, Resource resource) {
+        response.contentType(mediaTypes.guessFrom(path));
+        response.header(ETAG, etag);
+        if (resource.lastModified != null) response.header(LAST_MODIFIED, resource.lastModified);
+        if (resource.gzipped != null) response.header(VARY, "Accept-Encoding");
+    }
+
+    private void addCustomHeaders(Response response) {
+        for (String header : headers.keySet()) {
+            response.header(header, headers.get(header));
+        }
+    }
+
+    private boolean acceptsGzip(Request request) {
+        return GZIP.equals(AcceptEncoding.of(request).selectBestEncoding(GZIP, IDENTITY));
+    }
+
+    private boolean head(Request request) {
+        return request.method() == HEAD;
+    }
+
+    private static Map<String, Resource> index(ClassLoader classLoader, String dir) throws IOException {
+        String location = strip(dir);
+        Map<String, Resource> resources = new HashMap<String, Resource>();
+        Enumeration<URL> urls = classLoader.getResources(location);
+        while (urls.hasMoreElements()) {
+            URL url = urls.nextElement();
+            if ("jar".equals(url.getProtocol())) {
+                indexJar(resources, (JarURLConnection) url.openConnection());
+            } else if ("file".equals(url.getProtocol())) {
+                indexDirectory(resources, toFile(url), "");
+            } else {
+                throw new IOException("Unsupported resource location: " + url);
+            }
+        }
+        return Collections.unmodifiableMap(resources);
+    }
+
+    private static void indexJar(Map<String, Resource> resources, JarURLConnection connection) throws IOException {
+        connection.setUseCaches(false);
+        JarFile jar = connection.getJarFile();
+        try {
+            String prefix = connection.getEntryName() + "/";
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                if (entry.isDirectory() || !entry.getName().startsWith(prefix)) continue;
+                String path = "/" + entry.getName().substring(prefix.length());
+                if (!resources.containsKey(path)) {
+                    resources.put(path, Resource.load(jar.getInputStream(entry), entry.getTime()));
+                }
+            }
+        } finally {
+            jar.close();
+        }
+    }
+
+    private static void indexDirectory(Map<String, Resource> resources, File dir, String path) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            String name = path + "/" + file.getName();
+            if (file.isDirectory()) {
+                indexDirectory(resources, file, name);
+            } else if (!resources.containsKey(name)) {
+                resources.put(name, Resource.load(new FileInputStream(file), file.lastModified()));
+            }
+        }
+    }
+
+    private static File toFile(URL url) throws IOException {
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException("Invalid resource location: " + url, e);
+        }
+    }
+
+    private static String strip(String dir) {
+        String location = dir.startsWith("/") ? dir.substring(1) : dir;
+        return location.endsWith("/") ? location.substring(0, location.length() - 1) : location;
+    }
+
+    private static class Resource {
+        public final byte[] content;
+        public final byte[] gzipped;
+        public final String etag;
+        public final String gzippedEtag;
+        public final String lastModified;
+
+        public static Resource load(InputStream in, long lastModified) throws IOException {
+            try {
+                byte[] content = Streams.toBytes(in);
+                return new Resource(content, null, etagOf(content), lastModified > 0 ? HttpDate.format(lastModified) : null);
+            } finally {
+                Streams.close(in);
+            }
+        }
+
+        public Resource(byte[] content, byte[] gzipped, String etag, String lastModified) {
+            this.content = content;
+            this.gzipped = gzipped;
+            this.etag = etag;
+            this.gzippedEtag = etag.substring(0, etag.length() - 1) + "-gzip\"";
+            this.lastModified = lastModified;
+        }
+
+        public Resource compress() throws IOException {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            GZIPOutputStream zip = new GZIPOutputStream(buffer);
+            zip.write(content);
+            zip.close();
+            byte[] compressed = buffer.toByteArray();
+            return compressed.length < content.length ? new Resource(content, compressed, etag, lastModified) : this;
+        }
+
+        private static String etagOf(byte[] content) {
+            try {
+                return "\"" + Hex.from(MessageDigest.getInstance("MD5").digest(content)) + "\"";
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -26,6 +26,8 @@ import static com.vtence.molecule.middlewares.Compressor.Codings.identity;
 
 public class Compressor extends AbstractMiddleware {
 
+    private static final List<String> AVAILABLE_ENCODINGS = Arrays.asList(Codings.all());
+
     private final Collection<String> compressibleTypes = new ArrayList<String>();
 
     static enum Codings {
@@ -161,7 +163,7 @@ public class Compressor extends AbstractMiddleware {
 
     private String selectBestAvailableEncodingFor(Request request) {
         AcceptEncoding acceptEncoding = AcceptEncoding.of(request);
-        return acceptEncoding.selectBestEncoding(Codings.all());
+        return acceptEncoding.selectBestEncoding(AVAILABLE_ENCODINGS);
     }
 
     private void notAcceptable(Response response) throws IOException {
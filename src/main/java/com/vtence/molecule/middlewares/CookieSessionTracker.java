@@ -33,13 +33,14 @@ public class CookieSessionTracker extends AbstractMiddleware {
     public void handle(Request request, Response response) throws Exception {
         CookieJar cookieJar = CookieJar.get(request);
         if (cookieJar == null) throw new IllegalStateException("No cookie jar bound to request");
-        Session session = openSession(cookieJar);
-        session.bind(request);
+        LazySession session = new LazySession(cookieJar);
+        request.attribute(Session.Provider.class, session);
         try {
             forward(request, response);
-            commitSession(session, cookieJar);
+            if (session.opened()) commitSession(session.session(), cookieJar);
         } finally {
-            session.unbind(request);
+            request.removeAttribute(Session.Provider.class);
+            request.removeAttribute(Session.class);
         }
     }
 
@@ -97,4 +98,25 @@ public class CookieSessionTracker extends AbstractMiddleware {
     private String save(Session session) {
         return store.save(session);
     }
-}
\ No newline at end of file
+
+    /**
+     * Opens the session - which means loading it from the store - the first time it is accessed.
+     */
+    private class LazySession implements Session.Provider {
+        private final CookieJar cookieJar;
+        private Session session;
+
+        public LazySession(CookieJar cookieJar) {
+            this.cookieJar = cookieJar;
+        }
+
+        public Session session() {
+            if (session == null) session = openSession(cookieJar);
+            return session;
+        }
+
+        public boolean opened() {
+            return session != null;
+        }
+    }
+}
@@ -3,27 +3,46 @@ package com.vtence.molecule.middlewares;
 import com.vtence.molecule.Body;
 import com.vtence.molecule.Request;
 import com.vtence.molecule.Response;
+import com.vtence.molecule.decoration.CacheableDecorator;
 import com.vtence.molecule.decoration.ContentProcessor;
 import com.vtence.molecule.decoration.Decorator;
 import com.vtence.molecule.decoration.HtmlDocumentProcessor;
 import com.vtence.molecule.decoration.HtmlPageSelector;
+import com.vtence.molecule.decoration.IntrospectableDecorator;
 import com.vtence.molecule.decoration.LayoutTemplate;
 import com.vtence.molecule.decoration.Selector;
+import com.vtence.molecule.decoration.StreamingContentProcessor;
+import com.vtence.molecule.helpers.Hex;
+import com.vtence.molecule.lib.BinaryBody;
+import com.vtence.molecule.lib.ChunkedBody;
 import com.vtence.molecule.templating.Template;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 
 import static com.vtence.molecule.http.HeaderNames.CONTENT_LENGTH;
+import static com.vtence.molecule.http.HeaderNames.ETAG;
 
 public class Layout extends AbstractMiddleware {
 
+    private static final String BODY = "body";
+
     private final Selector selector;
     private final ContentProcessor processor;
     private final Decorator decorator;
 
+    private boolean earlyFlush;
+    private DecorationCache cache;
+
     public static Layout html(Template layout) {
         return html(new LayoutTemplate(layout));
     }
@@ -38,6 +57,36 @@ public class Layout extends AbstractMiddleware {
         this.decorator = decorator;
     }
 
+    /**
+     * Writes and flushes the beginning of the layout - up to where the page body is inserted - before
+     * the page is rendered, so clients can start fetching the assets linked from the layout head.
+     *
+     * <p>
+     * This only applies to {@link IntrospectableDecorator}s that read nothing but the page body. Other
+     * layouts are rendered once the page is complete.
+     * </p>
+     */
+    public Layout earlyFlush() {
+        this.earlyFlush = true;
+        return this;
+    }
+
+    /**
+     * Keeps the decorated output of the most recently decorated pages, up to the given number of bytes.
+     * A page is identified by its request URI and ETag or, if it has no ETag, by a digest of its content,
+     * along with the request inputs the decorator varies on.
+     *
+     * <p>
+     * Caching only applies to {@link CacheableDecorator}s.
+     * </p>
+     *
+     * @param capacity the maximum number of bytes held in the cache
+     */
+    public Layout cache(long capacity) {
+        this.cache = new DecorationCache(capacity);
+        return this;
+    }
+
     public void handle(Request request, Response response) throws Exception {
         forward(request, response);
 
@@ -52,14 +101,192 @@ public class Layout extends AbstractMiddleware {
 
     private void applyDecoration(Request request, Response response) throws IOException {
         response.removeHeader(CONTENT_LENGTH);
-        String content = render(response.body(), response.charset());
-        Map<String, String> chunks = processor.process(content);
+        if (cache != null && decorator instanceof CacheableDecorator) {
+            Body page = response.body();
+            try {
+                response.body(BinaryBody.bytes(decorateFromCache(request, response)));
+            } finally {
+                page.close();
+            }
+            return;
+        }
+        if (earlyFlush && readsOnlyPageBody()) {
+            response.body(new EarlyFlushBody(request, response.body()));
+            return;
+        }
+        Map<String, String> chunks = process(response.body(), response.charset());
         response.body(decorator.merge(request, chunks));
     }
 
+    private boolean readsOnlyPageBody() throws IOException {
+        if (!(decorator instanceof IntrospectableDecorator)) return false;
+        Set<String> chunks = ((IntrospectableDecorator) decorator).chunks();
+        return chunks != null && Collections.singleton(BODY).containsAll(chunks);
+    }
+
+    private byte[] decorateFromCache(Request request, Response response) throws IOException {
+        Charset charset = response.charset();
+        byte[] page = null;
+        String resource = null;
+        String fingerprint = response.header(ETAG);
+        if (fingerprint != null) {
+            // ETags only tell apart versions of the same resource
+            resource = request.uri();
+        } else {
+            page = renderBytes(response.body(), charset);
+            fingerprint = digest(page);
+        }
+
+        CacheKey key = new CacheKey(decorator, resource, fingerprint, charset,
+                ((CacheableDecorator) decorator).varyOn(request));
+        byte[] decorated = cache.lookup(key);
+        if (decorated != null) return decorated;
+
+        Body content = page != null ? BinaryBody.bytes(page) : response.body();
+        Body layout = decorator.merge(request, process(content, charset));
+        try {
+            decorated = renderBytes(layout, charset);
+        } finally {
+            layout.close();
+        }
+        cache.store(key, decorated);
+        return decorated;
+    }
+
+    private String digest(byte[] content) {
+        try {
+            return Hex.from(MessageDigest.getInstance("MD5").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Map<String, String> process(Body body, Charset charset) throws IOException {
+        if (processor instanceof StreamingContentProcessor) {
+            return ((StreamingContentProcessor) processor).process(body, charset);
+        }
+        return processor.process(render(body, charset));
+    }
+
     private String render(Body body, Charset charset) throws IOException {
+        return new String(renderBytes(body, charset), charset);
+    }
+
+    private byte[] renderBytes(Body body, Charset charset) throws IOException {
         ByteArrayOutputStream buffer = new ByteArrayOutputStream();
         body.writeTo(buffer, charset);
-        return buffer.toString(charset.name());
+        return buffer.toByteArray();
+    }
+
+    private class EarlyFlushBody extends ChunkedBody {
+        private final Request request;
+        private final Body page;
+
+        public EarlyFlushBody(Request request, Body page) {
+            this.request = request;
+            this.page = page;
+        }
+
+        // Renders the layout around a marker, then writes the page body where the marker is
+        public void writeTo(OutputStream out, Charset charset) throws IOException {
+            String marker = "layoutbody" + Long.toHexString(System.nanoTime());
+            Body layout = decorator.merge(request, Collections.singletonMap(BODY, marker));
+            String content;
+            try {
+                content = render(layout, charset);
+            } finally {
+                layout.close();
+            }
+
+            String body = null;
+            int start = 0;
+            int end;
+            while ((end = content.indexOf(marker, start)) != -1) {
+                out.write(content.substring(start, end).getBytes(charset));
+                if (body == null) {
+                    out.flush();
+                    body = bodyOf(page, charset);
+                }
+                out.write(body.getBytes(charset));
+                start = end + marker.length();
+            }
+            out.write(content.substring(start).getBytes(charset));
+        }
+
+        private String bodyOf(Body page, Charset charset) throws IOException {
+            String body = process(page, charset).get(BODY);
+            return body != null ? body : "";
+        }
+
+        public void close() throws IOException {
+            page.close();
+        }
+    }
+
+    private static class DecorationCache {
+        private final Map<CacheKey, byte[]> pages = new LinkedHashMap<CacheKey, byte[]>(16, 0.75f, true);
+        private final long capacity;
+        private long size;
+
+        public DecorationCache(long capacity) {
+            this.capacity = capacity;
+        }
+
+        public synchronized byte[] lookup(CacheKey key) {
+            return pages.get(key);
+        }
+
+        public synchronized void store(CacheKey key, byte[] decorated) {
+            if (decorated.length > capacity) return;
+            byte[] previous = pages.put(key, decorated);
+            if (previous != null) size -= previous.length;
+            size += decorated.length;
+            evict();
+        }
+
+        private void evict() {
+            Iterator<byte[]> eldest = pages.values().iterator();
+            while (size > capacity && eldest.hasNext()) {
+                size -= eldest.next().length;
+                eldest.remove();
+            }
+        }
+    }
+
+    private static class CacheKey {
+        private final Decorator layout;
+        private final String resource;
+        private final String fingerprint;
+        private final Charset charset;
+        private final Object variant;
+
+        public CacheKey(Decorator layout, String resource, String fingerprint, Charset charset, Object variant) {
+            this.layout = layout;
+            this.resource = resource;
+            this.fingerprint = fingerprint;
+            this.charset = charset;
+            this.variant = variant;
+        }
+
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof CacheKey)) return false;
+            CacheKey other = (CacheKey) o;
+            return layout.equals(other.layout) && equal(resource, other.resource)
+                    && fingerprint.equals(other.fingerprint) && charset.equals(other.charset)
+                    && equal(variant, other.variant);
+        }
+
+        public int hashCode() {
+            int result = layout.hashCode();
+            result = 31 * result + (resource != null ? resource.hashCode() : 0);
+            result = 31 * result + fingerprint.hashCode();
+            result = 31 * result + charset.hashCode();
+            return 31 * result + (variant != null ? variant.hashCode() : 0);
+        }
+
+        private static boolean equal(Object left, Object right) {
+            return left != null ? left.equals(right) : right == null;
+        }
     }
-}
\ No newline at end of file
+}
@@ -3,17 +3,25 @@ package com.vtence.molecule.middlewares;
 import com.vtence.molecule.Application;
 import com.vtence.molecule.Request;
 import com.vtence.molecule.Response;
+import com.vtence.molecule.lib.Fingerprints;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import static com.vtence.molecule.http.HeaderNames.CACHE_CONTROL;
+import static com.vtence.molecule.http.HttpStatus.NOT_MODIFIED;
+import static com.vtence.molecule.http.HttpStatus.OK;
+
 public class StaticAssets extends AbstractMiddleware {
 
+    private static final String CACHE_FOREVER = "public, max-age=31536000, immutable";
+
     private final Application fileServer;
     private final List<String> urls = new ArrayList<String>();
 
     private String indexFile = "index.html";
+    private Fingerprints fingerprints;
 
     public StaticAssets(Application fileServer, String... urls) {
         this.fileServer = fileServer;
@@ -30,6 +38,11 @@ public class StaticAssets extends AbstractMiddleware {
         return this;
     }
 
+    public StaticAssets fingerprint(Fingerprints fingerprints) {
+        this.fingerprints = fingerprints;
+        return this;
+    }
+
     public void handle(Request request, Response response) throws Exception {
         if (canServe(request.path())) {
             serve(request, response);
@@ -42,7 +55,28 @@ public class StaticAssets extends AbstractMiddleware {
         if (targetsDirectory(request)) {
             request.path(request.path() + indexFile);
         }
+        String original = originalPath(request);
+        if (original != null) {
+            serveFingerprinted(original, request, response);
+        } else {
+            fileServer.handle(request, response);
+        }
+    }
+
+    private String originalPath(Request request) throws Exception {
+        return fingerprints != null ? fingerprints.resolve(request.path()) : null;
+    }
+
+    private void serveFingerprinted(String path, Request request, Response response) throws Exception {
+        request.path(path);
         fileServer.handle(request, response);
+        if (cacheable(response)) {
+            response.header(CACHE_CONTROL, CACHE_FOREVER);
+        }
+    }
+
+    private boolean cacheable(Response response) {
+        return response.statusCode() == OK.code || response.statusCode() == NOT_MODIFIED.code;
     }
 
     private boolean targetsDirectory(Request request) {
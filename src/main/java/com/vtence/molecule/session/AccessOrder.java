@@ -0,0 +1,51 @@
+package com.vtence.molecule.session;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Orders session ids from least to most recently used.
+ */
+class AccessOrder {
+    private final AtomicLong ticks = new AtomicLong();
+    private final ConcurrentSkipListMap<Long, String> order = new ConcurrentSkipListMap<Long, String>();
+    private final ConcurrentMap<String, Long> stamps = new ConcurrentHashMap<String, Long>();
+
+    public void used(String id) {
+        Long stamp = ticks.incrementAndGet();
+        order.put(stamp, id);
+        Long previous = stamps.put(id, stamp);
+        if (previous != null) order.remove(previous, id);
+    }
+
+    public void remove(String id) {
+        Long stamp = stamps.remove(id);
+        if (stamp != null) order.remove(stamp, id);
+    }
+
+    /**
+     * Removes and returns the least recently used id, or null if there is none.
+     */
+    public String leastRecentlyUsed() {
+        Map.Entry<Long, String> eldest;
+        while ((eldest = order.pollFirstEntry()) != null) {
+            if (stamps.remove(eldest.getValue(), eldest.getKey())) return eldest.getValue();
+        }
+        return null;
+    }
+
+    /**
+     * @return the ids from least to most recently used. An id used while iterating may be seen twice.
+     */
+    public Iterable<String> fromLeastRecentlyUsed() {
+        return order.values();
+    }
+
+    public void clear() {
+        order.clear();
+        stamps.clear();
+    }
+}
@@ -0,0 +1,379 @@
+package com.vtence.molecule.session;
+
+import com.vtence.molecule.helpers.Base64Url;
+import com.vtence.molecule.lib.Clock;
+import com.vtence.molecule.lib.SystemClock;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A session store that keeps sessions on the client side, in the session cookie itself.
+ *
+ * <p>
+ * The cookie value holds the encoded session, prefixed with the id of the key used to protect it. Sessions
+ * are either signed, in which case clients can read but not alter them, or encrypted. Encryption uses
+ * AES-128-CBC followed by an HMAC-SHA256 of the cipher text, with keys derived from the secret. Encryption
+ * secrets must be at least 16 bytes long.
+ * </p>
+ *
+ * <p>
+ * Every cookie carries the time after which it is no longer accepted, even for sessions without a max age.
+ * Destroying a session cannot revoke copies of its cookie, so that expiration bounds how long a captured
+ * cookie can be replayed. Unchanged sessions are sealed again once half of their lifetime has passed.
+ * </p>
+ *
+ * <p>
+ * To rotate keys, switch to a new key and keep accepting the old one until the sessions it protects
+ * have expired. Sessions are protected again using the current key the next time they are saved,
+ * even if they have not changed.
+ * </p>
+ */
+public class CookieSessionStore implements SessionStore {
+
+    private static final int MAX_COOKIE_SIZE = 4096;
+    private static final byte PLAIN = 0;
+    private static final byte DEFLATED = 1;
+    private static final long DEFAULT_LIFETIME = TimeUnit.DAYS.toMillis(1);
+
+    private final Map<String, Key> keys = new ConcurrentHashMap<String, Key>();
+    private volatile Key currentKey;
+    private Clock clock = new SystemClock();
+    private int compressionThreshold = Integer.MAX_VALUE;
+    private long lifetime = DEFAULT_LIFETIME;
+
+    public static CookieSessionStore signed(String keyId, byte[] secret) {
+        return new CookieSessionStore(new SigningKey(keyId, secret));
+    }
+
+    public static CookieSessionStore encrypted(String keyId, byte[] secret) {
+        return new CookieSessionStore(new EncryptionKey(keyId, secret));
+    }
+
+    private CookieSessionStore(Key key) {
+        use(key);
+    }
+
+    /**
+     * Protects sessions with a new signing key. Sessions protected with the previous key are still accepted.
+     */
+    public CookieSessionStore signWith(String keyId, byte[] secret) {
+        return use(new SigningKey(keyId, secret));
+    }
+
+    /**
+     * Protects sessions with a new encryption key. Sessions protected with the previous key are still accepted.
+     */
+    public CookieSessionStore encryptWith(String keyId, byte[] secret) {
+        return use(new EncryptionKey(keyId, secret));
+    }
+
+    /**
+     * Stops accepting sessions protected with the given key.
+     */
+    public CookieSessionStore revoke(String keyId) {
+        if (currentKey.id.equals(keyId)) throw new IllegalArgumentException("Cannot revoke current key " + keyId);
+        keys.remove(keyId);
+        return this;
+    }
+
+    /**
+     * Compresses sessions whose encoded size reaches the given number of bytes.
+     */
+    public CookieSessionStore compressAbove(int bytes) {
+        this.compressionThreshold = bytes;
+        return this;
+    }
+
+    /**
+     * Sets how long a cookie is accepted after the session was last saved. Defaults to one day.
+     */
+    public CookieSessionStore expireAfter(long duration, TimeUnit unit) {
+        this.lifetime = unit.toMillis(duration);
+        return this;
+    }
+
+    public CookieSessionStore clock(Clock clock) {
+        this.clock = clock;
+        return this;
+    }
+
+    public Session load(String id) {
+        int dot = id.indexOf('.');
+        if (dot < 0) return null;
+        Key key = keys.get(id.substring(0, dot));
+        if (key == null) return null;
+        try {
+            byte[] payload = key.open(Base64Url.decode(id.substring(dot + 1)));
+            if (payload == null) return null;
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            if (clock.now().getTime() >= in.readLong()) return null;
+            Session session = decode(in);
+            if (expired(session)) return null;
+            return new Session(id, session);
+        } catch (IllegalArgumentException e) {
+            return null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public String save(Session session) {
+        if (session.invalid()) throw new IllegalStateException("Session invalidated");
+        long now = clock.now().getTime();
+        Key key = currentKey;
+        if (session.exists() && !session.modified() && session.maxAge() < 0 && sealedWith(session, key, now)) {
+            return session.id();
+        }
+
+        Session data = new Session(null, session);
+        if (data.createdTime() == Session.NEVER) data.createdTime(now);
+        data.updatedTime(now);
+
+        String value = key.id + "." + Base64Url.encode(key.seal(encode(data, now + lifetime)));
+        if (value.length() > MAX_COOKIE_SIZE) {
+            throw new IllegalStateException("Session too large to fit in a cookie: " + value.length() + " bytes");
+        }
+        return value;
+    }
+
+    public void destroy(String sid) {
+        // The session tracker discards the cookie. Copies of it are only rejected once they expire.
+    }
+
+    private CookieSessionStore use(Key key) {
+        if (key.id.indexOf('.') >= 0) throw new IllegalArgumentException("Invalid key id: " + key.id);
+        keys.put(key.id, key);
+        currentKey = key;
+        return this;
+    }
+
+    /**
+     * Checks if a session was sealed with the given key recently enough not to need sealing again.
+     */
+    private boolean sealedWith(Session session, Key key, long now) {
+        return session.id().startsWith(key.id + ".") && now - session.updatedTime() < lifetime / 2;
+    }
+
+    private boolean expired(Session session) {
+        Date expirationTime = session.expirationTime();
+        return expirationTime != null && clock.now().getTime() >= expirationTime.getTime();
+    }
+
+    private byte[] encode(Session session, long expiresAt) {
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            SessionCodec.write(new DataOutputStream(buffer), session);
+            byte[] encoded = buffer.toByteArray();
+
+            ByteArrayOutputStream payload = new ByteArrayOutputStream(encoded.length + 9);
+            DataOutputStream out = new DataOutputStream(payload);
+            out.writeLong(expiresAt);
+            if (encoded.length >= compressionThreshold) {
+                out.writeByte(DEFLATED);
+                deflate(encoded, out);
+            } else {
+                out.writeByte(PLAIN);
+                out.write(encoded);
+            }
+            return payload.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot encode session", e);
+        }
+    }
+
+    private static Session decode(DataInputStream in) throws IOException {
+        byte format = in.readByte();
+        byte[] content = new byte[in.available()];
+        in.readFully(content);
+        byte[] encoded = format == DEFLATED ? inflate(content) : content;
+        return SessionCodec.read(new DataInputStream(new ByteArrayInputStream(encoded)));
+    }
+
+    private static void deflate(byte[] content, DataOutputStream out) throws IOException {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(content);
+            deflater.finish();
+            byte[] buffer = new byte[512];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] content) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(content);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(content.length * 2);
+            byte[] buffer = new byte[512];
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(buffer);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated session");
+                }
+                out.write(buffer, 0, inflated);
+                // Protects against decompression bombs
+                if (out.size() > MAX_COOKIE_SIZE * 16) throw new IOException("Session too large");
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted session", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private abstract static class Key {
+        public final String id;
+
+        protected Key(String id) {
+            this.id = id;
+        }
+
+        public abstract byte[] seal(byte[] payload);
+
+        /**
+         * Returns the payload if it was sealed with this key, null otherwise.
+         */
+        public abstract byte[] open(byte[] sealed);
+    }
+
+    private static class SigningKey extends Key {
+        private static final String HMAC_SHA256 = "HmacSHA256";
+        private static final int MAC_LENGTH = 32;
+
+        private final ThreadLocal<Mac> macs;
+
+        public SigningKey(String id, final byte[] secret) {
+            super(id);
+            final SecretKeySpec key = new SecretKeySpec(secret, HMAC_SHA256);
+            this.macs = new ThreadLocal<Mac>() {
+                protected Mac initialValue() {
+                    try {
+                        Mac mac = Mac.getInstance(HMAC_SHA256);
+                        mac.init(key);
+                        return mac;
+                    } catch (GeneralSecurityException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            };
+            macs.get();
+        }
+
+        public byte[] seal(byte[] payload) {
+            byte[] signed = Arrays.copyOf(payload, payload.length + MAC_LENGTH);
+            System.arraycopy(sign(payload, payload.length), 0, signed, payload.length, MAC_LENGTH);
+            return signed;
+        }
+
+        public byte[] open(byte[] sealed) {
+            int length = sealed.length - MAC_LENGTH;
+            if (length <= 0) return null;
+            byte[] signature = Arrays.copyOfRange(sealed, length, sealed.length);
+            if (!MessageDigest.isEqual(signature, sign(sealed, length))) return null;
+            return Arrays.copyOf(sealed, length);
+        }
+
+        private byte[] sign(byte[] data, int length) {
+            Mac mac = macs.get();
+            mac.update(data, 0, length);
+            return mac.doFinal();
+        }
+    }
+
+    private static class EncryptionKey extends Key {
+        private static final String AES_CBC = "AES/CBC/PKCS5Padding";
+        private static final int IV_LENGTH = 16;
+        private static final int KEY_LENGTH = 16;
+
+        private static final ThreadLocal<SecureRandom> random = new ThreadLocal<SecureRandom>() {
+            protected SecureRandom initialValue() {
+                return new SecureRandom();
+            }
+        };
+
+        private static final ThreadLocal<Cipher> ciphers = new ThreadLocal<Cipher>() {
+            protected Cipher initialValue() {
+                try {
+                    return Cipher.getInstance(AES_CBC);
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+
+        private final SecretKeySpec key;
+        private final SigningKey authentication;
+
+        public EncryptionKey(String id, byte[] secret) {
+            super(id);
+            if (secret.length < KEY_LENGTH) {
+                throw new IllegalArgumentException("Secret must be at least " + KEY_LENGTH + " bytes long");
+            }
+            // Never use the same key for both encryption and authentication
+            this.key = new SecretKeySpec(Arrays.copyOf(derive(secret, "encryption"), KEY_LENGTH), "AES");
+            this.authentication = new SigningKey(id, derive(secret, "authentication"));
+        }
+
+        public byte[] seal(byte[] payload) {
+            byte[] iv = new byte[IV_LENGTH];
+            random.get().nextBytes(iv);
+            try {
+                Cipher cipher = ciphers.get();
+                cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(iv));
+                byte[] encrypted = Arrays.copyOf(iv, IV_LENGTH + cipher.getOutputSize(payload.length));
+                int length = cipher.doFinal(payload, 0, payload.length, encrypted, IV_LENGTH);
+                return authentication.seal(Arrays.copyOf(encrypted, IV_LENGTH + length));
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public byte[] open(byte[] sealed) {
+            byte[] encrypted = authentication.open(sealed);
+            if (encrypted == null || encrypted.length <= IV_LENGTH) return null;
+            try {
+                Cipher cipher = ciphers.get();
+                cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(encrypted, 0, IV_LENGTH));
+                return cipher.doFinal(encrypted, IV_LENGTH, encrypted.length - IV_LENGTH);
+            } catch (GeneralSecurityException e) {
+                return null;
+            }
+        }
+
+        private static byte[] derive(byte[] secret, String purpose) {
+            try {
+                Mac mac = Mac.getInstance(SigningKey.HMAC_SHA256);
+                mac.init(new SecretKeySpec(secret, SigningKey.HMAC_SHA256));
+                return mac.doFinal(purpose.getBytes("US-ASCII"));
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
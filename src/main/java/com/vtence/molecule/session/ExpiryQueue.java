@@ -0,0 +1,91 @@
+package com.vtence.molecule.session;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Indexes session ids by expiration time, in buckets of one second, so that the sessions due for
+ * expiration can be found without going through all sessions.
+ */
+class ExpiryQueue {
+    private static final long BUCKET_SIZE = TimeUnit.SECONDS.toMillis(1);
+
+    private final ConcurrentSkipListMap<Long, Set<String>> buckets = new ConcurrentSkipListMap<Long, Set<String>>();
+    private final ConcurrentMap<String, Long> scheduled = new ConcurrentHashMap<String, Long>();
+
+    public void schedule(String id, Date expirationTime) {
+        if (expirationTime == null) {
+            unschedule(id);
+            return;
+        }
+
+        Long bucket = expirationTime.getTime() / BUCKET_SIZE;
+        Long previous = scheduled.put(id, bucket);
+        if (bucket.equals(previous)) return;
+        if (previous != null) removeFrom(previous, id);
+        addTo(bucket, id);
+    }
+
+    public void unschedule(String id) {
+        Long bucket = scheduled.remove(id);
+        if (bucket != null) removeFrom(bucket, id);
+    }
+
+    /**
+     * @return the ids of the sessions that expire at or before the given time, along with the ids of some
+     * sessions that expire within the same second
+     */
+    public Collection<String> due(long now) {
+        Collection<String> due = new ArrayList<String>();
+        for (Map.Entry<Long, Set<String>> bucket : buckets.headMap(now / BUCKET_SIZE, true).entrySet()) {
+            for (String id : bucket.getValue()) {
+                if (bucket.getKey().equals(scheduled.get(id))) {
+                    due.add(id);
+                } else {
+                    removeFrom(bucket.getKey(), id);
+                }
+            }
+        }
+        return due;
+    }
+
+    public int size() {
+        return scheduled.size();
+    }
+
+    public void clear() {
+        buckets.clear();
+        scheduled.clear();
+    }
+
+    private void addTo(Long time, String id) {
+        Set<String> bucket;
+        do {
+            bucket = bucketAt(time);
+            bucket.add(id);
+        } while (buckets.get(time) != bucket);
+    }
+
+    private Set<String> bucketAt(Long time) {
+        Set<String> bucket = buckets.get(time);
+        if (bucket != null) return bucket;
+        Set<String> created = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        Set<String> existing = buckets.putIfAbsent(time, created);
+        return existing != null ? existing : created;
+    }
+
+    private void removeFrom(Long time, String id) {
+        Set<String> bucket = buckets.get(time);
+        if (bucket == null) return;
+        bucket.remove(id);
+        if (bucket.isEmpty()) buckets.remove(time, bucket);
+    }
+}
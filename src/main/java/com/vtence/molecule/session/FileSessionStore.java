@@ -0,0 +1,377 @@
+package com.vtence.molecule.session;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A session store that keeps sessions in a {@link SessionPool} and persists them on disk, so that they
+ * survive restarts.
+ *
+ * <p>
+ * Saves and drops are appended to a journal as they happen. Sessions saved unchanged only journal their
+ * new update time. The journal is flushed to disk at most once a second and during house keeping, so a
+ * crash can lose the last changes. It is periodically compacted into a snapshot of all live sessions,
+ * during house keeping and when the store is closed. On {@link #open()}, sessions are restored from
+ * the snapshot and the journal.
+ * </p>
+ *
+ * <p>
+ * Sessions with attributes that cannot be encoded are kept in memory only, and do not survive restarts.
+ * </p>
+ */
+public class FileSessionStore implements SessionStore, SessionHouse {
+
+    private static final int MAGIC = 0x4d534e53;
+    private static final int VERSION = 1;
+    private static final byte SAVED = 1;
+    private static final byte DROPPED = 2;
+    private static final byte TOUCHED = 3;
+    private static final int SIZE_64K = 64 * 1024;
+    private static final long DEFAULT_JOURNAL_LIMIT = 64 * 1024 * 1024;
+    private static final long FLUSH_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    private final SessionPool pool;
+    private final File snapshot;
+    private final File journal;
+    private final File rotatedJournal;
+    private final Object lock = new Object();
+
+    private SessionPoolListener listener = SessionPoolListener.NONE;
+    private long journalLimit = DEFAULT_JOURNAL_LIMIT;
+    private boolean opened;
+    private DataOutputStream journalOut;
+    private long journalSize;
+    private long lastFlush;
+
+    public FileSessionStore(File dir) {
+        this(dir, new SessionPool());
+    }
+
+    public FileSessionStore(File dir, SessionPool pool) {
+        this.pool = pool;
+        this.snapshot = new File(dir, "sessions.snapshot");
+        this.journal = new File(dir, "sessions.journal");
+        this.rotatedJournal = new File(dir, "sessions.journal.old");
+        this.pool.setSessionListener(new Journaling());
+    }
+
+    public void setSessionListener(SessionPoolListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Sets the size the journal can reach before house keeping compacts it into a new snapshot.
+     */
+    public FileSessionStore journalLimit(long bytes) {
+        this.journalLimit = bytes;
+        return this;
+    }
+
+    /**
+     * Restores the persisted sessions and starts journaling changes.
+     */
+    public FileSessionStore open() throws IOException {
+        synchronized (lock) {
+            // Sessions are only checked for expiration once all changes are replayed
+            Map<String, Session> sessions = new LinkedHashMap<String, Session>();
+            readSnapshot(sessions);
+            replay(rotatedJournal, sessions);
+            replay(journal, sessions);
+            for (Session session : sessions.values()) {
+                pool.restore(session);
+            }
+            openJournal();
+            opened = true;
+        }
+        return this;
+    }
+
+    /**
+     * Takes a snapshot of all live sessions and stops journaling changes.
+     */
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (!opened) return;
+            snapshot();
+            closeJournal();
+            opened = false;
+        }
+    }
+
+    public int size() {
+        return pool.size();
+    }
+
+    public Session load(String id) {
+        return pool.load(id);
+    }
+
+    public String save(Session session) {
+        boolean touch = session.exists() && !session.modified();
+        String sid = pool.save(session);
+        if (touch && sid.equals(session.id())) {
+            journalTouch(sid);
+        } else {
+            journalSave(sid);
+        }
+        return sid;
+    }
+
+    public void destroy(String sid) {
+        pool.destroy(sid);
+    }
+
+    public void houseKeeping() {
+        pool.houseKeeping();
+        try {
+            if (journalSize() > journalLimit) {
+                snapshot();
+            } else {
+                flushJournal();
+            }
+        } catch (IOException e) {
+            // The journal keeps growing until a snapshot succeeds
+        }
+    }
+
+    /**
+     * Writes all live sessions to a new snapshot and starts a new journal.
+     */
+    public void snapshot() throws IOException {
+        synchronized (lock) {
+            if (!opened) throw new IllegalStateException("Session store is not open");
+            closeJournal();
+            try {
+                // A journal left over by a failed snapshot still holds changes missing from the last snapshot
+                if (rotatedJournal.exists()) {
+                    append(journal, rotatedJournal);
+                    delete(journal);
+                } else {
+                    rename(journal, rotatedJournal);
+                }
+            } finally {
+                // If the journal could not be rotated, changes keep going to the current one
+                openJournal();
+            }
+        }
+
+        // Changes made while the snapshot is written go to the new journal, which is replayed on top of it
+        File next = new File(snapshot.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(next), SIZE_64K));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (Session session : pool.storedSessions()) {
+                byte[] record = encode(session);
+                if (record == null) continue;
+                out.writeBoolean(true);
+                out.write(record);
+            }
+            out.writeBoolean(false);
+        } finally {
+            out.close();
+        }
+        rename(next, snapshot);
+        delete(rotatedJournal);
+    }
+
+    private long journalSize() {
+        synchronized (lock) {
+            return journalSize;
+        }
+    }
+
+    private void readSnapshot(Map<String, Session> sessions) throws IOException {
+        if (!snapshot.exists()) return;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot), SIZE_64K));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new InvalidObjectException("Not a sessions snapshot: " + snapshot);
+            }
+            while (in.readBoolean()) {
+                restore(sessions, SessionCodec.read(in));
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private void replay(File journal, Map<String, Session> sessions) throws IOException {
+        if (!journal.exists()) return;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journal), SIZE_64K));
+        try {
+            while (true) {
+                byte change = in.readByte();
+                if (change == SAVED) {
+                    restore(sessions, SessionCodec.read(in));
+                } else if (change == DROPPED) {
+                    sessions.remove(in.readUTF());
+                } else if (change == TOUCHED) {
+                    Session session = sessions.get(in.readUTF());
+                    long updatedTime = in.readLong();
+                    if (session != null) session.updatedTime(updatedTime);
+                } else {
+                    throw new InvalidObjectException("Corrupted sessions journal: " + journal);
+                }
+            }
+        } catch (EOFException endOfJournal) {
+            // Whatever was not completely written when the journal ended is lost
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void restore(Map<String, Session> sessions, Session session) {
+        // Restore the least recently saved sessions first, so they are the first evicted
+        sessions.remove(session.id());
+        sessions.put(session.id(), session);
+    }
+
+    private void openJournal() throws IOException {
+        journalOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journal, true), SIZE_64K));
+        journalSize = journal.length();
+        lastFlush = System.nanoTime();
+    }
+
+    private void closeJournal() throws IOException {
+        DataOutputStream out = journalOut;
+        journalOut = null;
+        if (out != null) out.close();
+    }
+
+    private void flushJournal() throws IOException {
+        synchronized (lock) {
+            if (journalOut == null) return;
+            journalOut.flush();
+            lastFlush = System.nanoTime();
+        }
+    }
+
+    private void journalSave(String sid) {
+        Session session = pool.stored(sid);
+        if (session == null) return;
+        byte[] record = encode(session);
+        if (record == null) {
+            // Forget the last version written, rather than restore it after a restart
+            journalDrop(sid);
+            return;
+        }
+        synchronized (lock) {
+            if (journalOut == null) return;
+            try {
+                journalOut.writeByte(SAVED);
+                journalOut.write(record);
+                journaled();
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to journal session " + sid, e);
+            }
+        }
+    }
+
+    private void journalTouch(String sid) {
+        Session session = pool.stored(sid);
+        if (session == null) return;
+        synchronized (lock) {
+            if (journalOut == null) return;
+            try {
+                journalOut.writeByte(TOUCHED);
+                journalOut.writeUTF(sid);
+                journalOut.writeLong(session.updatedTime());
+                journaled();
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to journal session " + sid, e);
+            }
+        }
+    }
+
+    private void journalDrop(String sid) {
+        synchronized (lock) {
+            if (journalOut == null) return;
+            try {
+                journalOut.writeByte(DROPPED);
+                journalOut.writeUTF(sid);
+                journaled();
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to journal session " + sid, e);
+            }
+        }
+    }
+
+    private void journaled() throws IOException {
+        journalSize = journalOut.size();
+        long now = System.nanoTime();
+        if (now - lastFlush < FLUSH_INTERVAL) return;
+        journalOut.flush();
+        lastFlush = now;
+    }
+
+    private static byte[] encode(Session session) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try {
+            SessionCodec.write(new DataOutputStream(buffer), session);
+        } catch (IOException e) {
+            return null;
+        }
+        return buffer.toByteArray();
+    }
+
+    private static void append(File from, File to) throws IOException {
+        if (!from.exists()) return;
+        FileInputStream in = new FileInputStream(from);
+        try {
+            FileOutputStream out = new FileOutputStream(to, true);
+            try {
+                byte[] buffer = new byte[SIZE_64K];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void rename(File from, File to) throws IOException {
+        if (!from.exists()) return;
+        delete(to);
+        if (!from.renameTo(to)) throw new IOException("Failed to rename " + from + " to " + to);
+    }
+
+    private static void delete(File file) throws IOException {
+        if (file.exists() && !file.delete()) throw new IOException("Failed to delete " + file);
+    }
+
+    private class Journaling implements SessionPoolListener {
+        public void sessionLoaded(String sid) {
+            listener.sessionLoaded(sid);
+        }
+
+        public void sessionCreated(String sid) {
+            listener.sessionCreated(sid);
+        }
+
+        public void sessionSaved(String sid) {
+            listener.sessionSaved(sid);
+        }
+
+        public void sessionDropped(String sid) {
+            journalDrop(sid);
+            listener.sessionDropped(sid);
+        }
+    }
+}
@@ -0,0 +1,549 @@
+package com.vtence.molecule.session;
+
+import com.vtence.molecule.lib.Clock;
+import com.vtence.molecule.lib.SystemClock;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * A session store that keeps sessions in a database table, so they can be shared by several servers.
+ *
+ * <p>
+ * The table is expected to have the following columns, with an index on <code>expires_at</code>:
+ * </p>
+ * <pre>
+ * CREATE TABLE sessions (
+ *     id VARCHAR(64) PRIMARY KEY,
+ *     expires_at BIGINT,
+ *     data BLOB NOT NULL
+ * )
+ * </pre>
+ *
+ * <p>
+ * When write behind is enabled, saves are queued and written in batches by a background task. Only the
+ * latest version of a session is written. Once the queue is full, saves write it themselves.
+ * Sessions read from the database are cached for a short time, so a server might briefly miss changes
+ * made by other servers.
+ * </p>
+ *
+ * <p>
+ * Sessions are only inserted when they are first saved. Later saves update the existing row, so a session
+ * destroyed by another server is not brought back. Unchanged sessions only have their expiration time
+ * updated. Writes the database rejects are dropped and counted, rather than retried forever. A session
+ * whose insert was rejected is inserted again the next time it is saved.
+ * </p>
+ */
+public class JdbcSessionStore implements SessionStore, SessionHouse {
+
+    private static final long DEFAULT_CACHE_TTL = TimeUnit.SECONDS.toMillis(1);
+    private static final int DEFAULT_CACHE_SIZE = 10000;
+    private static final int DEFAULT_MAX_QUEUED = 10000;
+
+    private final DataSource dataSource;
+    private final SessionIdentifierPolicy policy;
+    private final Clock clock;
+    private final ConcurrentMap<String, Write> pending = new ConcurrentHashMap<String, Write>();
+    private final ConcurrentMap<String, Long> uninserted = new ConcurrentHashMap<String, Long>();
+    private final AtomicLong failedWrites = new AtomicLong();
+    private final Object flushing = new Object();
+
+    private String table = "sessions";
+    private long cacheTtl = DEFAULT_CACHE_TTL;
+    private NearCache cache = new NearCache(DEFAULT_CACHE_SIZE);
+    private int maxQueued = DEFAULT_MAX_QUEUED;
+    private ScheduledFuture<?> writer;
+
+    public JdbcSessionStore(DataSource dataSource) {
+        this(dataSource, new RandomIdentifierPolicy());
+    }
+
+    public JdbcSessionStore(DataSource dataSource, SessionIdentifierPolicy policy) {
+        this(dataSource, policy, new SystemClock());
+    }
+
+    public JdbcSessionStore(DataSource dataSource, SessionIdentifierPolicy policy, Clock clock) {
+        this.dataSource = dataSource;
+        this.policy = policy;
+        this.clock = clock;
+    }
+
+    public JdbcSessionStore table(String name) {
+        this.table = name;
+        return this;
+    }
+
+    /**
+     * Caches up to <code>count</code> sessions read from the database for the given time.
+     */
+    public JdbcSessionStore cache(int count, long ttl, TimeUnit unit) {
+        this.cache = new NearCache(count);
+        this.cacheTtl = unit.toMillis(ttl);
+        return this;
+    }
+
+    /**
+     * Queues saves and writes them in batches at the given interval, using the scheduler.
+     * Without write behind, sessions are written as they are saved.
+     */
+    public JdbcSessionStore writeBehind(ScheduledExecutorService scheduler, long interval, TimeUnit unit) {
+        long delay = MILLISECONDS.convert(interval, unit);
+        writer = scheduler.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    flush();
+                } catch (IllegalStateException e) {
+                    // Rejected sessions are dropped and counted as failed writes
+                }
+            }
+        }, delay, delay, MILLISECONDS);
+        return this;
+    }
+
+    /**
+     * Caps the number of sessions queued for writing. When the queue is full, the save that fills it
+     * writes the queue.
+     */
+    public JdbcSessionStore maxQueued(int count) {
+        this.maxQueued = count;
+        return this;
+    }
+
+    /**
+     * Stops writing in the background and writes the sessions still queued.
+     */
+    public void close() {
+        if (writer != null) writer.cancel(false);
+        flush();
+    }
+
+    public int queued() {
+        return pending.size();
+    }
+
+    /**
+     * @return the number of session writes dropped because the database rejected them
+     */
+    public long failedWrites() {
+        return failedWrites.get();
+    }
+
+    public Session load(String id) {
+        Write queued = pending.get(id);
+        if (queued == Write.DELETE) return null;
+        Session session = queued != null ? queued.session : null;
+        if (session == null) session = cached(id);
+        if (session == null) session = select(id);
+        if (session == null || expired(session, clock.now().getTime())) return null;
+        return new Session(id, session);
+    }
+
+    public String save(Session data) {
+        if (data.invalid()) throw new IllegalStateException("Session invalidated");
+        boolean exists = data.exists();
+        if (exists && !data.modified() && data.maxAge() < 0) return data.id();
+
+        String sid = exists ? data.id() : policy.generateId();
+        Session session = new Session(sid, data);
+        long now = clock.now().getTime();
+        if (!exists || session.createdTime() == Session.NEVER) session.createdTime(now);
+        session.updatedTime(now);
+        byte[] encoded = encode(session);
+        cache.put(sid, session, now);
+        if (!exists || uninserted.containsKey(sid)) {
+            write(sid, Write.insert(session, encoded));
+        } else if (!data.modified()) {
+            write(sid, Write.touch(session, encoded));
+        } else {
+            write(sid, Write.update(session, encoded));
+        }
+        return sid;
+    }
+
+    public void destroy(String sid) {
+        cache.remove(sid);
+        uninserted.remove(sid);
+        write(sid, Write.DELETE);
+    }
+
+    /**
+     * Writes queued sessions and deletes expired sessions from the table.
+     */
+    public void houseKeeping() {
+        try {
+            flush();
+        } catch (IllegalStateException e) {
+            // Rejected sessions are dropped and counted as failed writes
+        }
+        long now = clock.now().getTime();
+        cache.expire(now - cacheTtl);
+        for (Iterator<Long> expiration = uninserted.values().iterator(); expiration.hasNext(); ) {
+            if (expiration.next() <= now) expiration.remove();
+        }
+        try {
+            Connection connection = dataSource.getConnection();
+            try {
+                PreparedStatement delete = connection.prepareStatement(
+                        "DELETE FROM " + table + " WHERE expires_at <= ?");
+                try {
+                    delete.setLong(1, now);
+                    delete.executeUpdate();
+                } finally {
+                    delete.close();
+                }
+            } finally {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            // Expired sessions are deleted on the next run
+        }
+    }
+
+    /**
+     * Writes all queued sessions to the database, in a single transaction. If the database rejects the
+     * batch, sessions are written one at a time, and those rejected again are dropped.
+     *
+     * @throws IllegalStateException if some sessions could not be written
+     */
+    public void flush() {
+        synchronized (flushing) {
+            if (pending.isEmpty()) return;
+            Map<String, Write> batch = new HashMap<String, Write>(pending);
+            Set<String> failed = new HashSet<String>();
+            SQLException error = null;
+            try {
+                writeBatch(batch);
+            } catch (SQLException e) {
+                error = e;
+                for (Map.Entry<String, Write> write : batch.entrySet()) {
+                    try {
+                        writeBatch(Collections.singletonMap(write.getKey(), write.getValue()));
+                    } catch (SQLException rejected) {
+                        failed.add(write.getKey());
+                        error = rejected;
+                    }
+                }
+            }
+
+            for (Map.Entry<String, Write> written : batch.entrySet()) {
+                String sid = written.getKey();
+                Write write = written.getValue();
+                if (write.inserts()) {
+                    if (failed.contains(sid)) {
+                        // Its row does not exist, so it must be inserted the next time it is saved
+                        uninserted.put(sid, expirationOf(write.session));
+                    } else {
+                        uninserted.remove(sid);
+                    }
+                }
+                // Sessions saved again while we were writing stay queued, as updates once their row exists
+                if (!pending.remove(sid, write) && !failed.contains(sid)) inserted(sid);
+            }
+            if (failed.isEmpty()) return;
+            failedWrites.addAndGet(failed.size());
+            throw new IllegalStateException("Failed to write " + failed.size() + " session(s)", error);
+        }
+    }
+
+    private void write(String sid, Write write) {
+        Write queued;
+        do {
+            queued = pending.get(sid);
+        } while (!replace(sid, queued, merge(queued, write)));
+        if (writer == null || pending.size() >= maxQueued) flush();
+    }
+
+    private static Write merge(Write queued, Write write) {
+        if (queued == null || write == Write.DELETE) return write;
+        if (queued.inserts()) return write.as(Kind.INSERT);
+        // A session saved unchanged after it was modified still has its modifications to write
+        if (queued.kind == Kind.UPDATE) return write.as(Kind.UPDATE);
+        return write;
+    }
+
+    private void inserted(String sid) {
+        Write queued;
+        do {
+            queued = pending.get(sid);
+            if (queued == null || !queued.inserts()) return;
+        } while (!pending.replace(sid, queued, queued.as(Kind.UPDATE)));
+    }
+
+    private boolean replace(String sid, Write queued, Write write) {
+        return queued == null ? pending.putIfAbsent(sid, write) == null : pending.replace(sid, queued, write);
+    }
+
+    private Session cached(String id) {
+        return cache.get(id, clock.now().getTime() - cacheTtl);
+    }
+
+    private Session select(String id) {
+        try {
+            Connection connection = dataSource.getConnection();
+            try {
+                PreparedStatement select = connection.prepareStatement(
+                        "SELECT expires_at, data FROM " + table + " WHERE id = ?");
+                try {
+                    select.setString(1, id);
+                    ResultSet rs = select.executeQuery();
+                    if (!rs.next()) return null;
+                    long expiresAt = rs.getLong(1);
+                    boolean expires = !rs.wasNull();
+                    Session session = decode(id, rs.getBytes(2));
+                    // Touches only update the expiration time, so that is where the last update time is
+                    if (expires && session.maxAge() >= 0) {
+                        session.updatedTime(expiresAt - TimeUnit.SECONDS.toMillis(session.maxAge()));
+                    }
+                    cache.put(id, session, clock.now().getTime());
+                    return session;
+                } finally {
+                    select.close();
+                }
+            } finally {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to read session " + id, e);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to decode session " + id, e);
+        }
+    }
+
+    private void writeBatch(Map<String, Write> batch) throws SQLException {
+        List<String> inserted = new ArrayList<String>();
+        List<String> updated = new ArrayList<String>();
+        List<String> touched = new ArrayList<String>();
+        List<String> deleted = new ArrayList<String>();
+        for (Map.Entry<String, Write> entry : batch.entrySet()) {
+            switch (entry.getValue().kind) {
+                case INSERT: inserted.add(entry.getKey()); break;
+                case UPDATE: updated.add(entry.getKey()); break;
+                case TOUCH: touched.add(entry.getKey()); break;
+                case DELETE: deleted.add(entry.getKey()); break;
+            }
+        }
+
+        Connection connection = dataSource.getConnection();
+        boolean autoCommit = connection.getAutoCommit();
+        try {
+            connection.setAutoCommit(false);
+            insert(connection, inserted, batch);
+            update(connection, updated, batch);
+            touch(connection, touched, batch);
+            delete(connection, deleted);
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+            connection.close();
+        }
+    }
+
+    private void insert(Connection connection, List<String> ids, Map<String, Write> batch) throws SQLException {
+        if (ids.isEmpty()) return;
+        PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO " + table + " (id, expires_at, data) VALUES (?, ?, ?)");
+        try {
+            for (String id : ids) {
+                Write write = batch.get(id);
+                insert.setString(1, id);
+                setExpiration(insert, 2, write.session);
+                insert.setBytes(3, write.data);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        } finally {
+            insert.close();
+        }
+    }
+
+    /**
+     * Rows that no longer exist belong to sessions destroyed or expired on another server, and stay deleted.
+     */
+    private void update(Connection connection, List<String> ids, Map<String, Write> batch) throws SQLException {
+        if (ids.isEmpty()) return;
+        PreparedStatement update = connection.prepareStatement(
+                "UPDATE " + table + " SET expires_at = ?, data = ? WHERE id = ?");
+        try {
+            for (String id : ids) {
+                Write write = batch.get(id);
+                setExpiration(update, 1, write.session);
+                update.setBytes(2, write.data);
+                update.setString(3, id);
+                update.addBatch();
+            }
+            update.executeBatch();
+        } finally {
+            update.close();
+        }
+    }
+
+    private void touch(Connection connection, List<String> ids, Map<String, Write> batch) throws SQLException {
+        if (ids.isEmpty()) return;
+        PreparedStatement touch = connection.prepareStatement(
+                "UPDATE " + table + " SET expires_at = ? WHERE id = ?");
+        try {
+            for (String id : ids) {
+                setExpiration(touch, 1, batch.get(id).session);
+                touch.setString(2, id);
+                touch.addBatch();
+            }
+            touch.executeBatch();
+        } finally {
+            touch.close();
+        }
+    }
+
+    private void delete(Connection connection, List<String> ids) throws SQLException {
+        if (ids.isEmpty()) return;
+        PreparedStatement delete = connection.prepareStatement("DELETE FROM " + table + " WHERE id = ?");
+        try {
+            for (String id : ids) {
+                delete.setString(1, id);
+                delete.addBatch();
+            }
+            delete.executeBatch();
+        } finally {
+            delete.close();
+        }
+    }
+
+    private static void setExpiration(PreparedStatement statement, int index, Session session) throws SQLException {
+        Date expirationTime = session.expirationTime();
+        if (expirationTime != null) {
+            statement.setLong(index, expirationTime.getTime());
+        } else {
+            statement.setNull(index, Types.BIGINT);
+        }
+    }
+
+    private static byte[] encode(Session session) {
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            SessionCodec.write(new DataOutputStream(buffer), session);
+            return buffer.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot encode session " + session.id(), e);
+        }
+    }
+
+    private static Session decode(String id, byte[] data) throws IOException {
+        return new Session(id, SessionCodec.read(new DataInputStream(new ByteArrayInputStream(data))));
+    }
+
+    private static long expirationOf(Session session) {
+        Date expirationTime = session.expirationTime();
+        return expirationTime != null ? expirationTime.getTime() : Long.MAX_VALUE;
+    }
+
+    private static boolean expired(Session session, long now) {
+        Date expirationTime = session.expirationTime();
+        return expirationTime != null && now >= expirationTime.getTime();
+    }
+
+    private static class NearCache {
+        private final Map<String, CachedSession> sessions;
+
+        public NearCache(final int capacity) {
+            this.sessions = new LinkedHashMap<String, CachedSession>(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry<String, CachedSession> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        public synchronized Session get(String id, long notBefore) {
+            CachedSession cached = sessions.get(id);
+            return cached != null && cached.cachedAt > notBefore ? cached.session : null;
+        }
+
+        public synchronized void put(String id, Session session, long now) {
+            sessions.put(id, new CachedSession(session, now));
+        }
+
+        public synchronized void remove(String id) {
+            sessions.remove(id);
+        }
+
+        public synchronized void expire(long notBefore) {
+            for (Iterator<CachedSession> cached = sessions.values().iterator(); cached.hasNext(); ) {
+                if (cached.next().cachedAt <= notBefore) cached.remove();
+            }
+        }
+    }
+
+    private enum Kind { INSERT, UPDATE, TOUCH, DELETE }
+
+    private static class Write {
+        public static final Write DELETE = new Write(Kind.DELETE, null, null);
+
+        public final Kind kind;
+        public final Session session;
+        public final byte[] data;
+
+        public static Write insert(Session session, byte[] data) {
+            return new Write(Kind.INSERT, session, data);
+        }
+
+        public static Write update(Session session, byte[] data) {
+            return new Write(Kind.UPDATE, session, data);
+        }
+
+        public static Write touch(Session session, byte[] data) {
+            return new Write(Kind.TOUCH, session, data);
+        }
+
+        private Write(Kind kind, Session session, byte[] data) {
+            this.kind = kind;
+            this.session = session;
+            this.data = data;
+        }
+
+        public boolean inserts() {
+            return kind == Kind.INSERT;
+        }
+
+        public Write as(Kind kind) {
+            return this == DELETE || this.kind == kind ? this : new Write(kind, session, data);
+        }
+    }
+
+    private static class CachedSession {
+        public final Session session;
+        public final long cachedAt;
+
+        public CachedSession(Session session, long cachedAt) {
+            this.session = session;
+            this.cachedAt = cachedAt;
+        }
+    }
+}
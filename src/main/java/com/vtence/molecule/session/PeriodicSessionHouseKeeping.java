@@ -3,6 +3,8 @@ package com.vtence.molecule.session;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import static java.util.concurrent.TimeUnit.HOURS;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
@@ -11,6 +13,7 @@ import static java.util.concurrent.TimeUnit.SECONDS;
 public class PeriodicSessionHouseKeeping {
 
     private static final long EVERY_HOUR = HOURS.toSeconds(1);
+    private static final Logger logger = Logger.getLogger(PeriodicSessionHouseKeeping.class.getName());
 
     private final ScheduledExecutorService scheduler;
     private final SessionHouse sessions;
@@ -32,7 +35,12 @@ public class PeriodicSessionHouseKeeping {
     public void start() {
         chores = scheduler.scheduleWithFixedDelay(new Runnable() {
             public void run() {
-                sessions.houseKeeping();
+                try {
+                    sessions.houseKeeping();
+                } catch (RuntimeException e) {
+                    // An exception would cancel every subsequent run
+                    logger.log(Level.WARNING, "Session house keeping failed", e);
+                }
             }
         }, choresInterval, choresInterval, MILLISECONDS);
     }
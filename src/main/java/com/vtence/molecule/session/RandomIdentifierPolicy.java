@@ -0,0 +1,54 @@
+package com.vtence.molecule.session;
+
+import com.vtence.molecule.helpers.Base64Url;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+/**
+ * Generates session ids from random bytes, encoded using the url safe base64 alphabet.
+ *
+ * <p>
+ * Each thread uses its own generator, so threads creating sessions concurrently do not contend.
+ * The default 16 bytes give 128 bits of entropy in a 22 characters id.
+ * </p>
+ */
+public class RandomIdentifierPolicy implements SessionIdentifierPolicy {
+
+    private static final int MIN_LENGTH = 16;
+    private static final String SHA1PRNG = "SHA1PRNG";
+
+    private final int length;
+    private final ThreadLocal<SecureRandom> random = new ThreadLocal<SecureRandom>() {
+        protected SecureRandom initialValue() {
+            return newGenerator();
+        }
+    };
+
+    public RandomIdentifierPolicy() {
+        this(MIN_LENGTH);
+    }
+
+    /**
+     * @param length the number of random bytes in an id, at least 16
+     */
+    public RandomIdentifierPolicy(int length) {
+        if (length < MIN_LENGTH) throw new IllegalArgumentException("Ids need at least " + MIN_LENGTH + " bytes");
+        this.length = length;
+    }
+
+    public String generateId() {
+        byte[] bytes = new byte[length];
+        random.get().nextBytes(bytes);
+        return Base64Url.encode(bytes);
+    }
+
+    private static SecureRandom newGenerator() {
+        // The default native generator is shared by all instances, unlike SHA1PRNG
+        try {
+            return SecureRandom.getInstance(SHA1PRNG);
+        } catch (NoSuchAlgorithmException e) {
+            return new SecureRandom();
+        }
+    }
+}
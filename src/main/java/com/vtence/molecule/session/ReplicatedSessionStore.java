@@ -0,0 +1,595 @@
+package com.vtence.molecule.session;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A session store that replicates the sessions of a {@link SessionPool} to peer nodes over TCP, so that
+ * requests can be served by any node.
+ *
+ * <p>
+ * Saves are sent asynchronously to all peers in batches, keeping only the latest version of each session.
+ * A copy received from a peer replaces the local session only if it was updated more recently.
+ * Destroyed sessions are removed from peers, while expiration is left to the house keeping of each node.
+ * When a session is not found locally, it is fetched from the peers. Ids that no peer knows about are
+ * not asked for again for a short time, and peers that fail to answer are skipped for a while.
+ * </p>
+ *
+ * <p>
+ * Nodes listen on the loopback interface unless told otherwise. Every message exchanged with peers is
+ * authenticated with an HMAC of a secret shared by all nodes, so it cannot be forged or replayed. Sessions
+ * are sent in the portable format of {@link SessionCodec}, so data read from the network never goes
+ * through Java deserialization. Sessions with other attributes stay on the node that saved them.
+ * </p>
+ *
+ * <p>
+ * Peers must authenticate as soon as they connect, with a message of a few bytes. Connections that fail
+ * to do so within the timeout are closed, and only a few connections can be waiting to authenticate at
+ * once. Messages larger than the configured limit are rejected before being read.
+ * </p>
+ *
+ * <p>
+ * Listening to peers, sending changes to each peer and serving each authenticated connection use one
+ * thread each from the executor, so it needs about three threads per peer.
+ * </p>
+ */
+public class ReplicatedSessionStore implements SessionStore, SessionHouse {
+
+    private static final byte BATCH = 1;
+    private static final byte FETCH = 2;
+    private static final byte SAVED = 1;
+    private static final byte DROPPED = 2;
+    private static final byte[] DROP = new byte[0];
+    private static final int MAX_BATCH = 1000;
+    private static final int MAX_MISSES = 10000;
+    private static final int MAX_HANDSHAKES = 16;
+    private static final int BATCH_HEADER = 5;
+    private static final int SIZE_8K = 8 * 1024;
+
+    private final SessionPool pool;
+    private final ExecutorService executor;
+    private final byte[] secret;
+    private final List<Peer> peers = new CopyOnWriteArrayList<Peer>();
+    private final Set<Socket> connections = Collections.synchronizedSet(new HashSet<Socket>());
+    private final Semaphore handshakes = new Semaphore(MAX_HANDSHAKES);
+    private final Map<String, Long> misses = new LinkedHashMap<String, Long>() {
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_MISSES;
+        }
+    };
+
+    private SessionPoolListener listener = SessionPoolListener.NONE;
+    private String host = "localhost";
+    private int port;
+    private int timeout = (int) TimeUnit.SECONDS.toMillis(1);
+    private long retryDelay = TimeUnit.SECONDS.toMillis(1);
+    private int maxMessageSize = 1024 * 1024;
+    private ServerSocket server;
+    private volatile boolean running;
+
+    /**
+     * @param secret the secret shared by all nodes, used to authenticate their messages
+     */
+    public ReplicatedSessionStore(SessionPool pool, ExecutorService executor, byte[] secret) {
+        if (secret.length == 0) throw new IllegalArgumentException("Empty secret");
+        this.pool = pool;
+        this.executor = executor;
+        this.secret = secret.clone();
+        this.pool.setSessionListener(new Replication());
+    }
+
+    public void setSessionListener(SessionPoolListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Sets the port on which to accept connections from peers, on the loopback interface. Use 0 to pick
+     * any free port.
+     */
+    public ReplicatedSessionStore listenOn(int port) {
+        return listenOn("localhost", port);
+    }
+
+    /**
+     * Sets the address and port on which to accept connections from peers. Use 0 to pick any free port.
+     */
+    public ReplicatedSessionStore listenOn(String host, int port) {
+        this.host = host;
+        this.port = port;
+        return this;
+    }
+
+    public ReplicatedSessionStore replicateTo(String host, int port) {
+        peers.add(new Peer(new InetSocketAddress(host, port)));
+        return this;
+    }
+
+    /**
+     * Sets how long to wait for a peer to connect or to answer a fetch, how long to wait before
+     * reconnecting to an unreachable peer, and how long to remember ids no peer knows about.
+     */
+    public ReplicatedSessionStore timeout(long duration, TimeUnit unit) {
+        this.timeout = (int) unit.toMillis(duration);
+        this.retryDelay = unit.toMillis(duration);
+        return this;
+    }
+
+    /**
+     * Sets the size of the largest message exchanged with peers, which should be the same on all nodes.
+     * Sessions that do not fit in a message stay on the node that saved them. Defaults to 1 MB.
+     */
+    public ReplicatedSessionStore maxMessageSize(int bytes) {
+        this.maxMessageSize = bytes;
+        return this;
+    }
+
+    public void start() throws IOException {
+        server = new ServerSocket();
+        server.bind(new InetSocketAddress(host, port));
+        running = true;
+        executor.submit(new Runnable() {
+            public void run() {
+                acceptPeers();
+            }
+        });
+        for (final Peer peer : peers) {
+            executor.submit(new Runnable() {
+                public void run() {
+                    peer.replicate();
+                }
+            });
+        }
+    }
+
+    public void stop() throws IOException {
+        if (server == null) return;
+        running = false;
+        server.close();
+        for (Peer peer : peers) peer.close();
+        synchronized (connections) {
+            for (Socket connection : connections) close(connection);
+        }
+    }
+
+    /**
+     * @return the port on which peers connect
+     */
+    public int port() {
+        return server.getLocalPort();
+    }
+
+    public int size() {
+        return pool.size();
+    }
+
+    public Session load(String id) {
+        Session session = pool.load(id);
+        if (session != null || recentlyMissed(id)) return session;
+        for (Peer peer : peers) {
+            Session fetched = peer.fetch(id);
+            if (fetched != null) {
+                // Keep the local version if it was saved while fetching
+                pool.restoreIfNewer(fetched);
+                return pool.load(id);
+            }
+        }
+        missed(id);
+        return null;
+    }
+
+    public String save(Session session) {
+        return pool.save(session);
+    }
+
+    public void destroy(String sid) {
+        pool.destroy(sid);
+        for (Peer peer : peers) peer.send(sid, DROP);
+    }
+
+    public void houseKeeping() {
+        pool.houseKeeping();
+    }
+
+    private boolean recentlyMissed(String sid) {
+        synchronized (misses) {
+            Long missedAt = misses.get(sid);
+            if (missedAt == null) return false;
+            if (System.currentTimeMillis() - missedAt < retryDelay) return true;
+            misses.remove(sid);
+            return false;
+        }
+    }
+
+    private void missed(String sid) {
+        if (peers.isEmpty()) return;
+        synchronized (misses) {
+            misses.put(sid, System.currentTimeMillis());
+        }
+    }
+
+    private void acceptPeers() {
+        while (running) {
+            try {
+                final Socket connection = server.accept();
+                if (!handshakes.tryAcquire()) {
+                    // Too many connections waiting to authenticate
+                    close(connection);
+                    continue;
+                }
+                connections.add(connection);
+                executor.submit(new Runnable() {
+                    public void run() {
+                        serve(connection);
+                    }
+                });
+            } catch (IOException e) {
+                // Either we're stopping or the connection failed
+            }
+        }
+    }
+
+    private void serve(Socket connection) {
+        boolean authenticated = false;
+        try {
+            connection.setSoTimeout(timeout);
+            Channel channel = Channel.accept(connection, secret, maxMessageSize);
+            connection.setSoTimeout(0);
+            handshakes.release();
+            authenticated = true;
+            while (running) {
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(channel.receive()));
+                byte request = in.readByte();
+                if (request == BATCH) {
+                    receive(in);
+                } else if (request == FETCH) {
+                    channel.send(answer(in.readUTF()));
+                } else {
+                    throw new IOException("Unknown replication request: " + request);
+                }
+            }
+        } catch (EOFException disconnected) {
+            // Peer has gone away
+        } catch (IOException e) {
+            // Peer will reconnect, unless it failed to authenticate
+        } finally {
+            if (!authenticated) handshakes.release();
+            connections.remove(connection);
+            close(connection);
+        }
+    }
+
+    private void receive(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            byte change = in.readByte();
+            if (change == SAVED) {
+                // Batches from different peers may arrive out of order
+                pool.restoreIfNewer(SessionCodec.readPortable(in));
+            } else if (change == DROPPED) {
+                pool.remove(in.readUTF());
+            } else {
+                throw new IOException("Unknown replicated change: " + change);
+            }
+        }
+    }
+
+    private byte[] answer(String sid) throws IOException {
+        Session session = pool.stored(sid);
+        byte[] record = session != null && !session.invalid() ? encode(session) : null;
+        // Leave room for the flag telling whether the session was found
+        if (record != null && record.length + 1 > maxMessageSize) record = null;
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeBoolean(record != null);
+        if (record != null) out.write(record);
+        return buffer.toByteArray();
+    }
+
+    private void replicate(String sid) {
+        Session session = pool.stored(sid);
+        if (session == null) return;
+        byte[] record = encode(session);
+        if (record != null && BATCH_HEADER + sizeOf(sid, record) > maxMessageSize) record = null;
+        // Remove previous versions from peers rather than leave them stale
+        for (Peer peer : peers) peer.send(sid, record != null ? record : DROP);
+    }
+
+    private static byte[] encode(Session session) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try {
+            SessionCodec.writePortable(new DataOutputStream(buffer), session);
+        } catch (IOException e) {
+            return null;
+        }
+        return buffer.toByteArray();
+    }
+
+    private static int sizeOf(String sid, byte[] record) {
+        // The kind of change followed by either the session or its id, at most 3 bytes per char in UTF-8
+        return 1 + (record != DROP ? record.length : 2 + 3 * sid.length());
+    }
+
+    private static void close(Socket socket) {
+        if (socket == null) return;
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static void close(Channel channel) {
+        if (channel != null) close(channel.socket);
+    }
+
+    private class Peer {
+        private final InetSocketAddress address;
+        private final Map<String, byte[]> changes = new LinkedHashMap<String, byte[]>();
+        private Channel replication;
+        private Channel fetching;
+        private long unreachableUntil;
+
+        public Peer(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        public synchronized void send(String sid, byte[] record) {
+            changes.put(sid, record);
+            notifyAll();
+        }
+
+        public void replicate() {
+            while (running) {
+                Map<String, byte[]> batch = nextBatch();
+                // Either we're stopping or we've been interrupted
+                if (batch == null) return;
+                try {
+                    write(batch);
+                } catch (IOException e) {
+                    ReplicatedSessionStore.close(replication);
+                    replication = null;
+                    requeue(batch);
+                    pause();
+                }
+            }
+        }
+
+        public synchronized Session fetch(String sid) {
+            if (System.currentTimeMillis() < unreachableUntil) return null;
+            try {
+                if (fetching == null) fetching = Channel.open(connect(), secret, maxMessageSize);
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(buffer);
+                out.writeByte(FETCH);
+                out.writeUTF(sid);
+                fetching.send(buffer.toByteArray());
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(fetching.receive()));
+                return in.readBoolean() ? SessionCodec.readPortable(in) : null;
+            } catch (IOException e) {
+                ReplicatedSessionStore.close(fetching);
+                fetching = null;
+                unreachableUntil = System.currentTimeMillis() + retryDelay;
+                return null;
+            }
+        }
+
+        public synchronized void close() {
+            ReplicatedSessionStore.close(replication);
+            ReplicatedSessionStore.close(fetching);
+            notifyAll();
+        }
+
+        private synchronized Map<String, byte[]> nextBatch() {
+            while (running && changes.isEmpty()) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+            if (!running) return null;
+            Map<String, byte[]> batch = new LinkedHashMap<String, byte[]>();
+            int size = BATCH_HEADER;
+            for (Iterator<Map.Entry<String, byte[]>> pending = changes.entrySet().iterator();
+                 pending.hasNext() && batch.size() < MAX_BATCH; ) {
+                Map.Entry<String, byte[]> change = pending.next();
+                size += sizeOf(change.getKey(), change.getValue());
+                if (size > maxMessageSize && !batch.isEmpty()) break;
+                batch.put(change.getKey(), change.getValue());
+                pending.remove();
+            }
+            return batch;
+        }
+
+        private synchronized void requeue(Map<String, byte[]> batch) {
+            for (Map.Entry<String, byte[]> change : batch.entrySet()) {
+                // Don't overwrite newer changes
+                if (!changes.containsKey(change.getKey())) changes.put(change.getKey(), change.getValue());
+            }
+        }
+
+        private void write(Map<String, byte[]> batch) throws IOException {
+            if (replication == null) replication = Channel.open(connect(), secret, maxMessageSize);
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(buffer);
+            out.writeByte(BATCH);
+            out.writeInt(batch.size());
+            for (Map.Entry<String, byte[]> change : batch.entrySet()) {
+                if (change.getValue() == DROP) {
+                    out.writeByte(DROPPED);
+                    out.writeUTF(change.getKey());
+                } else {
+                    out.writeByte(SAVED);
+                    out.write(change.getValue());
+                }
+            }
+            replication.send(buffer.toByteArray());
+        }
+
+        private Socket connect() throws IOException {
+            Socket socket = new Socket();
+            try {
+                socket.connect(address, timeout);
+                socket.setSoTimeout(timeout);
+                socket.setTcpNoDelay(true);
+                return socket;
+            } catch (IOException e) {
+                ReplicatedSessionStore.close(socket);
+                throw e;
+            }
+        }
+
+        private synchronized void pause() {
+            try {
+                wait(retryDelay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Exchanges length prefixed messages, each followed by an HMAC of the shared secret. The HMAC covers a
+     * random nonce picked by the accepting side for the connection, the direction of the message and its
+     * sequence number, so messages cannot be replayed on another connection or out of order.
+     * The connecting side first sends an empty message to prove it knows the secret.
+     */
+    private static class Channel {
+        private static final String HMAC_SHA256 = "HmacSHA256";
+        private static final int NONCE_LENGTH = 16;
+        private static final int MAC_LENGTH = 32;
+        private static final int MAX_HANDSHAKE = 1024;
+        private static final byte[] HELLO = new byte[0];
+        private static final byte ACCEPTING = 1;
+        private static final byte CONNECTING = 2;
+        private static final SecureRandom random = new SecureRandom();
+
+        public final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private final Mac mac;
+        private final byte[] nonce;
+        private final byte side;
+        private final int limit;
+        private long sent;
+        private long received;
+
+        public static Channel accept(Socket socket, byte[] secret, int limit) throws IOException {
+            byte[] nonce = new byte[NONCE_LENGTH];
+            random.nextBytes(nonce);
+            Channel channel = new Channel(socket, secret, nonce, ACCEPTING, limit);
+            channel.out.write(nonce);
+            channel.out.flush();
+            if (channel.receive(MAX_HANDSHAKE).length != HELLO.length) throw new IOException("Invalid handshake");
+            return channel;
+        }
+
+        public static Channel open(Socket socket, byte[] secret, int limit) throws IOException {
+            try {
+                byte[] nonce = new byte[NONCE_LENGTH];
+                new DataInputStream(socket.getInputStream()).readFully(nonce);
+                Channel channel = new Channel(socket, secret, nonce, CONNECTING, limit);
+                channel.send(HELLO);
+                return channel;
+            } catch (IOException e) {
+                close(socket);
+                throw e;
+            }
+        }
+
+        private Channel(Socket socket, byte[] secret, byte[] nonce, byte side, int limit) throws IOException {
+            this.socket = socket;
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), SIZE_8K));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), SIZE_8K));
+            this.nonce = nonce;
+            this.side = side;
+            this.limit = limit;
+            try {
+                this.mac = Mac.getInstance(HMAC_SHA256);
+                this.mac.init(new SecretKeySpec(secret, HMAC_SHA256));
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public void send(byte[] message) throws IOException {
+            out.writeInt(message.length);
+            out.write(message);
+            out.write(sign(side, sent++, message));
+            out.flush();
+        }
+
+        public byte[] receive() throws IOException {
+            return receive(limit);
+        }
+
+        private byte[] receive(int limit) throws IOException {
+            int length = in.readInt();
+            if (length < 0 || length > limit) throw new IOException("Invalid message length: " + length);
+            byte[] message = new byte[length];
+            in.readFully(message);
+            byte[] signature = new byte[MAC_LENGTH];
+            in.readFully(signature);
+            byte peer = side == ACCEPTING ? CONNECTING : ACCEPTING;
+            if (!MessageDigest.isEqual(signature, sign(peer, received++, message))) {
+                throw new IOException("Message failed authentication");
+            }
+            return message;
+        }
+
+        private byte[] sign(byte side, long sequence, byte[] message) {
+            mac.update(nonce);
+            mac.update(side);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                mac.update((byte) (sequence >>> shift));
+            }
+            mac.update(message);
+            return mac.doFinal();
+        }
+    }
+
+    private class Replication implements SessionPoolListener {
+        public void sessionLoaded(String sid) {
+            listener.sessionLoaded(sid);
+        }
+
+        public void sessionCreated(String sid) {
+            replicate(sid);
+            listener.sessionCreated(sid);
+        }
+
+        public void sessionSaved(String sid) {
+            replicate(sid);
+            listener.sessionSaved(sid);
+        }
+
+        public void sessionDropped(String sid) {
+            listener.sessionDropped(sid);
+        }
+    }
+}
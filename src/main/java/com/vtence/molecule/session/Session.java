@@ -2,22 +2,45 @@ package com.vtence.molecule.session;
 
 import com.vtence.molecule.Request;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 public class Session {
 
+    /**
+     * Provides the session of a request when it is first accessed.
+     */
+    public interface Provider {
+        Session session();
+    }
+
+    private static final int INLINE_ENTRIES = 4;
+    private static final Object[] NO_SLOTS = new Object[0];
+    static final long NEVER = Long.MIN_VALUE;
+
     private final String id;
-    private final Map<Object, Object> attributes = new ConcurrentHashMap<Object, Object>();
 
-    private Date createdAt;
-    private Date updatedAt;
+    // Small sessions keep their attributes inline, as alternating key and value slots.
+    // Larger sessions upgrade to a map.
+    private Object[] slots = NO_SLOTS;
+    private int count;
+    private Map<Object, Object> entries;
+    private boolean shared;
+
+    private volatile long createdAt = NEVER;
+    private volatile long updatedAt = NEVER;
     private boolean invalid;
+    private boolean modified;
     private int maxAge = -1;
 
     public Session() {
@@ -28,8 +51,32 @@ public class Session {
         this.id = id;
     }
 
+    /**
+     * Creates a copy of a session under the given id. The copies share their attributes until either one
+     * is modified.
+     */
+    Session(String id, Session other) {
+        this.id = id;
+        synchronized (other) {
+            other.shared = true;
+            this.shared = true;
+            this.slots = other.slots;
+            this.count = other.count;
+            this.entries = other.entries;
+        }
+        this.maxAge = other.maxAge;
+        this.createdAt = other.createdAt;
+        this.updatedAt = other.updatedAt;
+    }
+
     public static Session get(Request request) {
-        return request.attribute(Session.class);
+        Session session = request.attribute(Session.class);
+        if (session != null) return session;
+        Provider provider = request.attribute(Provider.class);
+        if (provider == null) return null;
+        session = provider.session();
+        session.bind(request);
+        return session;
     }
 
     public void bind(Request request) {
@@ -49,78 +96,182 @@ public class Session {
     }
 
     public Date createdAt() {
-        return createdAt;
+        return toDate(createdAt);
     }
 
     public void createdAt(Date time) {
-        createdAt = time;
+        createdAt = toTime(time);
     }
 
     public Date updatedAt() {
-        return updatedAt;
+        return toDate(updatedAt);
     }
 
     public void updatedAt(Date time) {
+        updatedAt = toTime(time);
+    }
+
+    long createdTime() {
+        return createdAt;
+    }
+
+    void createdTime(long time) {
+        createdAt = time;
+    }
+
+    long updatedTime() {
+        return updatedAt;
+    }
+
+    void updatedTime(long time) {
         updatedAt = time;
     }
 
+    private static Date toDate(long time) {
+        return time != NEVER ? new Date(time) : null;
+    }
+
+    private static long toTime(Date date) {
+        return date != null ? date.getTime() : NEVER;
+    }
+
     public int maxAge() {
         return maxAge;
     }
 
     public void maxAge(int seconds) {
+        if (seconds != maxAge) modified = true;
         maxAge = seconds;
     }
 
     public Date expirationTime() {
-        return expires() ? new Date(updatedAt.getTime() + TimeUnit.SECONDS.toMillis(maxAge)) : null;
-    }
-
-    private boolean expires() {
-        return maxAge >= 0 && updatedAt != null;
+        long updated = updatedAt;
+        return maxAge >= 0 && updated != NEVER ? new Date(updated + TimeUnit.SECONDS.toMillis(maxAge)) : null;
     }
 
-    public int size() {
-        return attributes.size();
+    public synchronized int size() {
+        return entries != null ? entries.size() : count;
     }
 
     public boolean isEmpty() {
-        return attributes.isEmpty();
+        return size() == 0;
     }
 
-    public boolean contains(Object key) {
-        return attributes.containsKey(key);
+    public synchronized boolean contains(Object key) {
+        return entries != null ? entries.containsKey(key) : slotOf(key) != -1;
     }
 
     @SuppressWarnings("unchecked")
-    public <T> T get(Object key) {
-        return (T) attributes.get(key);
+    public synchronized <T> T get(Object key) {
+        if (entries != null) return (T) entries.get(key);
+        int slot = slotOf(key);
+        return slot != -1 ? (T) slots[slot + 1] : null;
     }
 
-    public Object put(Object key, Object value) {
+    public synchronized Object put(Object key, Object value) {
+        if (key == null || value == null) throw new NullPointerException();
         checkValid();
-        return attributes.put(key, value);
+        modified = true;
+        if (entries == null) {
+            int slot = slotOf(key);
+            if (slot != -1) return replace(slot + 1, value);
+            if (count < INLINE_ENTRIES) return append(key, value);
+            upgrade();
+        }
+        if (shared) unshare();
+        return entries.put(key, value);
     }
 
-    public Object remove(Object key) {
+    public synchronized Object remove(Object key) {
         checkValid();
-        return attributes.remove(key);
+        if (!contains(key)) return null;
+        modified = true;
+        if (shared) unshare();
+        if (entries != null) return entries.remove(key);
+
+        int slot = slotOf(key);
+        Object previous = slots[slot + 1];
+        System.arraycopy(slots, slot + 2, slots, slot, 2 * count - slot - 2);
+        count--;
+        slots[2 * count] = null;
+        slots[2 * count + 1] = null;
+        return previous;
+    }
+
+    private int slotOf(Object key) {
+        for (int slot = 0; slot < 2 * count; slot += 2) {
+            if (slots[slot].equals(key)) return slot;
+        }
+        return -1;
+    }
+
+    private Object replace(int slot, Object value) {
+        if (shared) unshare();
+        Object previous = slots[slot];
+        slots[slot] = value;
+        return previous;
+    }
+
+    private Object append(Object key, Object value) {
+        if (shared || slots.length < 2 * (count + 1)) {
+            slots = Arrays.copyOf(slots, 2 * Math.min(INLINE_ENTRIES, Math.max(count + 1, 2 * count)));
+            shared = false;
+        }
+        slots[2 * count] = key;
+        slots[2 * count + 1] = value;
+        count++;
+        return null;
+    }
+
+    private void upgrade() {
+        Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+        for (int slot = 0; slot < 2 * count; slot += 2) {
+            map.put(slots[slot], slots[slot + 1]);
+        }
+        entries = map;
+        slots = NO_SLOTS;
+        count = 0;
+        shared = false;
+    }
+
+    private void unshare() {
+        if (entries != null) {
+            entries = new LinkedHashMap<Object, Object>(entries);
+        } else {
+            slots = slots.clone();
+        }
+        shared = false;
     }
 
     private void checkValid() {
         if (invalid) throw new IllegalStateException("Session invalidated");
     }
 
-    public Set<Object> keys() {
-        return Collections.unmodifiableSet(attributes.keySet());
+    public synchronized Set<Object> keys() {
+        if (entries != null) return Collections.unmodifiableSet(new LinkedHashSet<Object>(entries.keySet()));
+        Set<Object> keys = new LinkedHashSet<Object>();
+        for (int slot = 0; slot < 2 * count; slot += 2) {
+            keys.add(slots[slot]);
+        }
+        return Collections.unmodifiableSet(keys);
     }
 
-    public Collection<Object> values() {
-        return Collections.unmodifiableCollection(attributes.values());
+    public synchronized Collection<Object> values() {
+        if (entries != null) return Collections.unmodifiableCollection(new ArrayList<Object>(entries.values()));
+        List<Object> values = new ArrayList<Object>();
+        for (int slot = 1; slot < 2 * count; slot += 2) {
+            values.add(slots[slot]);
+        }
+        return Collections.unmodifiableCollection(values);
     }
 
-    public void clear() {
-        this.attributes.clear();
+    public synchronized void clear() {
+        if (isEmpty()) return;
+        modified = true;
+        slots = NO_SLOTS;
+        count = 0;
+        entries = null;
+        shared = false;
     }
 
     public void merge(Session other) {
@@ -132,13 +283,30 @@ public class Session {
     public void invalidate() {
         clear();
         invalid = true;
+        modified = true;
     }
 
     public boolean invalid() {
         return invalid;
     }
 
-    public String toString() {
-        return id + ": " + attributes.toString();
+    /**
+     * @return true if the attributes or the max age of this session have changed since it was created
+     * or loaded
+     */
+    public boolean modified() {
+        return modified;
+    }
+
+    public synchronized String toString() {
+        StringBuilder text = new StringBuilder().append(id).append(": {");
+        Iterator<Object> values = values().iterator();
+        boolean first = true;
+        for (Object key : keys()) {
+            if (!first) text.append(", ");
+            text.append(key).append('=').append(values.next());
+            first = false;
+        }
+        return text.append('}').toString();
     }
 }
\ No newline at end of file
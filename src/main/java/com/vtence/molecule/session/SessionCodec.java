@@ -0,0 +1,180 @@
+package com.vtence.molecule.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+
+/**
+ * Encodes sessions in a compact binary format.
+ *
+ * <p>
+ * Strings, numbers, booleans and byte arrays are written with a one byte type tag. Other serializable
+ * attributes fall back to Java serialization.
+ * </p>
+ *
+ * <p>
+ * Sessions read from untrusted sources should use the portable format, which only supports tagged types
+ * and never runs Java deserialization.
+ * </p>
+ */
+public final class SessionCodec {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte STRING = 1;
+    private static final byte INTEGER = 2;
+    private static final byte LONG = 3;
+    private static final byte BOOLEAN = 4;
+    private static final byte DOUBLE = 5;
+    private static final byte BYTES = 6;
+    private static final byte SERIALIZED = 7;
+
+    SessionCodec() {}
+
+    public static void write(DataOutput out, Session session) throws IOException {
+        write(out, session, true);
+    }
+
+    public static Session read(DataInput in) throws IOException {
+        return read(in, true);
+    }
+
+    /**
+     * Writes a session without falling back to Java serialization.
+     *
+     * @throws NotSerializableException if an attribute is not a string, number, boolean or byte array
+     */
+    public static void writePortable(DataOutput out, Session session) throws IOException {
+        write(out, session, false);
+    }
+
+    /**
+     * Reads a session written in the portable format.
+     *
+     * @throws InvalidObjectException if an attribute was written using Java serialization
+     */
+    public static Session readPortable(DataInput in) throws IOException {
+        return read(in, false);
+    }
+
+    private static void write(DataOutput out, Session session, boolean serialization) throws IOException {
+        writeString(out, session.id());
+        out.writeLong(session.createdTime());
+        out.writeLong(session.updatedTime());
+        out.writeInt(session.maxAge());
+        out.writeInt(session.size());
+        for (Object key : session.keys()) {
+            writeValue(out, key, serialization);
+            writeValue(out, session.get(key), serialization);
+        }
+    }
+
+    private static Session read(DataInput in, boolean serialization) throws IOException {
+        Session session = new Session(readString(in));
+        session.createdTime(in.readLong());
+        session.updatedTime(in.readLong());
+        session.maxAge(in.readInt());
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            Object key = readValue(in, serialization);
+            session.put(key, readValue(in, serialization));
+        }
+        return session;
+    }
+
+    private static void writeValue(DataOutput out, Object value, boolean serialization) throws IOException {
+        if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof byte[]) {
+            out.writeByte(BYTES);
+            writeBytes(out, (byte[]) value);
+        } else if (serialization && value instanceof Serializable) {
+            out.writeByte(SERIALIZED);
+            writeBytes(out, serialize(value));
+        } else {
+            throw new NotSerializableException(value.getClass().getName());
+        }
+    }
+
+    private static Object readValue(DataInput in, boolean serialization) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case STRING: return readString(in);
+            case INTEGER: return in.readInt();
+            case LONG: return in.readLong();
+            case BOOLEAN: return in.readBoolean();
+            case DOUBLE: return in.readDouble();
+            case BYTES: return readBytes(in);
+            case SERIALIZED:
+                if (!serialization) throw new InvalidObjectException("Serialized attributes not allowed");
+                return deserialize(readBytes(in));
+            default: throw new InvalidObjectException("Unknown attribute type: " + type);
+        }
+    }
+
+    private static void writeString(DataOutput out, String text) throws IOException {
+        if (text == null) {
+            out.writeInt(-1);
+            return;
+        }
+        writeBytes(out, text.getBytes(UTF_8));
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        byte[] bytes = readBytes(in);
+        return bytes != null ? new String(bytes, UTF_8) : null;
+    }
+
+    private static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static byte[] serialize(Object value) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(buffer);
+        out.writeObject(value);
+        out.close();
+        return buffer.toByteArray();
+    }
+
+    private static Object deserialize(byte[] bytes) throws IOException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+        try {
+            return in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new InvalidObjectException("Unknown attribute class: " + e.getMessage());
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -3,20 +3,31 @@ package com.vtence.molecule.session;
 import com.vtence.molecule.lib.Clock;
 import com.vtence.molecule.lib.SystemClock;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
-import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class SessionPool implements SessionStore, SessionHouse {
 
-    private final Map<String, Session> sessions = new ConcurrentHashMap<String, Session>();
+    private final ConcurrentMap<String, Session> sessions = new ConcurrentHashMap<String, Session>();
+    private final ExpiryQueue expiry = new ExpiryQueue();
+    private final AccessOrder accesses = new AccessOrder();
+    private final ConcurrentMap<String, Long> sizes = new ConcurrentHashMap<String, Long>();
+    private final AtomicLong totalSize = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
     private final SessionIdentifierPolicy policy;
     private final Clock clock;
 
     private SessionPoolListener listener = SessionPoolListener.NONE;
+    private int maxSessions = Integer.MAX_VALUE;
+    private long maxSize = Long.MAX_VALUE;
 
     public SessionPool() {
-        this(new SecureIdentifierPolicy());
+        this(new RandomIdentifierPolicy());
     }
 
     public SessionPool(SessionIdentifierPolicy policy) {
@@ -32,59 +43,228 @@ public class SessionPool implements SessionStore, SessionHouse {
         this.listener = listener;
     }
 
+    /**
+     * Caps the number of sessions in the pool. When the pool is full, least recently used sessions
+     * are dropped to make room for new ones.
+     */
+    public SessionPool maxSessions(int count) {
+        this.maxSessions = count;
+        return this;
+    }
+
+    /**
+     * Caps the estimated memory held by session attributes. When the pool goes over that size, least
+     * recently used sessions are dropped.
+     */
+    public SessionPool maxSize(long bytes) {
+        this.maxSize = bytes;
+        return this;
+    }
+
     public int size() {
         return sessions.size();
     }
 
+    /**
+     * @return the estimated number of bytes held by the attributes of the sessions in the pool
+     */
+    public long estimatedSize() {
+        return totalSize.get();
+    }
+
+    /**
+     * @return the number of sessions dropped to keep the pool within its limits
+     */
+    public long evictions() {
+        return evictions.get();
+    }
+
     public Session load(String id) {
         Session session = sessions.get(id);
         if (session == null || !validate(session)) return null;
         Session data = makeSession(id, session);
+        accesses.used(id);
         listener.sessionLoaded(id);
         return data;
     }
 
+    /**
+     * Saves a session. If the session was loaded from this pool and has not been modified since,
+     * it is only touched to postpone its expiration.
+     */
     public String save(Session data) {
         if (data.invalid()) throw new IllegalStateException("Session invalidated");
+        if (data.exists() && !data.modified() && touch(data.id())) {
+            listener.sessionSaved(data.id());
+            return data.id();
+        }
+
         String sid = sessionId(data);
         Session session = makeSession(sid, data);
         Date now = clock.now();
         session.updatedAt(now);
         sessions.put(sid, session);
+        expiry.schedule(sid, session.expirationTime());
+        accesses.used(sid);
+        resize(sid, SessionSize.estimate(session));
         if (sid.equals(data.id())) {
             listener.sessionSaved(sid);
         } else {
             session.createdAt(now);
             listener.sessionCreated(sid);
         }
+        evictColdSessions();
         return sid;
     }
 
     public void destroy(String sid) {
-        if (sessions.remove(sid) != null) listener.sessionDropped(sid);
+        if (sessions.remove(sid) == null) return;
+        forget(sid);
+        listener.sessionDropped(sid);
     }
 
     public void clear() {
         sessions.clear();
+        expiry.clear();
+        accesses.clear();
+        sizes.clear();
+        totalSize.set(0);
     }
 
+    /**
+     * Destroys expired sessions. Only the sessions due for expiration are visited.
+     */
     public void houseKeeping() {
-        for (Session session : sessions.values()) {
-            if (!validate(session)) destroy(session.id());
+        long now = clock.now().getTime();
+        for (String sid : expiry.due(now)) {
+            Session session = sessions.get(sid);
+            if (session == null) {
+                expiry.unschedule(sid);
+            } else if (expired(session, now) && sessions.remove(sid, session)) {
+                session.invalidate();
+                forget(sid);
+                listener.sessionDropped(sid);
+            }
         }
     }
 
+    Session stored(String sid) {
+        return sessions.get(sid);
+    }
+
+    Collection<Session> storedSessions() {
+        return Collections.unmodifiableCollection(sessions.values());
+    }
+
+    /**
+     * Lists the sessions not updated since the given time, from least to most recently used. The walk stops
+     * at the first session updated after that time, so recently used sessions are not visited.
+     */
+    Collection<Session> idleSessions(long since) {
+        Collection<Session> idle = new ArrayList<Session>();
+        for (String sid : accesses.fromLeastRecentlyUsed()) {
+            Session session = sessions.get(sid);
+            if (session == null) continue;
+            if (session.updatedTime() > since) break;
+            idle.add(session);
+        }
+        return idle;
+    }
+
+    /**
+     * Puts back a session previously stored in a pool, unless it has expired. Listeners are not notified.
+     */
+    void restore(Session session) {
+        if (session.invalid() || expired(session, clock.now().getTime())) return;
+        sessions.put(session.id(), session);
+        restored(session);
+    }
+
+    /**
+     * Puts back a copy of a session, unless it has expired or the pool holds a version updated at the same
+     * time or later. Listeners are not notified.
+     *
+     * @return true if the copy was restored
+     */
+    boolean restoreIfNewer(Session session) {
+        if (session.invalid() || expired(session, clock.now().getTime())) return false;
+        String sid = session.id();
+        while (true) {
+            Session current = sessions.get(sid);
+            if (current == null) {
+                if (sessions.putIfAbsent(sid, session) == null) break;
+            } else if (current.updatedTime() >= session.updatedTime()) {
+                return false;
+            } else if (sessions.replace(sid, current, session)) {
+                break;
+            }
+        }
+        restored(session);
+        return true;
+    }
+
+    private void restored(Session session) {
+        String sid = session.id();
+        expiry.schedule(sid, session.expirationTime());
+        accesses.used(sid);
+        resize(sid, SessionSize.estimate(session));
+        evictColdSessions();
+    }
+
+    /**
+     * Removes a session without notifying listeners.
+     */
+    void remove(String sid) {
+        if (sessions.remove(sid) != null) forget(sid);
+    }
+
+    /**
+     * Removes a session without notifying listeners, unless it has been replaced since it was read.
+     */
+    boolean remove(String sid, Session session) {
+        if (!sessions.remove(sid, session)) return false;
+        forget(sid);
+        return true;
+    }
+
+    private void evictColdSessions() {
+        while (sessions.size() > maxSessions || totalSize.get() > maxSize) {
+            String sid = accesses.leastRecentlyUsed();
+            if (sid == null) return;
+            if (sessions.remove(sid) == null) continue;
+            forget(sid);
+            evictions.incrementAndGet();
+            listener.sessionDropped(sid);
+        }
+    }
+
+    private void resize(String sid, long size) {
+        Long previous = sizes.put(sid, size);
+        totalSize.addAndGet(previous != null ? size - previous : size);
+    }
+
+    private void forget(String sid) {
+        expiry.unschedule(sid);
+        accesses.remove(sid);
+        Long size = sizes.remove(sid);
+        if (size != null) totalSize.addAndGet(-size);
+    }
+
+    private boolean touch(String sid) {
+        Session session = sessions.get(sid);
+        if (session == null || session.invalid()) return false;
+        session.updatedAt(clock.now());
+        expiry.schedule(sid, session.expirationTime());
+        accesses.used(sid);
+        return true;
+    }
+
     private String sessionId(Session data) {
         return data.exists() && contains(data.id()) ? data.id() : policy.generateId();
     }
 
     private Session makeSession(String sid, Session data) {
-        Session session = new Session(sid);
-        session.merge(data);
-        session.maxAge(data.maxAge());
-        session.updatedAt(data.updatedAt());
-        session.createdAt(data.createdAt());
-        return session;
+        return new Session(sid, data);
     }
 
     private boolean contains(String id) {
@@ -92,11 +272,12 @@ public class SessionPool implements SessionStore, SessionHouse {
     }
 
     private boolean validate(Session session) {
-        if (expired(session)) session.invalidate();
+        if (expired(session, clock.now().getTime())) session.invalidate();
         return !session.invalid();
     }
 
-    private boolean expired(Session session) {
-        return session.expirationTime() != null && !clock.now().before(session.expirationTime());
+    private boolean expired(Session session, long now) {
+        Date expirationTime = session.expirationTime();
+        return expirationTime != null && now >= expirationTime.getTime();
     }
 }
\ No newline at end of file
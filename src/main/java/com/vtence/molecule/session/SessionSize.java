@@ -0,0 +1,30 @@
+package com.vtence.molecule.session;
+
+/**
+ * Roughly estimates the memory held by a session, from the types and lengths of its attributes.
+ */
+final class SessionSize {
+    private static final long SESSION_OVERHEAD = 128;
+    private static final long ENTRY_OVERHEAD = 32;
+    private static final long OBJECT_SIZE = 16;
+    private static final long UNKNOWN_OBJECT_SIZE = 64;
+
+    SessionSize() {}
+
+    public static long estimate(Session session) {
+        long size = SESSION_OVERHEAD;
+        for (Object key : session.keys()) {
+            size += ENTRY_OVERHEAD + sizeOf(key) + sizeOf(session.get(key));
+        }
+        return size;
+    }
+
+    private static long sizeOf(Object value) {
+        if (value == null) return 0;
+        if (value instanceof CharSequence) return OBJECT_SIZE + 24 + 2L * ((CharSequence) value).length();
+        if (value instanceof Number || value instanceof Boolean || value instanceof Character) return OBJECT_SIZE;
+        if (value instanceof byte[]) return OBJECT_SIZE + ((byte[]) value).length;
+        if (value instanceof Class) return 0;
+        return UNKNOWN_OBJECT_SIZE;
+    }
+}
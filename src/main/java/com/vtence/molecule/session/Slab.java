@@ -0,0 +1,120 @@
+package com.vtence.molecule.session;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stores records in a memory-mapped file. The file is mapped in fixed size segments, which are carved
+ * into slots whose sizes are powers of two. Freed slots are reused by records of the same size class.
+ */
+class Slab {
+    private static final int MIN_SLOT_SHIFT = 7;
+
+    private final File file;
+    private final RandomAccessFile data;
+    private final int segmentSize;
+    private final List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+    private final List<long[]> freeSlots = new ArrayList<long[]>();
+    private final int[] freeCounts;
+    private long top;
+
+    public Slab(File file, int segmentSize) throws IOException {
+        if (Integer.bitCount(segmentSize) != 1 || segmentSize < 1 << MIN_SLOT_SHIFT) {
+            throw new IllegalArgumentException("Segment size must be a power of two: " + segmentSize);
+        }
+        this.file = file;
+        this.segmentSize = segmentSize;
+        this.data = new RandomAccessFile(file, "rw");
+        this.data.setLength(0);
+        int sizeClasses = Integer.numberOfTrailingZeros(segmentSize) - MIN_SLOT_SHIFT + 1;
+        this.freeCounts = new int[sizeClasses];
+        for (int i = 0; i < sizeClasses; i++) freeSlots.add(new long[16]);
+    }
+
+    public int maxRecordSize() {
+        return segmentSize;
+    }
+
+    public synchronized long capacity() {
+        return (long) segments.size() * segmentSize;
+    }
+
+    /**
+     * Writes a record and returns its address in the slab.
+     */
+    public synchronized long write(byte[] record) throws IOException {
+        if (record.length > segmentSize) {
+            throw new IllegalArgumentException("Record too large: " + record.length + " bytes");
+        }
+        int sizeClass = sizeClassOf(record.length);
+        long address = freeCounts[sizeClass] > 0 ? freeSlots.get(sizeClass)[--freeCounts[sizeClass]]
+                                                 : allocate(slotSize(sizeClass));
+        ByteBuffer segment = segmentAt(address);
+        segment.position(offsetOf(address));
+        segment.put(record);
+        return address;
+    }
+
+    public synchronized byte[] read(long address, int length) {
+        ByteBuffer segment = segmentAt(address);
+        segment.position(offsetOf(address));
+        byte[] record = new byte[length];
+        segment.get(record);
+        return record;
+    }
+
+    /**
+     * Releases the slot of a record, so that it can be reused.
+     */
+    public synchronized void free(long address, int length) {
+        int sizeClass = sizeClassOf(length);
+        long[] slots = freeSlots.get(sizeClass);
+        if (freeCounts[sizeClass] == slots.length) {
+            long[] grown = new long[slots.length * 2];
+            System.arraycopy(slots, 0, grown, 0, slots.length);
+            freeSlots.set(sizeClass, slots = grown);
+        }
+        slots[freeCounts[sizeClass]++] = address;
+    }
+
+    public synchronized void close() throws IOException {
+        segments.clear();
+        data.close();
+        file.delete();
+    }
+
+    private long allocate(int slotSize) throws IOException {
+        // Aligning slots on their size guarantees they never span two segments
+        top = (top + slotSize - 1) & -slotSize;
+        if (top == capacity()) {
+            FileChannel channel = data.getChannel();
+            segments.add(channel.map(FileChannel.MapMode.READ_WRITE, top, segmentSize));
+        }
+        long address = top;
+        top += slotSize;
+        return address;
+    }
+
+    private ByteBuffer segmentAt(long address) {
+        return segments.get((int) (address / segmentSize));
+    }
+
+    private int offsetOf(long address) {
+        return (int) (address % segmentSize);
+    }
+
+    private static int sizeClassOf(int length) {
+        int shift = length <= 1 << MIN_SLOT_SHIFT ? MIN_SLOT_SHIFT : 32 - Integer.numberOfLeadingZeros(length - 1);
+        return shift - MIN_SLOT_SHIFT;
+    }
+
+    private static int slotSize(int sizeClass) {
+        return 1 << (sizeClass + MIN_SLOT_SHIFT);
+    }
+}
@@ -0,0 +1,212 @@
+package com.vtence.molecule.session;
+
+import com.vtence.molecule.lib.Clock;
+import com.vtence.molecule.lib.SystemClock;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A session store that keeps recently used sessions in a {@link SessionPool} and moves idle ones to a
+ * memory-mapped file on disk.
+ *
+ * <p>
+ * Idle sessions are demoted during house keeping. Only an index of demoted sessions stays on the heap.
+ * A demoted session is promoted back to the pool when it is loaded again. The disk tier is not meant to
+ * survive restarts: its file is emptied when the store is created and deleted when it is closed.
+ * </p>
+ *
+ * <p>
+ * Sessions evicted to keep the pool within its limits are dropped, not demoted. Bound the pool generously
+ * and let house keeping move idle sessions to disk.
+ * </p>
+ */
+public class TieredSessionStore implements SessionStore, SessionHouse {
+    private static final int SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final long DEFAULT_IDLE_TIME = TimeUnit.MINUTES.toMillis(5);
+
+    private final SessionPool pool;
+    private final Slab slab;
+    private final Clock clock;
+    private final ConcurrentMap<String, ColdSession> cold = new ConcurrentHashMap<String, ColdSession>();
+    private final ExpiryQueue coldExpiry = new ExpiryQueue();
+    private final Object promotion = new Object();
+
+    private SessionPoolListener listener = SessionPoolListener.NONE;
+    private long idleTime = DEFAULT_IDLE_TIME;
+
+    public TieredSessionStore(File file) throws IOException {
+        this(file, new SessionPool(), new SystemClock());
+    }
+
+    public TieredSessionStore(File file, SessionPool pool, Clock clock) throws IOException {
+        this(new Slab(file, SEGMENT_SIZE), pool, clock);
+    }
+
+    TieredSessionStore(Slab slab, SessionPool pool, Clock clock) {
+        this.slab = slab;
+        this.pool = pool;
+        this.clock = clock;
+    }
+
+    public void setSessionListener(SessionPoolListener listener) {
+        this.listener = listener;
+        this.pool.setSessionListener(listener);
+    }
+
+    /**
+     * Sets how long a session stays unused in memory before it is moved to disk.
+     */
+    public TieredSessionStore demoteAfter(long duration, TimeUnit unit) {
+        this.idleTime = unit.toMillis(duration);
+        return this;
+    }
+
+    public int size() {
+        return pool.size() + cold.size();
+    }
+
+    public int demoted() {
+        return cold.size();
+    }
+
+    public Session load(String id) {
+        Session session = pool.load(id);
+        if (session != null || !cold.containsKey(id)) return session;
+        promote(id);
+        return pool.load(id);
+    }
+
+    public String save(Session session) {
+        if (session.exists() && cold.containsKey(session.id())) promote(session.id());
+        return pool.save(session);
+    }
+
+    public void destroy(String sid) {
+        ColdSession demoted;
+        synchronized (promotion) {
+            demoted = cold.remove(sid);
+            if (demoted != null) {
+                coldExpiry.unschedule(sid);
+                slab.free(demoted.address, demoted.length);
+            }
+        }
+        if (demoted != null) listener.sessionDropped(sid);
+        pool.destroy(sid);
+    }
+
+    public void houseKeeping() {
+        pool.houseKeeping();
+        long now = clock.now().getTime();
+        dropExpired(now);
+        demoteIdle(now);
+    }
+
+    public void close() throws IOException {
+        cold.clear();
+        coldExpiry.clear();
+        slab.close();
+    }
+
+    private void promote(String sid) {
+        synchronized (promotion) {
+            ColdSession demoted = cold.remove(sid);
+            if (demoted == null) return;
+            coldExpiry.unschedule(sid);
+            byte[] record = slab.read(demoted.address, demoted.length);
+            slab.free(demoted.address, demoted.length);
+            pool.restore(decode(record));
+        }
+    }
+
+    private void demoteIdle(long now) {
+        for (Session session : pool.idleSessions(now - idleTime)) {
+            try {
+                demote(session);
+            } catch (IOException e) {
+                // Sessions that cannot be written to disk stay in memory
+            } catch (IllegalArgumentException e) {
+                // Neither can sessions too large to fit in the file
+            }
+        }
+    }
+
+    private void demote(Session session) throws IOException {
+        long updatedTime = session.updatedTime();
+        byte[] record = encode(session);
+        long address = slab.write(record);
+        String sid = session.id();
+        synchronized (promotion) {
+            cold.put(sid, new ColdSession(address, record.length, expirationOf(session)));
+            if (!pool.remove(sid, session)) {
+                // The session was saved while we were writing it
+                discard(sid, address, record.length);
+            } else if (session.updatedTime() != updatedTime) {
+                // The session was touched while we were writing it, so the record has a stale expiration
+                discard(sid, address, record.length);
+                pool.restore(session);
+            } else {
+                coldExpiry.schedule(sid, session.expirationTime());
+            }
+        }
+    }
+
+    private void discard(String sid, long address, int length) {
+        cold.remove(sid);
+        slab.free(address, length);
+    }
+
+    private void dropExpired(long now) {
+        for (String sid : coldExpiry.due(now)) {
+            ColdSession demoted;
+            synchronized (promotion) {
+                demoted = cold.get(sid);
+                if (demoted != null && now < demoted.expiresAt) continue;
+                coldExpiry.unschedule(sid);
+                if (demoted == null) continue;
+                cold.remove(sid);
+                slab.free(demoted.address, demoted.length);
+            }
+            listener.sessionDropped(sid);
+        }
+    }
+
+    private static long expirationOf(Session session) {
+        Date expirationTime = session.expirationTime();
+        return expirationTime != null ? expirationTime.getTime() : Long.MAX_VALUE;
+    }
+
+    private static byte[] encode(Session session) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        SessionCodec.write(new DataOutputStream(buffer), session);
+        return buffer.toByteArray();
+    }
+
+    private static Session decode(byte[] record) {
+        try {
+            return SessionCodec.read(new DataInputStream(new ByteArrayInputStream(record)));
+        } catch (IOException e) {
+            throw new IllegalStateException("Corrupted session record", e);
+        }
+    }
+
+    private static class ColdSession {
+        public final long address;
+        public final int length;
+        public final long expiresAt;
+
+        public ColdSession(long address, int length, long expiresAt) {
+            this.address = address;
+            this.length = length;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
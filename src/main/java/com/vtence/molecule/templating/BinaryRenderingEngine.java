@@ -0,0 +1,13 @@
+package com.vtence.molecule.templating;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * A rendering engine that can write a view directly as bytes, in the given charset.
+ */
+public interface BinaryRenderingEngine extends RenderingEngine {
+
+    void render(OutputStream out, Charset charset, String view, Object context) throws IOException;
+}
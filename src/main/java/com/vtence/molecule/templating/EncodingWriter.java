@@ -0,0 +1,91 @@
+package com.vtence.molecule.templating;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Writes text to an output stream, copying the bytes of pre-encoded text as is and encoding the rest.
+ */
+class EncodingWriter extends Writer {
+    private final Charset charset;
+    private final OutputStream bytes;
+    private final Writer chars;
+    private final PreEncodedText text;
+    private final Set<String> written;
+
+    public EncodingWriter(OutputStream out, Charset charset, PreEncodedText text) {
+        this.charset = charset;
+        this.bytes = new BufferedOutputStream(out);
+        this.chars = new OutputStreamWriter(new Unflushed(bytes), charset);
+        this.text = text;
+        this.written = text.learning() ? Collections.newSetFromMap(new IdentityHashMap<String, Boolean>()) : null;
+    }
+
+    public Charset charset() {
+        return charset;
+    }
+
+    /**
+     * Writes text already encoded in the charset of this writer.
+     */
+    public void write(byte[] encoded) throws IOException {
+        chars.flush();
+        bytes.write(encoded);
+    }
+
+    public void write(String str) throws IOException {
+        byte[] encoded = text.bytesOf(str);
+        if (encoded != null) {
+            write(encoded);
+            return;
+        }
+        if (written != null && str.length() > 0) written.add(str);
+        chars.write(str);
+    }
+
+    public void write(char[] buffer, int offset, int length) throws IOException {
+        chars.write(buffer, offset, length);
+    }
+
+    public void write(int c) throws IOException {
+        chars.write(c);
+    }
+
+    public void flush() throws IOException {
+        chars.flush();
+        bytes.flush();
+    }
+
+    public void close() throws IOException {
+        flush();
+    }
+
+    /**
+     * Records the text written during the render, once the render has completed.
+     */
+    public void done() throws IOException {
+        flush();
+        if (written != null) text.learn(written);
+    }
+
+    private static class Unflushed extends FilterOutputStream {
+        public Unflushed(OutputStream out) {
+            super(out);
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        public void flush() {
+        }
+    }
+}
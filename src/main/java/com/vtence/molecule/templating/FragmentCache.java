@@ -0,0 +1,236 @@
+package com.vtence.molecule.templating;
+
+import com.samskivert.mustache.Mustache;
+import com.samskivert.mustache.Template.Fragment;
+import com.vtence.molecule.Body;
+import com.vtence.molecule.helpers.Charsets;
+import com.vtence.molecule.lib.ChunkedBody;
+import com.vtence.molecule.lib.Clock;
+import com.vtence.molecule.lib.SystemClock;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches the rendered bytes of template fragments, such as partials or sections, so that fragments
+ * rendering identical output are rendered only once.
+ *
+ * <p>
+ * Fragments are cached by name and by a key derived from the rendering context - for instance the id and
+ * version of the entity rendered. Cached fragments expire after a configurable time to live. When the
+ * total size of the cached fragments exceeds the cache capacity, least recently used fragments are evicted.
+ * </p>
+ */
+public class FragmentCache {
+
+    public interface KeyGenerator {
+        Object keyFor(Object context);
+    }
+
+    private final long capacity;
+    private final Map<Key, CachedFragment> fragments = new LinkedHashMap<Key, CachedFragment>(16, 0.75f, true);
+
+    private Clock clock = new SystemClock();
+    private long timeToLive = -1;
+    private long size;
+
+    /**
+     * @param capacity the maximum number of bytes held in the cache
+     */
+    public FragmentCache(long capacity) {
+        this.capacity = capacity;
+    }
+
+    public FragmentCache clock(Clock clock) {
+        this.clock = clock;
+        return this;
+    }
+
+    public FragmentCache expireAfter(long duration, TimeUnit unit) {
+        this.timeToLive = unit.toMillis(duration);
+        return this;
+    }
+
+    /**
+     * Caches the rendering of a template, under the given name and by the key derived from each
+     * rendering context.
+     */
+    public Template cache(final String name, final Template template, final KeyGenerator keys) {
+        return new Template() {
+            public Body render(final Object context) throws IOException {
+                return new ChunkedBody() {
+                    public void writeTo(OutputStream out, Charset charset) throws IOException {
+                        Object key = keys.keyFor(context);
+                        byte[] fragment = get(name, key, charset);
+                        if (fragment == null) {
+                            fragment = renderBytes(template, context, charset);
+                            put(name, key, charset, fragment);
+                        }
+                        out.write(fragment);
+                    }
+
+                    public void close() throws IOException {
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Caches the rendering of a mustache section under the given name, by the key derived from each
+     * rendering context. Mustache lambdas are not told the context they render, so the section has to be
+     * bound to its context - usually the view holding the lambda.
+     */
+    public Section section(String name, KeyGenerator keys) {
+        return new Section(name, keys);
+    }
+
+    public class Section {
+        private final String name;
+        private final KeyGenerator keys;
+
+        private Section(String name, KeyGenerator keys) {
+            this.name = name;
+            this.keys = keys;
+        }
+
+        /**
+         * The section is rendered once per key and its bytes are spliced as is into the views that use the lambda.
+         */
+        public Mustache.Lambda of(final Object context) {
+            return new Mustache.Lambda() {
+                public void execute(Fragment frag, Writer out) throws IOException {
+                    EncodingWriter encoder = out instanceof EncodingWriter ? (EncodingWriter) out : null;
+                    Charset charset = encoder != null ? encoder.charset() : Charsets.UTF_8;
+                    Object key = keys.keyFor(context);
+                    byte[] fragment = get(name, key, charset);
+                    if (fragment == null) {
+                        fragment = frag.execute().getBytes(charset);
+                        put(name, key, charset, fragment);
+                    }
+                    if (encoder != null) {
+                        encoder.write(fragment);
+                    } else {
+                        out.write(new String(fragment, charset));
+                    }
+                }
+            };
+        }
+    }
+
+    public synchronized byte[] get(String name, Object key, Charset charset) {
+        Key cacheKey = new Key(name, key, charset);
+        CachedFragment fragment = fragments.get(cacheKey);
+        if (fragment == null) return null;
+        if (fragment.expired(clock.now().getTime())) {
+            discard(cacheKey);
+            return null;
+        }
+        return fragment.content;
+    }
+
+    public synchronized void put(String name, Object key, Charset charset, byte[] content) {
+        if (content.length > capacity) return;
+        Key cacheKey = new Key(name, key, charset);
+        discard(cacheKey);
+        long expiresAt = timeToLive < 0 ? Long.MAX_VALUE : clock.now().getTime() + timeToLive;
+        fragments.put(cacheKey, new CachedFragment(content, expiresAt));
+        size += content.length;
+        evict();
+    }
+
+    /**
+     * Discards all cached fragments with the given name.
+     */
+    public synchronized void invalidate(String name) {
+        for (Iterator<Map.Entry<Key, CachedFragment>> entries = fragments.entrySet().iterator(); entries.hasNext(); ) {
+            Map.Entry<Key, CachedFragment> entry = entries.next();
+            if (entry.getKey().name.equals(name)) {
+                size -= entry.getValue().content.length;
+                entries.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        fragments.clear();
+        size = 0;
+    }
+
+    public synchronized int count() {
+        return fragments.size();
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    private void evict() {
+        Iterator<CachedFragment> eldest = fragments.values().iterator();
+        while (size > capacity && eldest.hasNext()) {
+            size -= eldest.next().content.length;
+            eldest.remove();
+        }
+    }
+
+    private void discard(Key key) {
+        CachedFragment fragment = fragments.remove(key);
+        if (fragment != null) size -= fragment.content.length;
+    }
+
+    private static byte[] renderBytes(Template template, Object context, Charset charset) throws IOException {
+        Body body = template.render(context);
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            body.writeTo(buffer, charset);
+            return buffer.toByteArray();
+        } finally {
+            body.close();
+        }
+    }
+
+    private static class Key {
+        public final String name;
+        public final Object key;
+        public final Charset charset;
+
+        public Key(String name, Object key, Charset charset) {
+            if (key == null) throw new IllegalArgumentException("No cache key for fragment " + name);
+            this.name = name;
+            this.key = key;
+            this.charset = charset;
+        }
+
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return name.equals(other.name) && key.equals(other.key) && charset.equals(other.charset);
+        }
+
+        public int hashCode() {
+            return 31 * (31 * name.hashCode() + key.hashCode()) + charset.hashCode();
+        }
+    }
+
+    private static class CachedFragment {
+        public final byte[] content;
+        public final long expiresAt;
+
+        public CachedFragment(byte[] content, long expiresAt) {
+            this.content = content;
+            this.expiresAt = expiresAt;
+        }
+
+        public boolean expired(long now) {
+            return now >= expiresAt;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.vtence.molecule.templating;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * A rendering engine that can tell, without rendering a view, which values the view reads from its context.
+ */
+public interface IntrospectableRenderingEngine extends RenderingEngine {
+
+    /**
+     * @return the names of the context values read by the view and its partials, or null if they
+     * cannot be known before rendering
+     */
+    Set<String> variablesOf(String view) throws IOException;
+}
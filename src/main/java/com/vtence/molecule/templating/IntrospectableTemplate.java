@@ -0,0 +1,16 @@
+package com.vtence.molecule.templating;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * A template that can tell, without rendering, which values it reads from its context.
+ */
+public interface IntrospectableTemplate extends Template {
+
+    /**
+     * @return the names of the context values read by the template, or null if they cannot be known
+     * before rendering
+     */
+    Set<String> variables() throws IOException;
+}
@@ -4,27 +4,48 @@ import com.samskivert.mustache.Mustache;
 import com.samskivert.mustache.Template;
 import com.vtence.molecule.helpers.Charsets;
 import com.vtence.molecule.helpers.Streams;
+import com.vtence.molecule.lib.Clock;
+import com.vtence.molecule.lib.SystemClock;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
 import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
-public class JMustacheRenderer implements RenderingEngine {
+public class JMustacheRenderer implements BinaryRenderingEngine, IntrospectableRenderingEngine {
 
+    private static final long NO_CACHE = -2;
+    private static final long NEVER_CHECK = -1;
+
+    private final Map<String, CompiledTemplate> cache = new ConcurrentHashMap<String, CompiledTemplate>();
+    private final ThreadLocal<CompiledTemplate> compiling = new ThreadLocal<CompiledTemplate>();
+
+    private final boolean staches;
     private Mustache.Compiler mustache;
     private File path = new File(".");
     private Charset encoding = Charsets.UTF_8;
     private String extension = "mustache";
+    private Clock clock = new SystemClock();
+    private long checkInterval = NO_CACHE;
 
     public JMustacheRenderer() {
         this(Mustache.compiler());
     }
 
     public JMustacheRenderer(Mustache.Compiler compiler) {
+        this.staches = usesStaches(compiler);
         this.mustache = compiler.withLoader(new Mustache.TemplateLoader() {
             public Reader getTemplate(String name) throws Exception {
                 return load(name);
@@ -34,21 +55,25 @@ public class JMustacheRenderer implements RenderingEngine {
 
     public JMustacheRenderer fromDir(File dir) {
         this.path = dir;
+        cache.clear();
         return this;
     }
 
     public JMustacheRenderer extension(String ext) {
         this.extension = ext;
+        cache.clear();
         return this;
     }
 
     public JMustacheRenderer defaultValue(String defaultValue) {
         mustache = mustache.defaultValue(defaultValue);
+        cache.clear();
         return this;
     }
 
     public JMustacheRenderer nullValue(String nullValue) {
         mustache = mustache.nullValue(nullValue);
+        cache.clear();
         return this;
     }
 
@@ -59,16 +84,159 @@ public class JMustacheRenderer implements RenderingEngine {
 
     public JMustacheRenderer encoding(Charset charset) {
         this.encoding = charset;
+        cache.clear();
+        return this;
+    }
+
+    /**
+     * Keeps compiled templates in memory, without ever checking template files for changes.
+     */
+    public JMustacheRenderer cacheTemplates() {
+        this.checkInterval = NEVER_CHECK;
         return this;
     }
 
+    /**
+     * Keeps compiled templates in memory, recompiling a template when its file - or the file of one
+     * of its partials - has changed. Files are checked for changes at most once per interval.
+     */
+    public JMustacheRenderer cacheTemplates(long interval, TimeUnit unit) {
+        this.checkInterval = unit.toMillis(interval);
+        return this;
+    }
+
+    public JMustacheRenderer clock(Clock clock) {
+        this.clock = clock;
+        return this;
+    }
+
+    /**
+     * Compiles all the templates found in the templates directory and its sub-directories.
+     * This turns template caching on if it was not already enabled.
+     */
+    public JMustacheRenderer preload() throws IOException {
+        if (!caching()) cacheTemplates();
+        preload(path, "");
+        return this;
+    }
+
+    private void preload(File dir, String prefix) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        String suffix = "." + extension;
+        for (File file : files) {
+            if (file.isDirectory()) {
+                preload(file, prefix + file.getName() + "/");
+            } else if (file.getName().endsWith(suffix)) {
+                String view = prefix + file.getName().substring(0, file.getName().length() - suffix.length());
+                cache.put(view, compile(view));
+            }
+        }
+    }
+
     public void render(Writer out, String view, Object context) throws IOException {
+        if (!caching()) {
+            compile(view).template.execute(context, out);
+            return;
+        }
+
+        CompiledTemplate compiled = lookup(view);
+        compiling.set(compiled);
+        try {
+            compiled.template.execute(context, out);
+        } finally {
+            compiling.remove();
+        }
+    }
+
+    /**
+     * Renders a view directly as bytes. When templates are cached, the static text of a template is
+     * encoded once per charset and only the interpolated values are encoded on each render.
+     */
+    public void render(OutputStream out, Charset charset, String view, Object context) throws IOException {
+        if (!caching() || !PreEncodedText.supports(charset)) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, charset));
+            render(writer, view, context);
+            writer.flush();
+            return;
+        }
+
+        CompiledTemplate compiled = lookup(view);
+        EncodingWriter writer = new EncodingWriter(out, charset, compiled.encodedIn(charset));
+        compiling.set(compiled);
+        try {
+            compiled.template.execute(context, writer);
+        } finally {
+            compiling.remove();
+        }
+        writer.done();
+    }
+
+    /**
+     * Lists the names read by a view and its partials, by scanning their sources. When templates are cached,
+     * a view is scanned once per compilation.
+     */
+    public Set<String> variablesOf(String view) throws IOException {
+        if (!staches) return null;
+        if (!caching()) return scan(view, null);
+
+        CompiledTemplate compiled = lookup(view);
+        if (!compiled.scanned) {
+            compiled.variables = scan(view, compiled);
+            compiled.scanned = true;
+        }
+        return compiled.variables;
+    }
+
+    private Set<String> scan(String view, CompiledTemplate compiled) throws IOException {
+        compiling.set(compiled);
+        try {
+            return MustacheVariables.of(view, new MustacheVariables.Sources() {
+                public String load(String name) throws IOException {
+                    return source(name);
+                }
+            });
+        } finally {
+            compiling.remove();
+        }
+    }
+
+    // The delimiters of a compiler are not visible from outside its package
+    private static boolean usesStaches(Mustache.Compiler compiler) {
+        return compiler.compile("{{a}}").execute(Collections.singletonMap("a", "")).isEmpty();
+    }
+
+    private boolean caching() {
+        return checkInterval != NO_CACHE;
+    }
+
+    private CompiledTemplate lookup(String view) throws IOException {
+        CompiledTemplate compiled = cache.get(view);
+        if (compiled == null || stale(compiled)) {
+            compiled = compile(view);
+            cache.put(view, compiled);
+        }
+        return compiled;
+    }
+
+    private boolean stale(CompiledTemplate compiled) {
+        if (checkInterval == NEVER_CHECK) return false;
+        long now = clock.now().getTime();
+        if (now - compiled.checkedAt < checkInterval) return false;
+        compiled.checkedAt = now;
+        return compiled.modified();
+    }
+
+    private CompiledTemplate compile(String view) throws IOException {
+        CompiledTemplate compiled = new CompiledTemplate(clock.now().getTime());
+        compiling.set(compiled);
         Reader source = null;
         try {
             source = load(view);
-            Template template = mustache.compile(source);
-            template.execute(context, out);
+            compiled.template = mustache.compile(source);
+            return compiled;
         } finally {
+            compiling.remove();
             Streams.close(source);
         }
     }
@@ -77,7 +245,53 @@ public class JMustacheRenderer implements RenderingEngine {
         return new InputStreamReader(new FileInputStream(templateFile(name)), encoding);
     }
 
+    private String source(String name) throws IOException {
+        InputStream in = new FileInputStream(templateFile(name));
+        try {
+            return Streams.toString(in, encoding);
+        } finally {
+            Streams.close(in);
+        }
+    }
+
     private File templateFile(String name) {
-        return new File(path, name + "." + extension);
+        File file = new File(path, name + "." + extension);
+        CompiledTemplate compiled = compiling.get();
+        if (compiled != null) compiled.dependsOn(file);
+        return file;
+    }
+
+    private static class CompiledTemplate {
+        private final Map<File, Long> dependencies = new ConcurrentHashMap<File, Long>();
+        private final Map<Charset, PreEncodedText> encodings = new ConcurrentHashMap<Charset, PreEncodedText>();
+
+        public Template template;
+        public volatile long checkedAt;
+        public volatile Set<String> variables;
+        public volatile boolean scanned;
+
+        public CompiledTemplate(long checkedAt) {
+            this.checkedAt = checkedAt;
+        }
+
+        public void dependsOn(File file) {
+            dependencies.put(file, file.lastModified());
+        }
+
+        public PreEncodedText encodedIn(Charset charset) {
+            PreEncodedText text = encodings.get(charset);
+            if (text == null) {
+                text = new PreEncodedText(charset);
+                encodings.put(charset, text);
+            }
+            return text;
+        }
+
+        public boolean modified() {
+            for (Map.Entry<File, Long> dependency : dependencies.entrySet()) {
+                if (dependency.getKey().lastModified() != dependency.getValue()) return true;
+            }
+            return false;
+        }
     }
-}
\ No newline at end of file
+}
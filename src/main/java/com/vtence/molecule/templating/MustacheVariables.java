@@ -0,0 +1,67 @@
+package com.vtence.molecule.templating;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Lists the names a mustache template reads from its context, following its partials.
+ *
+ * <p>
+ * The listing errs on the safe side: names read from the context of a section are listed as well, as
+ * they fall back to the enclosing context when the section value does not have them. Templates that
+ * change their delimiters cannot be listed.
+ * </p>
+ */
+class MustacheVariables {
+
+    public interface Sources {
+        String load(String name) throws IOException;
+    }
+
+    private final Sources sources;
+    private final Set<String> names = new HashSet<String>();
+    private final Set<String> scanned = new HashSet<String>();
+
+    public static Set<String> of(String view, Sources sources) throws IOException {
+        MustacheVariables variables = new MustacheVariables(sources);
+        return variables.scan(view) ? variables.names : null;
+    }
+
+    private MustacheVariables(Sources sources) {
+        this.sources = sources;
+    }
+
+    private boolean scan(String view) throws IOException {
+        if (!scanned.add(view)) return true;
+        String text = sources.load(view);
+        int pos = 0;
+        int open;
+        while ((open = text.indexOf("{{", pos)) != -1) {
+            boolean triple = text.startsWith("{{{", open);
+            int start = open + (triple ? 3 : 2);
+            int close = text.indexOf(triple ? "}}}" : "}}", start);
+            if (close == -1) return false;
+            pos = close + (triple ? 3 : 2);
+
+            String tag = text.substring(start, close).trim();
+            if (tag.isEmpty()) continue;
+            char type = tag.charAt(0);
+            if (type == '=') return false;
+            if (type == '!' || type == '/') continue;
+            if (type == '>') {
+                if (!scan(tag.substring(1).trim())) return false;
+                continue;
+            }
+            if (type == '#' || type == '^' || type == '&') tag = tag.substring(1).trim();
+            read(tag);
+        }
+        return true;
+    }
+
+    private void read(String name) {
+        if (name.equals(".") || name.equals("this") || name.startsWith("-")) return;
+        int dot = name.indexOf('.');
+        names.add(dot > 0 ? name.substring(0, dot) : name);
+    }
+}
@@ -0,0 +1,58 @@
+package com.vtence.molecule.templating;
+
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Holds the bytes of the static text of a compiled template, encoded once in a given charset.
+ *
+ * <p>
+ * Static text is identified by its string instances: a compiled template writes the very same
+ * strings on every render. The text written during the first two renders is recorded and the strings
+ * written on both occasions are then encoded. Since strings are immutable, an encoding is valid
+ * for as long as the instance is in use.
+ * </p>
+ */
+class PreEncodedText {
+    private final Charset charset;
+
+    private Set<String> firstRender;
+    private volatile Map<String, byte[]> encoded;
+
+    public static boolean supports(Charset charset) {
+        byte[] single = "a".getBytes(charset);
+        byte[] twice = "aa".getBytes(charset);
+        return twice.length == 2 * single.length;
+    }
+
+    public PreEncodedText(Charset charset) {
+        this.charset = charset;
+    }
+
+    public boolean learning() {
+        return encoded == null;
+    }
+
+    public byte[] bytesOf(String text) {
+        Map<String, byte[]> encoded = this.encoded;
+        return encoded != null ? encoded.get(text) : null;
+    }
+
+    public synchronized void learn(Set<String> written) {
+        if (!learning()) return;
+        if (firstRender == null) {
+            firstRender = written;
+            return;
+        }
+
+        Map<String, byte[]> encoded = new IdentityHashMap<String, byte[]>();
+        for (String text : firstRender) {
+            if (written.contains(text)) encoded.put(text, text.getBytes(charset));
+        }
+        this.encoded = Collections.unmodifiableMap(encoded);
+        this.firstRender = null;
+    }
+}
@@ -21,6 +21,10 @@ public class TemplateBody extends ChunkedBody {
     }
 
     public void writeTo(OutputStream out, Charset charset) throws IOException {
+        if (renderer instanceof BinaryRenderingEngine) {
+            ((BinaryRenderingEngine) renderer).render(out, charset, template, context);
+            return;
+        }
         Writer writer = new BufferedWriter(new OutputStreamWriter(out, charset));
         renderer.render(writer, template, context);
         writer.flush();
@@ -3,6 +3,7 @@ package com.vtence.molecule.templating;
 import com.vtence.molecule.Body;
 
 import java.io.IOException;
+import java.util.Set;
 
 public class Templates {
     private final RenderingEngine renderer;
@@ -12,10 +13,15 @@ public class Templates {
     }
 
     public Template named(final String name) {
-        return new Template() {
+        return new IntrospectableTemplate() {
             public Body render(Object context) throws IOException {
                 return new TemplateBody(renderer, name, context);
             }
+
+            public Set<String> variables() throws IOException {
+                if (!(renderer instanceof IntrospectableRenderingEngine)) return null;
+                return ((IntrospectableRenderingEngine) renderer).variablesOf(name);
+            }
         };
     }
 }
\ No newline at end of file
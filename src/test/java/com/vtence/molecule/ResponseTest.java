@@ -74,4 +74,14 @@ public class ResponseTest {
         response.contentType("text/html");
         assertThat("charset", response.contentType(), equalTo("text/html"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void followsChangesOfContentTypeHeader() {
+        response.contentType("text/html; charset=utf-8");
+        assertThat("charset", response.charset(), equalTo(Charsets.UTF_8));
+        response.header("Content-Type", "text/html; charset=iso-8859-1");
+        assertThat("changed charset", response.charset(), equalTo(Charsets.ISO_8859_1));
+        response.removeHeader("Content-Type");
+        assertThat("default charset", response.charset(), equalTo(Charsets.ISO_8859_1));
+    }
+}
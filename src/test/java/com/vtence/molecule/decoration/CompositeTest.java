@@ -0,0 +1,194 @@
+package com.vtence.molecule.decoration;
+
+import com.vtence.molecule.Application;
+import com.vtence.molecule.Body;
+import com.vtence.molecule.Request;
+import com.vtence.molecule.Response;
+import com.vtence.molecule.http.HttpStatus;
+import com.vtence.molecule.lib.ChunkedBody;
+import com.vtence.molecule.lib.TextBody;
+import com.vtence.molecule.templating.Template;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.fail;
+
+public class CompositeTest {
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    Composite composite = new Composite(executor);
+
+    Request request = new Request().path("/products");
+    Map<String, String> content = new HashMap<String, String>();
+    Charset utf8 = Charset.forName("UTF-8");
+
+    @After public void
+    stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test public void
+    assemblesFragmentsInOrder() throws IOException {
+        content.put("body", "<main>products</main>");
+        composite.template(new Template() {
+            public Body render(Object context) {
+                return TextBody.text("<header/>");
+            }
+        }).chunk("body").application(new Application() {
+            public void handle(Request request, Response response) {
+                response.body("<aside>" + request.path() + "</aside>");
+            }
+        });
+
+        assertThat("page", render(composite.merge(request, content)),
+                equalTo("<header/><main>products</main><aside>/products</aside>"));
+    }
+
+    @Test public void
+    rendersTemplatesWithPageContent() throws IOException {
+        content.put("title", "Products");
+        composite.template(new Template() {
+            @SuppressWarnings("unchecked")
+            public Body render(Object context) {
+                return TextBody.text("<h1>" + ((Map<String, String>) context).get("title") + "</h1>");
+            }
+        });
+
+        assertThat("page", render(composite.merge(request, content)), equalTo("<h1>Products</h1>"));
+    }
+
+    @Test public void
+    producesFragmentsConcurrently() throws IOException {
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        Application widget = new Application() {
+            public void handle(Request request, Response response) throws Exception {
+                bothStarted.countDown();
+                boolean concurrent = bothStarted.await(5, SECONDS);
+                response.body(concurrent ? "concurrent" : "sequential");
+            }
+        };
+        composite.application(widget).application(widget);
+
+        assertThat("page", render(composite.merge(request, content)), equalTo("concurrentconcurrent"));
+    }
+
+    @Test public void
+    writesFragmentsAsSoonAsTheyAndTheirPredecessorsAreDone() throws Exception {
+        final CountDownLatch headerSent = new CountDownLatch(1);
+        final ByteArrayOutputStream client = new ByteArrayOutputStream() {
+            public void flush() {
+                if (size() > 0) headerSent.countDown();
+            }
+        };
+        composite.application(new Application() {
+            public void handle(Request request, Response response) {
+                response.body("<header/>");
+            }
+        }).application(new Application() {
+            public void handle(Request request, Response response) throws Exception {
+                response.body(headerSent.await(5, SECONDS) ? "<footer/>" : "timeout");
+            }
+        });
+
+        composite.merge(request, content).writeTo(client, utf8);
+        assertThat("page", client.toString("UTF-8"), equalTo("<header/><footer/>"));
+    }
+
+    @Test(expected = IOException.class) public void
+    reportsFragmentFailures() throws IOException {
+        composite.application(new Application() {
+            public void handle(Request request, Response response) throws Exception {
+                throw new IOException("unavailable");
+            }
+        });
+
+        render(composite.merge(request, content));
+    }
+
+    @Test public void
+    givesEachApplicationFragmentItsOwnRequest() throws IOException {
+        request.attribute("user", "Alice");
+        composite.application(new Application() {
+            public void handle(Request request, Response response) {
+                request.attribute("user", "Bob");
+                response.body("[" + request.attribute("user") + "]");
+            }
+        }).application(new Application() {
+            public void handle(Request request, Response response) throws Exception {
+                Thread.sleep(50);
+                response.body("[" + request.attribute("user") + "]");
+            }
+        });
+
+        assertThat("page", render(composite.merge(request, content)), equalTo("[Bob][Alice]"));
+        assertThat("page request", request.<String>attribute("user"), equalTo("Alice"));
+    }
+
+    @Test(expected = IOException.class) public void
+    failsWhenAFragmentRespondsWithAnErrorStatus() throws IOException {
+        composite.application(new Application() {
+            public void handle(Request request, Response response) {
+                response.status(HttpStatus.NOT_FOUND).body("Not found");
+            }
+        });
+
+        render(composite.merge(request, content));
+    }
+
+    @Test public void
+    closesProducedFragmentsWhenPageFails() throws Exception {
+        final CountDownLatch rendering = new CountDownLatch(1);
+        final CountDownLatch closed = new CountDownLatch(1);
+        composite.application(new Application() {
+            public void handle(Request request, Response response) throws Exception {
+                rendering.await(5, SECONDS);
+                throw new IOException("unavailable");
+            }
+        }).application(new Application() {
+            public void handle(Request request, Response response) {
+                response.body(new ChunkedBody() {
+                    public void writeTo(OutputStream out, Charset charset) throws IOException {
+                        rendering.countDown();
+                        try {
+                            new CountDownLatch(1).await();
+                        } catch (InterruptedException e) {
+                            throw new InterruptedIOException();
+                        }
+                    }
+
+                    public void close() {
+                        closed.countDown();
+                    }
+                });
+            }
+        });
+
+        try {
+            render(composite.merge(request, content));
+            fail("Page did not fail");
+        } catch (IOException expected) {
+        }
+        assertThat("fragment closed", closed.await(5, SECONDS), equalTo(true));
+    }
+
+    private String render(Body body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.writeTo(out, utf8);
+        body.close();
+        return out.toString("UTF-8");
+    }
+}
@@ -0,0 +1,46 @@
+package com.vtence.molecule.decoration;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class DecodingOutputStreamTest {
+
+    StringWriter text = new StringWriter();
+
+    @Test public void
+    decodesBytesWrittenOneAtATime() throws IOException {
+        Charset utf8 = Charset.forName("UTF-8");
+        DecodingOutputStream out = new DecodingOutputStream(text, utf8);
+        for (byte b : "Ægithales €".getBytes(utf8)) out.write(b);
+        out.close();
+
+        assertThat("text", text.toString(), equalTo("Ægithales €"));
+    }
+
+    @Test public void
+    decodesContentLargerThanBuffer() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 5000; i++) content.append("été ");
+        Charset utf16 = Charset.forName("UTF-16");
+        DecodingOutputStream out = new DecodingOutputStream(text, utf16);
+        out.write(content.toString().getBytes(utf16));
+        out.close();
+
+        assertThat("text", text.toString(), equalTo(content.toString()));
+    }
+
+    @Test public void
+    replacesMalformedInput() throws IOException {
+        DecodingOutputStream out = new DecodingOutputStream(text, Charset.forName("UTF-8"));
+        out.write(new byte[] { 'a', (byte) 0xC3 });
+        out.close();
+
+        assertThat("text", text.toString(), equalTo("a\uFFFD"));
+    }
+}
@@ -1,16 +1,23 @@
 package com.vtence.molecule.decoration;
 
+import com.vtence.molecule.lib.ChunkedBody;
+import com.vtence.molecule.lib.TextBody;
 import org.hamcrest.Matcher;
 import org.hamcrest.Matchers;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
 import java.util.Map;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
 
 public class HtmlDocumentProcessorTest {
 
-    ContentProcessor processor = new HtmlDocumentProcessor();
+    HtmlDocumentProcessor processor = new HtmlDocumentProcessor();
 
     String page =
             "<html lang=\"en\">\n" +
@@ -49,6 +56,75 @@ public class HtmlDocumentProcessorTest {
         assertThat("html chunks", processor.process(page), hasChunk("author", "Author"));
     }
 
+    @Test public void
+    extractsSameChunksFromStreamedContent() throws IOException {
+        Charset utf8 = Charset.forName("UTF-8");
+        assertThat("streamed chunks", processor.process(TextBody.text(page), utf8),
+                equalTo(processor.process(page)));
+    }
+
+    @Test public void
+    decodesContentSplitAcrossWrites() throws IOException {
+        final Charset utf8 = Charset.forName("UTF-8");
+        final String html = "<html><head><title>\u00C6githales</title></head><body>caf\u00E9 \u00E6\u00E7</body></html>";
+        Map<String, String> chunks = processor.process(new ChunkedBody() {
+            public void writeTo(OutputStream out, Charset charset) throws IOException {
+                for (byte b : html.getBytes(charset)) out.write(b);
+            }
+
+            public void close() {}
+        }, utf8);
+
+        assertThat("html chunks", chunks, hasChunk("title", "\u00C6githales"));
+        assertThat("html chunks", chunks, hasChunk("body", "caf\u00E9 \u00E6\u00E7"));
+    }
+
+    @Test public void
+    keepsTagsFoundInBody() {
+        assertThat("html chunks", processor.process("<body><header><p class=\"a\">Text</p></header></body>"),
+                hasChunk("body", "<header><p class=\"a\">Text</p></header>"));
+    }
+
+    @Test public void
+    doesNotMistakeOtherTagsForHead() {
+        assertThat("html chunks", processor.process("<html><header>Title</header></html>"),
+                not(Matchers.hasKey("head")));
+    }
+
+    @Test public void
+    omitsChunksThatAreNotClosed() {
+        Map<String, String> chunks = processor.process("<html><head><title>Title</title><body>Content");
+        assertThat("html chunks", chunks, not(Matchers.hasKey("head")));
+        assertThat("html chunks", chunks, not(Matchers.hasKey("body")));
+    }
+
+    @Test public void
+    readsMetaDataAttributesInAnyOrderAndQuoting() {
+        Map<String, String> chunks = processor.process(
+                "<head><meta content='Author' name='author'><meta name=keywords content=\"a, b\"></head>");
+        assertThat("html chunks", chunks, hasChunk("author", "Author"));
+        assertThat("html chunks", chunks, hasChunk("keywords", "a, b"));
+    }
+
+    @Test public void
+    treatsStrayLessThanSignsAsText() {
+        String page = "<html><body>if a < b or a <b then\n</body></html>";
+        assertThat("html chunks", processor.process(page), hasChunk("body", "if a < b or a <b then"));
+    }
+
+    @Test public void
+    treatsStrayLessThanSignsInTitleAsText() {
+        String page = "<html><head><title>1 < 2</title></head><body>Body</body></html>";
+        assertThat("html chunks", processor.process(page), hasChunk("title", "1 < 2"));
+        assertThat("html chunks", processor.process(page), hasChunk("body", "Body"));
+    }
+
+    @Test public void
+    readsLessThanSignsInQuotedAttributeValues() {
+        String page = "<html><head><meta name=\"rule\" content=\"a<b\"></head><body>Body</body></html>";
+        assertThat("html chunks", processor.process(page), hasChunk("rule", "a<b"));
+    }
+
     private Matcher<Map<? extends String, ? extends String>> hasChunk(final String key,
                                                                       final String value) {
         return Matchers.hasEntry(key, value);
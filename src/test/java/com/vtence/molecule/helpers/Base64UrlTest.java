@@ -0,0 +1,51 @@
+package com.vtence.molecule.helpers;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class Base64UrlTest {
+
+    @Test public void
+    encodesWithoutPadding() {
+        assertThat("0 byte", Base64Url.encode(bytes("")), equalTo(""));
+        assertThat("1 byte", Base64Url.encode(bytes("f")), equalTo("Zg"));
+        assertThat("2 bytes", Base64Url.encode(bytes("fo")), equalTo("Zm8"));
+        assertThat("3 bytes", Base64Url.encode(bytes("foo")), equalTo("Zm9v"));
+        assertThat("4 bytes", Base64Url.encode(bytes("foob")), equalTo("Zm9vYg"));
+    }
+
+    @Test public void
+    usesUrlSafeAlphabet() {
+        assertThat("encoded", Base64Url.encode(new byte[] { (byte) 0xfb, (byte) 0xff }), equalTo("-_8"));
+    }
+
+    @Test public void
+    decodesEncodedBytes() {
+        Random random = new Random(42);
+        for (int length = 0; length < 20; length++) {
+            byte[] bytes = new byte[length];
+            random.nextBytes(bytes);
+            assertThat("decoded " + length + " bytes", Arrays.equals(Base64Url.decode(Base64Url.encode(bytes)), bytes),
+                    equalTo(true));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class) public void
+    rejectsInvalidCharacters() {
+        Base64Url.decode("Zm9v+g");
+    }
+
+    @Test(expected = IllegalArgumentException.class) public void
+    rejectsInvalidLength() {
+        Base64Url.decode("Zm9vY");
+    }
+
+    private byte[] bytes(String text) {
+        return text.getBytes(Charsets.UTF_8);
+    }
+}
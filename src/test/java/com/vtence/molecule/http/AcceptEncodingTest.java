@@ -10,6 +10,7 @@ import java.util.List;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
 
 public class AcceptEncodingTest {
 
@@ -55,6 +56,16 @@ public class AcceptEncodingTest {
         assertThat("encoding of missing header", accept.selectBestEncoding("gzip", "identity"), equalTo("identity"));
     }
 
+    @Test public void
+    sharesNegotiationsBetweenRequestsWithSameHeader() {
+        Request request = new Request().header("Accept-Encoding", "deflate, gzip; q=0.5");
+        AcceptEncoding accept = AcceptEncoding.of(request);
+        assertThat("same instance", AcceptEncoding.of(request), sameInstance(accept));
+        assertThat("selected", accept.selectBestEncoding("gzip", "deflate"), equalTo("deflate"));
+        assertThat("remembered", accept.selectBestEncoding("gzip", "deflate"), equalTo("deflate"));
+        assertThat("other candidates", accept.selectBestEncoding("gzip"), equalTo("gzip"));
+    }
+
     private String select(String header, List<String> candidates) {
         AcceptEncoding acceptEncoding = new AcceptEncoding(header);
         return acceptEncoding.selectBestEncoding(candidates);
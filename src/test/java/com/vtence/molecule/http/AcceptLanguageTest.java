@@ -1,5 +1,6 @@
 package com.vtence.molecule.http;
 
+import com.vtence.molecule.Request;
 import org.junit.Test;
 
 import static java.util.Locale.*;
@@ -80,4 +81,14 @@ public class AcceptLanguageTest {
         AcceptLanguage acceptLanguage = new AcceptLanguage("en-GB");
         assertThat("best locale", acceptLanguage.selectBest(US), equalTo(US));
     }
-}
\ No newline at end of file
+
+    @Test public void
+    sharesNegotiationsBetweenRequestsWithSameHeader() {
+        Request request = new Request().header("Accept-Language", "fr; q=0.8, en");
+        AcceptLanguage acceptLanguage = AcceptLanguage.of(request);
+        assertThat("same instance", AcceptLanguage.of(request), sameInstance(acceptLanguage));
+        assertThat("best locale", acceptLanguage.selectBest(FRENCH, ENGLISH), equalTo(ENGLISH));
+        assertThat("remembered locale", acceptLanguage.selectBest(FRENCH, ENGLISH), equalTo(ENGLISH));
+        assertThat("other candidates", acceptLanguage.selectBest(FRENCH), equalTo(FRENCH));
+    }
+}
@@ -0,0 +1,71 @@
+package com.vtence.molecule.http;
+
+import com.vtence.molecule.Request;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class AcceptTest {
+
+    @SuppressWarnings("unchecked") @Test public void
+    listsAcceptableMediaRangesInPreferenceOrder() {
+        Accept accept = new Accept("text/*; q=0.5, application/json, image/png; q=0");
+        assertThat("media ranges", accept.list(), contains("application/json", "text/*"));
+    }
+
+    @Test public void
+    selectsCandidateWithHighestQuality() {
+        Accept accept = new Accept("application/xml; q=0.5, application/json");
+        assertThat("best", accept.selectBest("application/xml", "application/json"), equalTo("application/json"));
+    }
+
+    @Test public void
+    prefersFirstCandidateAmongEquals() {
+        Accept accept = new Accept("application/xml, application/json");
+        assertThat("best", accept.selectBest("application/json", "application/xml"), equalTo("application/json"));
+    }
+
+    @Test public void
+    matchesWildcardRanges() {
+        assertThat("subtype", new Accept("text/*").selectBest("application/json", "text/html"), equalTo("text/html"));
+        assertThat("any", new Accept("*/*").selectBest("application/json"), equalTo("application/json"));
+    }
+
+    @Test public void
+    usesQualityOfMostSpecificRange() {
+        Accept accept = new Accept("text/*; q=0.9, text/plain; q=0.1, */*; q=0.5");
+        assertThat("best", accept.selectBest("text/plain", "application/json", "text/html"), equalTo("text/html"));
+        assertThat("excluded", new Accept("*/*, text/html; q=0").selectBest("text/html"), nullValue());
+    }
+
+    @Test public void
+    ignoresCandidateParametersAndCase() {
+        Accept accept = new Accept("Text/HTML");
+        assertThat("best", accept.selectBest("text/html; charset=utf-8"), equalTo("text/html; charset=utf-8"));
+    }
+
+    @Test public void
+    selectsNothingWhenNoCandidateIsAcceptable() {
+        assertThat("best", new Accept("application/json").selectBest("text/html"), nullValue());
+        assertThat("no candidate", new Accept("*/*").selectBest(), nullValue());
+    }
+
+    @Test public void
+    acceptsAnythingWhenHeaderIsMissing() {
+        Accept accept = Accept.of(new Request());
+        assertThat("best", accept.selectBest("application/json", "text/html"), equalTo("application/json"));
+    }
+
+    @Test public void
+    sharesNegotiationsBetweenRequestsWithSameHeader() {
+        Request request = new Request().header("Accept", "text/html, */*; q=0.1");
+        Accept accept = Accept.of(request);
+        assertThat("same instance", Accept.of(request), sameInstance(accept));
+        assertThat("best", accept.selectBest("application/json", "text/html"), equalTo("text/html"));
+        assertThat("remembered", accept.selectBest("application/json", "text/html"), equalTo("text/html"));
+    }
+}
@@ -0,0 +1,43 @@
+package com.vtence.molecule.http;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+public class BoundedCacheTest {
+
+    int computations;
+
+    BoundedCache<String, String> cache = new BoundedCache<String, String>(2) {
+        protected String compute(String key) {
+            computations++;
+            return key.isEmpty() ? null : key.toUpperCase();
+        }
+    };
+
+    @Test public void
+    computesValuesOnce() {
+        assertThat("computed", cache.get("a"), equalTo("A"));
+        assertThat("cached", cache.get("a"), equalTo("A"));
+        assertThat("computations", computations, equalTo(1));
+    }
+
+    @Test public void
+    remembersMissingValues() {
+        assertThat("computed", cache.get(""), nullValue());
+        assertThat("cached", cache.get(""), nullValue());
+        assertThat("computations", computations, equalTo(1));
+    }
+
+    @Test public void
+    startsOverWhenFull() {
+        cache.get("a");
+        cache.get("b");
+        cache.get("c");
+        assertThat("size", cache.size(), equalTo(1));
+        assertThat("recomputed", cache.get("a"), equalTo("A"));
+        assertThat("computations", computations, equalTo(4));
+    }
+}
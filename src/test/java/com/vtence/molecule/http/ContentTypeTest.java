@@ -7,6 +7,7 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasToString;
 import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
 
 public class ContentTypeTest {
 
@@ -54,4 +55,11 @@ public class ContentTypeTest {
     handlesAbsenceOfHeaderInResponse() {
         assertThat("content type", ContentType.of(new Response()), nullValue());
     }
-}
\ No newline at end of file
+
+    @Test public void
+    sharesParsedContentTypes() {
+        ContentType contentType = ContentType.parse("text/html; charset=utf-8");
+        assertThat("same content type", ContentType.parse("text/html; charset=utf-8"), sameInstance(contentType));
+        assertThat("same charset", contentType.charset(), sameInstance(contentType.charset()));
+    }
+}
@@ -8,6 +8,7 @@ import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 
 public class CookieDecoderTest {
 
@@ -132,6 +133,19 @@ public class CookieDecoderTest {
         assertThat("cookie value", launcher.value(), equalTo("Rocket_Launcher_0001"));
     }
 
+    @Test
+    public void findsSingleCookieByName() {
+        String cookieHeader = "$Version=\"0\"; foo=bar; baz=\"qu;x\"; $Path=/acme; foo=\"last\"";
+
+        Cookie baz = decoder.find(cookieHeader, "baz");
+        assertThat("cookie value", baz.value(), equalTo("qu;x"));
+        assertThat("cookie version", baz.version(), is(0));
+        assertThat("cookie path", baz.path(), equalTo("/acme"));
+
+        assertThat("last occurrence", decoder.find(cookieHeader, "foo").value(), equalTo("last"));
+        assertThat("missing cookie", decoder.find(cookieHeader, "fo"), nullValue());
+    }
+
     private Cookie decodeSingle(String cookieHeader) {
         List<Cookie> cookies = decodeAll(cookieHeader);
         assertThat("cookies found", cookies, hasSize(1));
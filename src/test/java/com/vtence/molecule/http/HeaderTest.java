@@ -53,4 +53,38 @@ public class HeaderTest {
         Header header = new Header("foo; bar; q=0, baz; q=0.8, qux; q=_");
         assertThat("acceptable values", header.values(), contains("foo", "qux", "baz"));
     }
-}
\ No newline at end of file
+
+    @Test public void
+    readsQualityValuesWithUpToThreeDecimals() {
+        Header header = new Header("a; q=0.333, b; q=1.000, c; q=.5, d; q=0.0001, e; q=1.5");
+        assertThat("a", quality(header, "a"), equalTo(0.333));
+        assertThat("b", quality(header, "b"), equalTo(1.0));
+        assertThat("c", quality(header, "c"), equalTo(0.5));
+        assertThat("d", quality(header, "d"), equalTo(0.0));
+        assertThat("e", quality(header, "e"), equalTo(1.0));
+    }
+
+    @SuppressWarnings("unchecked") @Test public void
+    keepsOrderOfValuesWithSameQuality() {
+        Header header = new Header("c; q=0.5, a, b; q=0.5, d");
+        assertThat("acceptable values", header.values(), contains("a", "d", "c", "b"));
+    }
+
+    @Test public void
+    parsesLongHeadersWithManyQuotedStrings() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 10000; i++) text.append("v").append(i).append("; q=0.5; p=\"x, y\", ");
+        text.append("last");
+
+        Header header = new Header(text.toString());
+        assertThat("values", header.all().size(), equalTo(10001));
+        assertThat("first", header.first().value(), equalTo("last"));
+    }
+
+    private double quality(Header header, String value) {
+        for (Header.Value entry : header.all()) {
+            if (entry.is(value)) return entry.quality();
+        }
+        throw new AssertionError("No value " + value);
+    }
+}
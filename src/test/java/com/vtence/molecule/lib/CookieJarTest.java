@@ -1,5 +1,6 @@
 package com.vtence.molecule.lib;
 
+import com.vtence.molecule.Response;
 import com.vtence.molecule.http.Cookie;
 import org.hamcrest.FeatureMatcher;
 import org.hamcrest.Matcher;
@@ -11,6 +12,7 @@ import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 
 public class CookieJarTest {
 
@@ -44,6 +46,46 @@ public class CookieJarTest {
         assertThat("holds rotten cookie", jar.has("petit ecolier"), is(false));
     }
 
+    @Test
+    public void readsCookiesFromClientHeader() {
+        CookieJar parsed = CookieJar.parse("foo=bar; baz=qux");
+
+        assertThat("foo", parsed.get("foo").value(), equalTo("bar"));
+        assertThat("holds missing cookie", parsed.has("missing"), is(false));
+        assertThat("total cookies in jar", parsed.size(), is(2));
+    }
+
+    @Test @SuppressWarnings("unchecked")
+    public void appliesChangesMadeBeforeClientCookiesAreRead() {
+        CookieJar parsed = CookieJar.parse("foo=bar; baz=qux");
+        parsed.add("delicious", "chocolat au lait");
+        parsed.discard("foo");
+
+        assertThat("discarded cookie", parsed.get("foo"), nullValue());
+        assertThat("added cookie", parsed.get("delicious").value(), equalTo("chocolat au lait"));
+        assertThat("cookies in jar", parsed.all(), contains(cookieNamed("baz"), cookieNamed("delicious")));
+    }
+
+    @Test
+    public void isEmptyWithoutClientHeader() {
+        CookieJar parsed = CookieJar.parse(null);
+
+        assertThat("empty jar?", parsed.empty(), is(true));
+        assertThat("holds cookie", parsed.has("foo"), is(false));
+    }
+
+    @Test
+    public void writesFreshAndDiscardedCookiesToResponse() {
+        jar.add("delicious", "chocolat au lait");
+        jar.discard("petit ecolier");
+        Response response = new Response();
+        jar.writeTo(response);
+
+        assertThat("set cookies", response.headers("Set-Cookie"), contains(
+                "delicious=chocolat au lait; version=1; path=/",
+                "petit ecolier=; version=1; path=/; max-age=0"));
+    }
+
     private Matcher<Cookie> cookieNamed(String name) {
         return new FeatureMatcher<Cookie, String>(equalTo(name), "cookie named", "cookie") {
             protected String featureValueOf(Cookie cookie) {
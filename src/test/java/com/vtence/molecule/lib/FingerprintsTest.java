@@ -0,0 +1,108 @@
+package com.vtence.molecule.lib;
+
+import org.hamcrest.FeatureMatcher;
+import org.hamcrest.Matcher;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static com.vtence.molecule.testing.ResourceLocator.onClasspath;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
+
+public class FingerprintsTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    File base = onClasspath().locate("assets");
+    Fingerprints fingerprints = new Fingerprints(base);
+
+    @Test public void
+    insertsContentHashInFileName() {
+        assertThat("fingerprinted path", fingerprints.path("/images/sample.png"),
+                matchesPattern("/images/sample-[0-9a-f]{8}\\.png"));
+    }
+
+    @Test public void
+    leavesUnknownFilesUnchanged() {
+        assertThat("path", fingerprints.path("/images/missing.png"), equalTo("/images/missing.png"));
+    }
+
+    @Test public void
+    resolvesFingerprintedPathsToOriginalFiles() throws IOException {
+        fingerprints.scan();
+        String path = fingerprints.path("/images/minion.png");
+        assertThat("original path", fingerprints.resolve(path), equalTo("/images/minion.png"));
+    }
+
+    @Test public void
+    doesNotResolveOriginalPaths() throws IOException {
+        fingerprints.scan();
+        assertThat("original path", fingerprints.resolve("/images/minion.png"), nullValue());
+    }
+
+    @Test public void
+    makesFingerprintLengthConfigurable() {
+        fingerprints = new Fingerprints(base, 4);
+        assertThat("fingerprinted path", fingerprints.path("/images/sample.png"),
+                matchesPattern("/images/sample-[0-9a-f]{4}\\.png"));
+    }
+
+    @Test public void
+    fingerprintsFilesWithoutExtension() throws IOException {
+        write(folder.newFile("LICENSE"), "MIT");
+        fingerprints = new Fingerprints(folder.getRoot());
+        assertThat("fingerprinted path", fingerprints.path("/LICENSE"), matchesPattern("/LICENSE-[0-9a-f]{8}"));
+    }
+
+    @Test public void
+    computesNewFingerprintWhenFileChanges() throws IOException {
+        File file = folder.newFile("app.css");
+        write(file, "body {}");
+        fingerprints = Fingerprints.of(folder.getRoot());
+        String original = fingerprints.path("/app.css");
+
+        write(file, "body { color: black }");
+        String changed = fingerprints.path("/app.css");
+
+        assertThat("new fingerprint", changed, not(equalTo(original)));
+        assertThat("resolved new fingerprint", fingerprints.resolve(changed), equalTo("/app.css"));
+        assertThat("resolved old fingerprint", fingerprints.resolve(original), nullValue());
+    }
+
+    @Test public void
+    stopsResolvingStaleFingerprints() throws IOException {
+        File file = folder.newFile("app.js");
+        write(file, "var a;");
+        fingerprints = Fingerprints.of(folder.getRoot());
+        String original = fingerprints.path("/app.js");
+
+        write(file, "var a, b;");
+        assertThat("resolved stale fingerprint", fingerprints.resolve(original), nullValue());
+        assertThat("new fingerprint", fingerprints.path("/app.js"), startsWith("/app-"));
+    }
+
+    private void write(File file, String content) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    private Matcher<String> matchesPattern(final String regex) {
+        return new FeatureMatcher<String, Boolean>(equalTo(true), "a path matching " + regex, "matches") {
+            protected Boolean featureValueOf(String actual) {
+                return actual.matches(regex);
+            }
+        };
+    }
+}
@@ -3,11 +3,17 @@ package com.vtence.molecule.lib;
 import com.vtence.molecule.Response;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.Charset;
 
 import static com.vtence.molecule.helpers.Charsets.ISO_8859_1;
+import static com.vtence.molecule.helpers.Charsets.US_ASCII;
+import static com.vtence.molecule.helpers.Charsets.UTF_16;
 import static com.vtence.molecule.helpers.Charsets.UTF_8;
 import static com.vtence.molecule.testing.ResponseAssert.assertThat;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
 
 public class TextBodyTest {
 
@@ -32,4 +38,35 @@ public class TextBodyTest {
         assertThat(response).hasBodyEncoding(UTF_8)
                             .hasBodySize(body.size(UTF_8));
     }
-}
\ No newline at end of file
+
+    @Test public void
+    computesSizeWithoutEncodingAsEncodingWould() {
+        String[] samples = { "", "plain ascii", "De drôles d'œufs abîmés", "\u20ac \ud83d\ude00", "lone \ud83d surrogate \ude00" };
+        Charset[] charsets = { US_ASCII, ISO_8859_1, UTF_8, UTF_16 };
+        for (String sample : samples) {
+            for (Charset charset : charsets) {
+                assertThat(sample + " in " + charset, TextBody.text(sample).size(charset),
+                        equalTo((long) sample.getBytes(charset).length));
+            }
+        }
+    }
+
+    @Test public void
+    encodesAgainOnceTextIsAppended() throws IOException {
+        body.append("café");
+        assertThat("size", body.size(UTF_8), equalTo(5L));
+        assertThat("content", render(body, UTF_8), equalTo("café"));
+        assertThat("cached size", body.size(UTF_8), equalTo(5L));
+
+        body.append(" crème");
+        assertThat("appended size", body.size(UTF_8), equalTo(12L));
+        assertThat("appended content", render(body, UTF_8), equalTo("café crème"));
+        assertThat("other charset", render(body, ISO_8859_1), equalTo("café crème"));
+    }
+
+    private String render(TextBody body, Charset charset) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.writeTo(out, charset);
+        return new String(out.toByteArray(), charset);
+    }
+}
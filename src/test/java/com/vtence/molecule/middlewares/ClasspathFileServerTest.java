@@ -0,0 +1,192 @@
+package com.vtence.molecule.middlewares;
+
+import com.vtence.molecule.Request;
+import com.vtence.molecule.Response;
+import com.vtence.molecule.helpers.Streams;
+import com.vtence.molecule.http.HttpMethod;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.zip.GZIPInputStream;
+
+import static com.vtence.molecule.http.HttpMethod.GET;
+import static com.vtence.molecule.http.HttpStatus.METHOD_NOT_ALLOWED;
+import static com.vtence.molecule.http.HttpStatus.NOT_FOUND;
+import static com.vtence.molecule.http.HttpStatus.NOT_MODIFIED;
+import static com.vtence.molecule.http.HttpStatus.OK;
+import static com.vtence.molecule.testing.ResourceLocator.onClasspath;
+import static com.vtence.molecule.testing.ResponseAssert.assertThat;
+import static java.lang.String.valueOf;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class ClasspathFileServerTest {
+
+    static final String SAMPLE_IMAGE = "/images/sample.png";
+    static final String STYLESHEET = "p { color: black; }\n";
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    ClasspathFileServer fileServer = ClasspathFileServer.fromClasspath("assets");
+    File file = new File(onClasspath().locate("assets"), SAMPLE_IMAGE);
+    Request request = new Request().method(GET).path(SAMPLE_IMAGE);
+    Response response = new Response();
+
+    public ClasspathFileServerTest() throws IOException {}
+
+    @Test public void
+    servesResourcesFromClasspathDirectory() throws Exception {
+        fileServer.handle(request, response);
+
+        assertThat(response).hasStatus(OK)
+                            .hasContentType("image/png")
+                            .hasHeader("Content-Length", valueOf(file.length()))
+                            .hasBodyContent(contentOf(file));
+    }
+
+    @Test public void
+    servesResourcesPackagedInAJar() throws Exception {
+        fileServer = new ClasspathFileServer(jarContaining("public/css/main.css", STYLESHEET), "public");
+        fileServer.handle(request.path("/css/main.css"), response);
+
+        assertThat(response).hasStatus(OK)
+                            .hasContentType("text/css")
+                            .hasBodyText(STYLESHEET);
+    }
+
+    @Test public void
+    indexesAllResourcesUpFront() throws Exception {
+        assertThat("indexed resources", fileServer.size(), equalTo(2));
+    }
+
+    @Test public void
+    setsValidationHeaders() throws Exception {
+        fileServer.handle(request, response);
+
+        assertThat(response).hasHeader("ETag")
+                            .hasHeader("Last-Modified");
+    }
+
+    @Test public void
+    sendsNotModifiedIfETagStillMatches() throws Exception {
+        fileServer.handle(request, response);
+        String etag = response.header("ETag");
+
+        response = new Response();
+        fileServer.handle(request.header("If-None-Match", etag), response);
+        assertThat(response).hasStatus(NOT_MODIFIED)
+                            .hasHeader("ETag", etag);
+    }
+
+    @Test public void
+    rendersNotFoundWhenResourceIsNotFound() throws Exception {
+        fileServer.handle(request.path("/images/missing.png"), response);
+
+        assertThat(response).hasStatus(NOT_FOUND)
+                            .hasContentType("text/plain")
+                            .hasBodyText("File not found: /images/missing.png");
+    }
+
+    @Test public void
+    addsConfiguredCustomHeadersToResponse() throws Exception {
+        fileServer.header("Cache-Control", "public, max-age=60");
+        fileServer.handle(request, response);
+
+        assertThat(response).hasHeader("Cache-Control", "public, max-age=60");
+    }
+
+    @Test public void
+    allowsHeadRequests() throws Exception {
+        fileServer.handle(request.method(HttpMethod.HEAD), response);
+
+        assertThat(response).hasStatus(OK)
+                            .hasHeader("Content-Length", valueOf(file.length()))
+                            .hasBodySize(0);
+    }
+
+    @Test public void
+    rejectsUnsupportedMethod() throws Exception {
+        fileServer.handle(request.method(HttpMethod.POST), response);
+
+        assertThat(response).hasStatus(METHOD_NOT_ALLOWED)
+                            .hasHeader("Allow", "GET, HEAD");
+    }
+
+    @Test public void
+    servesPrecompressedVariantToClientsAcceptingGzip() throws Exception {
+        fileServer = new ClasspathFileServer(jarContaining("public/app.css", repeat(STYLESHEET, 50)), "public").gzip();
+        fileServer.handle(request.path("/app.css").header("Accept-Encoding", "gzip"), response);
+
+        assertThat(response).hasStatus(OK)
+                            .hasHeader("Content-Encoding", "gzip")
+                            .hasHeader("Vary", "Accept-Encoding");
+        assertThat("decompressed content", inflate(response), equalTo(repeat(STYLESHEET, 50)));
+    }
+
+    @Test public void
+    servesOriginalContentToClientsNotAcceptingGzip() throws Exception {
+        fileServer = new ClasspathFileServer(jarContaining("public/app.css", repeat(STYLESHEET, 50)), "public").gzip();
+        fileServer.handle(request.path("/app.css"), response);
+
+        assertThat(response).hasNoHeader("Content-Encoding")
+                            .hasHeader("Vary", "Accept-Encoding")
+                            .hasBodyText(repeat(STYLESHEET, 50));
+    }
+
+    @Test public void
+    doesNotKeepVariantsThatDoNotCompress() throws Exception {
+        fileServer.gzip().handle(request.header("Accept-Encoding", "gzip"), response);
+
+        assertThat(response).hasNoHeader("Content-Encoding")
+                            .hasNoHeader("Vary");
+    }
+
+    private ClassLoader jarContaining(String name, String content) throws IOException {
+        File jar = folder.newFile("assets.jar");
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+        try {
+            for (int slash = name.indexOf('/'); slash != -1; slash = name.indexOf('/', slash + 1)) {
+                out.putNextEntry(new JarEntry(name.substring(0, slash + 1)));
+                out.closeEntry();
+            }
+            out.putNextEntry(new JarEntry(name));
+            out.write(content.getBytes("UTF-8"));
+            out.closeEntry();
+        } finally {
+            out.close();
+        }
+        return new URLClassLoader(new URL[] { jar.toURI().toURL() }, null);
+    }
+
+    private String inflate(Response response) throws IOException {
+        return Streams.toString(new GZIPInputStream(new ByteArrayInputStream(bodyOf(response))), Charset.forName("UTF-8"));
+    }
+
+    private byte[] bodyOf(Response response) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.body().writeTo(out, response.charset());
+        return out.toByteArray();
+    }
+
+    private String repeat(String text, int times) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < times; i++) builder.append(text);
+        return builder.toString();
+    }
+
+    private byte[] contentOf(final File file) throws IOException {
+        return Streams.toBytes(new FileInputStream(file));
+    }
+}
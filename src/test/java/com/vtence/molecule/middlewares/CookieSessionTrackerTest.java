@@ -94,6 +94,7 @@ public class CookieSessionTrackerTest {
     @Test public void
     savesExistingSessionEvenIfNotWritten() throws Exception {
         CookieJar cookieJar = fillCookieJar(new Cookie(SESSION_COOKIE, "existing"));
+        tracker.connectTo(echoSessionId());
 
         context.checking(new Expectations() {{
             oneOf(store).save(with(sessionWithId("existing"))); will(returnValue("existing"));
@@ -102,6 +103,37 @@ public class CookieSessionTrackerTest {
         tracker.handle(request, response);
     }
 
+    @Test public void
+    neitherLoadsNorSavesSessionIfNeverAccessed() throws Exception {
+        final SessionStore untouched = context.mock(SessionStore.class, "untouched");
+        tracker = new CookieSessionTracker(untouched).usingCookieName(SESSION_COOKIE);
+        CookieJar cookieJar = fillCookieJar(new Cookie(SESSION_COOKIE, "existing"));
+
+        context.checking(new Expectations() {{
+            never(untouched);
+        }});
+
+        tracker.handle(request, response);
+        assertThat(cookieJar).hasNoCookie(SESSION_COOKIE);
+    }
+
+    @Test public void
+    loadsSessionOnFirstAccess() throws Exception {
+        fillCookieJar(new Cookie(SESSION_COOKIE, "existing"));
+        tracker.connectTo(new Application() {
+            public void handle(Request request, Response response) throws Exception {
+                response.body("Same session: " + (Session.get(request) == Session.get(request)));
+            }
+        });
+
+        context.checking(new Expectations() {{
+            allowing(store).save(with(sessionWithId("existing"))); will(returnValue("existing"));
+        }});
+
+        tracker.handle(request, response);
+        assertThat(response).hasBodyText("Same session: true");
+    }
+
     @Test public void
     createsAFreshSessionIfClientSessionHasExpired() throws Exception {
         CookieJar cookieJar = fillCookieJar(new Cookie(SESSION_COOKIE, "expired"));
@@ -201,10 +233,12 @@ public class CookieSessionTrackerTest {
     @Test public void
     unbindsSessionAfterwards() throws Exception {
         fillCookieJar();
+        tracker.connectTo(echoSessionId());
 
         tracker.handle(request, response);
 
         assertThat(request).hasNoAttribute(Session.class);
+        assertThat(request).hasNoAttribute(Session.Provider.class);
     }
 
     private CookieJar fillCookieJar(Cookie... cookies) {
@@ -4,9 +4,15 @@ import com.vtence.molecule.Application;
 import com.vtence.molecule.Body;
 import com.vtence.molecule.Request;
 import com.vtence.molecule.Response;
+import com.vtence.molecule.decoration.CacheableDecorator;
+import com.vtence.molecule.decoration.Composite;
 import com.vtence.molecule.decoration.ContentProcessor;
 import com.vtence.molecule.decoration.Decorator;
 import com.vtence.molecule.decoration.Selector;
+import com.vtence.molecule.decoration.HtmlDocumentProcessor;
+import com.vtence.molecule.decoration.IntrospectableDecorator;
+import com.vtence.molecule.decoration.StreamingContentProcessor;
+import com.vtence.molecule.lib.ChunkedBody;
 import com.vtence.molecule.lib.TextBody;
 import org.jmock.Expectations;
 import org.jmock.States;
@@ -15,12 +21,24 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.vtence.molecule.helpers.Charsets.UTF_8;
 import static com.vtence.molecule.testing.ResponseAssert.assertThat;
 import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
 
 public class LayoutTest {
     @Rule public JUnitRuleMockery context = new JUnitRuleMockery();
@@ -87,6 +105,336 @@ public class LayoutTest {
                             .hasBodyText(containsString("éçëœ"));
     }
 
+    @Test public void
+    streamsContentToProcessorWhenSupported() throws Exception {
+        layout = new Layout(selector, new StubStreamingProcessor(), new StubDecorator());
+        layout.connectTo(new Application() {
+            public void handle(Request request, Response response) throws Exception {
+                response.body("raw content");
+            }
+        });
+
+        layout.handle(request, response);
+        assertThat(response).hasBodyText("<decorated>streamed raw content</decorated>");
+    }
+
+    @Test public void
+    flushesLayoutHeadBeforeRenderingPageWhenEarlyFlushIsEnabled() throws Exception {
+        final ByteArrayOutputStream client = new ByteArrayOutputStream();
+        final StringBuilder sentBeforePage = new StringBuilder();
+        layout = new Layout(selector, new HtmlDocumentProcessor(), new ReadingChunks("body") {
+            public Body merge(Request request, Map<String, String> content) {
+                return TextBody.text("<head><link href=\"app.css\"></head><main>" + content.get("body") + "</main>");
+            }
+        }).earlyFlush();
+        layout.connectTo(new Application() {
+            public void handle(Request request, Response response) throws Exception {
+                response.body(new ChunkedBody() {
+                    public void writeTo(OutputStream out, Charset charset) throws IOException {
+                        sentBeforePage.append(client.toString("UTF-8"));
+                        out.write("<html><body>page content</body></html>".getBytes(charset));
+                    }
+
+                    public void close() {}
+                });
+            }
+        });
+
+        layout.handle(request, response);
+        response.body().writeTo(client, UTF_8);
+
+        assertThat("sent before page", sentBeforePage.toString(), equalTo("<head><link href=\"app.css\"></head><main>"));
+        assertThat("decorated page", client.toString("UTF-8"),
+                equalTo("<head><link href=\"app.css\"></head><main>page content</main>"));
+    }
+
+    @Test public void
+    rendersLayoutOnlyOnceWhenFlushingEarly() throws Exception {
+        final int[] renders = new int[1];
+        layout = new Layout(selector, new HtmlDocumentProcessor(), new ReadingChunks("body") {
+            public Body merge(Request request, Map<String, String> content) {
+                renders[0]++;
+                return TextBody.text("<head nonce=\"" + renders[0] + "\"></head><main>" + content.get("body") + "</main>");
+            }
+        }).earlyFlush();
+        layout.connectTo(new Application() {
+            public void handle(Request request, Response response) throws Exception {
+                response.body("<html><body>page content</body></html>");
+            }
+        });
+
+        layout.handle(request, response);
+        ByteArrayOutputStream client = new ByteArrayOutputStream();
+        response.body().writeTo(client, UTF_8);
+
+        assertThat("decorated page", client.toString("UTF-8"), equalTo("<head nonce=\"1\"></head><main>page content</main>"));
+        assertThat("layout renders", renders[0], equalTo(1));
+    }
+
+    @Test public void
+    waitsForPageWhenLayoutHeadDependsOnPage() throws Exception {
+        final ByteArrayOutputStream client = new ByteArrayOutputStream();
+        final StringBuilder sentBeforePage = new StringBuilder();
+        final int[] renders = new int[1];
+        layout = new Layout(selector, new HtmlDocumentProcessor(), new ReadingChunks("title", "body") {
+            public Body merge(Request request, Map<String, String> content) {
+                renders[0]++;
+                return TextBody.text("<title>" + content.get("title") + "</title>" + content.get("body"));
+            }
+        }).earlyFlush();
+        layout.connectTo(new Application() {
+            public void handle(Request request, Response response) throws Exception {
+                response.body(new ChunkedBody() {
+                    public void writeTo(OutputStream out, Charset charset) throws IOException {
+                        sentBeforePage.append(client.toString("UTF-8"));
+                        out.write("<head><title>Title</title></head><body>page content</body>".getBytes(charset));
+                    }
+
+                    public void close() {}
+                });
+            }
+        });
+
+        layout.handle(request, response);
+        response.body().writeTo(client, UTF_8);
+
+        assertThat("sent before page", sentBeforePage.toString(), equalTo(""));
+        assertThat("decorated page", client.toString("UTF-8"), equalTo("<title>Title</title>page content"));
+        assertThat("layout renders", renders[0], equalTo(1));
+    }
+
+    @Test public void
+    waitsForPageWhenLayoutCannotTellWhatItReads() throws Exception {
+        final int[] renders = new int[1];
+        layout = new Layout(selector, new HtmlDocumentProcessor(), new Decorator() {
+            public Body merge(Request request, Map<String, String> content) {
+                renders[0]++;
+                return TextBody.text("<main>" + content.get("body") + "</main>");
+            }
+        }).earlyFlush();
+        layout.connectTo(new Application() {
+            public void handle(Request request, Response response) throws Exception {
+                response.body("<html><body>page content</body></html>");
+            }
+        });
+
+        layout.handle(request, response);
+        ByteArrayOutputStream client = new ByteArrayOutputStream();
+        response.body().writeTo(client, UTF_8);
+
+        assertThat("decorated page", client.toString("UTF-8"), equalTo("<main>page content</main>"));
+        assertThat("layout renders", renders[0], equalTo(1));
+    }
+
+    @Test public void
+    runsCompositeFragmentsOnceWhenFlushingEarly() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        Application header = new Application() {
+            public void handle(Request request, Response response) throws Exception {
+                runs.incrementAndGet();
+                response.body("<header>");
+            }
+        };
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            for (Composite composite : new Composite[] {
+                    new Composite(executor).application(header).chunk("body"),
+                    new Composite(executor).application(header).chunk("title").chunk("body") }) {
+                runs.set(0);
+                layout = new Layout(selector, new HtmlDocumentProcessor(), composite).earlyFlush();
+                layout.connectTo(new Application() {
+                    public void handle(Request request, Response response) throws Exception {
+                        response.body("<html><head><title>Title</title></head><body>page</body></html>");
+                    }
+                });
+
+                response = new Response();
+                layout.handle(request, response);
+                response.body().writeTo(new ByteArrayOutputStream(), UTF_8);
+                response.body().close();
+                assertThat("fragment runs", runs.get(), equalTo(1));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test public void
+    reusesDecoratedOutputOfIdenticalPagesWhenCaching() throws Exception {
+        CountingDecorator decorator = new CountingDecorator();
+        layout = new Layout(selector, new StubProcessor(), decorator).cache(1024);
+
+        assertThat("first", decorate("<p>content</p>"), equalTo("<decorated>[en]<p>content</p></decorated>"));
+        assertThat("second", decorate("<p>content</p>"), equalTo("<decorated>[en]<p>content</p></decorated>"));
+        assertThat("changed", decorate("<p>changed</p>"), equalTo("<decorated>[en]<p>changed</p></decorated>"));
+        assertThat("merges", decorator.merges, equalTo(2));
+    }
+
+    @Test public void
+    cachesDecoratedOutputPerRequestVariant() throws Exception {
+        CountingDecorator decorator = new CountingDecorator();
+        layout = new Layout(selector, new StubProcessor(), decorator).cache(1024);
+
+        decorate("<p>content</p>");
+        request.header("Accept-Language", "fr");
+        assertThat("variant", decorate("<p>content</p>"), equalTo("<decorated>[fr]<p>content</p></decorated>"));
+        assertThat("merges", decorator.merges, equalTo(2));
+    }
+
+    @Test public void
+    identifiesPagesByETagWithoutRenderingThem() throws Exception {
+        final int[] renders = new int[1];
+        CountingDecorator decorator = new CountingDecorator();
+        layout = new Layout(selector, new StubProcessor(), decorator).cache(1024);
+        layout.connectTo(new Application() {
+            public void handle(Request request, Response response) throws Exception {
+                response.header("ETag", "\"v1\"");
+                response.body(new ChunkedBody() {
+                    public void writeTo(OutputStream out, Charset charset) throws IOException {
+                        renders[0]++;
+                        out.write("content".getBytes(charset));
+                    }
+
+                    public void close() {}
+                });
+            }
+        });
+
+        for (int i = 0; i < 3; i++) {
+            response = new Response();
+            layout.handle(request, response);
+            assertThat(response).hasBodyText("<decorated>[en]content</decorated>");
+        }
+        assertThat("page renders", renders[0], equalTo(1));
+    }
+
+    @Test public void
+    tellsApartResourcesWithSameETag() throws Exception {
+        layout = new Layout(selector, new StubProcessor(), new CountingDecorator()).cache(1024);
+        layout.connectTo(new Application() {
+            public void handle(Request request, Response response) throws Exception {
+                response.header("ETag", "\"v1\"");
+                response.body("content of " + request.uri());
+            }
+        });
+
+        for (String uri : new String[] { "/first", "/second" }) {
+            response = new Response();
+            layout.handle(request.uri(uri), response);
+            assertThat(response).hasBodyText("<decorated>[en]content of " + uri + "</decorated>");
+        }
+    }
+
+    @Test public void
+    evictsLeastRecentlyDecoratedPagesWhenOverCapacity() throws Exception {
+        CountingDecorator decorator = new CountingDecorator();
+        int twoPages = ("<decorated>[en]first</decorated>" + "<decorated>[en]second</decorated>").length();
+        layout = new Layout(selector, new StubProcessor(), decorator).cache(twoPages);
+
+        decorate("first");
+        decorate("second");
+        decorate("first");
+        decorate("third");
+        decorate("first");
+        assertThat("merges", decorator.merges, equalTo(3));
+        decorate("second");
+        assertThat("merges after eviction", decorator.merges, equalTo(4));
+    }
+
+    @Test public void
+    doesNotCachePagesLargerThanCapacity() throws Exception {
+        CountingDecorator decorator = new CountingDecorator();
+        layout = new Layout(selector, new StubProcessor(), decorator).cache(16);
+
+        decorate("content");
+        decorate("content");
+        assertThat("merges", decorator.merges, equalTo(2));
+    }
+
+    @Test public void
+    closesPageBodyWhenServingDecoratedPageFromCache() throws Exception {
+        final int[] closed = new int[1];
+        layout = new Layout(selector, new StubProcessor(), new CountingDecorator()).cache(1024);
+        layout.connectTo(new Application() {
+            public void handle(Request request, Response response) throws Exception {
+                response.header("ETag", "\"v1\"");
+                response.body(new ChunkedBody() {
+                    public void writeTo(OutputStream out, Charset charset) throws IOException {
+                        out.write("content".getBytes(charset));
+                    }
+
+                    public void close() {
+                        closed[0]++;
+                    }
+                });
+            }
+        });
+
+        for (int i = 0; i < 2; i++) {
+            response = new Response();
+            layout.handle(request, response);
+        }
+        assertThat("bodies closed", closed[0], equalTo(2));
+    }
+
+    @Test public void
+    doesNotCacheDecoratorsThatAreNotCacheable() throws Exception {
+        layout = new Layout(selector, new StubProcessor(), new StubDecorator()).cache(1024);
+
+        decorate("first");
+        assertThat("decorated", decorate("second"), equalTo("<decorated>second</decorated>"));
+    }
+
+    private String decorate(final String page) throws Exception {
+        layout.connectTo(new Application() {
+            public void handle(Request request, Response response) throws Exception {
+                response.body(page);
+            }
+        });
+        response = new Response();
+        layout.handle(request, response);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.body().writeTo(out, response.charset());
+        return out.toString(response.charset().name());
+    }
+
+    private class CountingDecorator implements CacheableDecorator {
+        int merges;
+
+        public Object varyOn(Request request) {
+            return language(request);
+        }
+
+        public Body merge(Request request, Map<String, String> content) {
+            merges++;
+            return TextBody.text("<decorated>[" + language(request) + "]" + content.get("content") + "</decorated>");
+        }
+
+        private String language(Request request) {
+            return request.hasHeader("Accept-Language") ? request.header("Accept-Language") : "en";
+        }
+    }
+
+    private abstract class ReadingChunks implements IntrospectableDecorator {
+        private final Set<String> chunks;
+
+        public ReadingChunks(String... chunks) {
+            this.chunks = new HashSet<String>(Arrays.asList(chunks));
+        }
+
+        public Set<String> chunks() {
+            return chunks;
+        }
+    }
+
+    private class StubStreamingProcessor extends StubProcessor implements StreamingContentProcessor {
+        public Map<String, String> process(Body content, Charset charset) throws IOException {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            content.writeTo(buffer, charset);
+            return process("streamed " + new String(buffer.toByteArray(), charset));
+        }
+    }
+
     private class StubProcessor implements ContentProcessor {
         public Map<String, String> process(String content) {
             Map<String, String> data = new HashMap<String, String>();
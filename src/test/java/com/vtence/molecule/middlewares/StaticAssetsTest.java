@@ -3,11 +3,14 @@ package com.vtence.molecule.middlewares;
 import com.vtence.molecule.Application;
 import com.vtence.molecule.Request;
 import com.vtence.molecule.Response;
+import com.vtence.molecule.lib.Fingerprints;
 import org.jmock.integration.junit4.JUnitRuleMockery;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 
+import static com.vtence.molecule.http.HttpStatus.NOT_FOUND;
+import static com.vtence.molecule.testing.ResourceLocator.onClasspath;
 import static com.vtence.molecule.testing.ResponseAssert.assertThat;
 
 public class StaticAssetsTest {
@@ -57,4 +60,37 @@ public class StaticAssetsTest {
         assets.handle(request.path("/"), response);
         assertThat(response).hasBodyText("Forwarded");
     }
-}
\ No newline at end of file
+
+    @Test public void
+    servesFingerprintedAssetsWithFarFutureCacheDirectives() throws Exception {
+        Fingerprints fingerprints = new Fingerprints(onClasspath().locate("assets"));
+        assets.serve("/images").fingerprint(fingerprints);
+
+        assets.handle(request.path(fingerprints.path("/images/sample.png")), response);
+        assertThat(response).hasBodyText("/images/sample.png")
+                            .hasHeader("Cache-Control", "public, max-age=31536000, immutable");
+    }
+
+    @Test public void
+    servesOriginalAssetsAsUsualWhenFingerprinting() throws Exception {
+        assets.serve("/images").fingerprint(new Fingerprints(onClasspath().locate("assets")));
+
+        assets.handle(request.path("/images/sample.png"), response);
+        assertThat(response).hasBodyText("/images/sample.png")
+                            .hasNoHeader("Cache-Control");
+    }
+
+    @Test public void
+    doesNotCacheMissingFingerprintedAssets() throws Exception {
+        Fingerprints fingerprints = new Fingerprints(onClasspath().locate("assets"));
+        assets = new StaticAssets(new Application() {
+            public void handle(Request request, Response response) throws Exception {
+                response.status(NOT_FOUND);
+            }
+        }, "/images").fingerprint(fingerprints);
+
+        assets.handle(request.path(fingerprints.path("/images/sample.png")), response);
+        assertThat(response).hasStatus(NOT_FOUND)
+                            .hasNoHeader("Cache-Control");
+    }
+}
@@ -0,0 +1,35 @@
+package com.vtence.molecule.session;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+public class AccessOrderTest {
+
+    AccessOrder order = new AccessOrder();
+
+    @Test public void
+    ordersIdsFromLeastToMostRecentlyUsed() {
+        order.used("a");
+        order.used("b");
+        order.used("c");
+        order.used("a");
+
+        assertThat("first", order.leastRecentlyUsed(), equalTo("b"));
+        assertThat("second", order.leastRecentlyUsed(), equalTo("c"));
+        assertThat("third", order.leastRecentlyUsed(), equalTo("a"));
+        assertThat("none left", order.leastRecentlyUsed(), nullValue());
+    }
+
+    @Test public void
+    forgetsRemovedIds() {
+        order.used("a");
+        order.used("b");
+        order.remove("a");
+
+        assertThat("first", order.leastRecentlyUsed(), equalTo("b"));
+        assertThat("none left", order.leastRecentlyUsed(), nullValue());
+    }
+}
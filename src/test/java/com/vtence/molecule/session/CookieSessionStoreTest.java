@@ -0,0 +1,199 @@
+package com.vtence.molecule.session;
+
+import com.vtence.molecule.support.Delorean;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
+
+public class CookieSessionStoreTest {
+
+    byte[] secret = "0123456789abcdef".getBytes();
+    byte[] otherSecret = "fedcba9876543210".getBytes();
+    Delorean delorean = new Delorean();
+    CookieSessionStore store = CookieSessionStore.encrypted("k1", secret).clock(delorean);
+
+    @Test public void
+    storesSessionContentInCookieValue() {
+        String value = store.save(session("name", "Alice"));
+
+        assertThat("cookie value", value, startsWith("k1."));
+        Session session = store.load(value);
+        assertThat("loaded session", session, notNullValue());
+        assertThat("session id", session.id(), equalTo(value));
+        assertThat("attribute", session.<String>get("name"), equalTo("Alice"));
+    }
+
+    @Test public void
+    stampsCreationAndUpdateTimes() {
+        delorean.freeze();
+        Session session = store.load(store.save(session("name", "Alice")));
+
+        assertThat("creation time", session.createdAt(), equalTo(delorean.now()));
+        assertThat("update time", session.updatedAt(), equalTo(delorean.now()));
+    }
+
+    @Test public void
+    encryptsSessionContent() {
+        String value = store.save(session("name", "Alice"));
+        assertThat("cookie value", value, not(containsString("QWxpY2U")));
+    }
+
+    @Test public void
+    derivesEncryptionKeysFromSecretsOfAnyLength() {
+        for (int length : new int[] { 20, 64 }) {
+            CookieSessionStore store = CookieSessionStore.encrypted("k1", new byte[length]);
+            String value = store.save(session("name", "Alice"));
+            assertThat("loaded attribute", store.load(value).<String>get("name"), equalTo("Alice"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class) public void
+    rejectsEncryptionSecretsThatAreTooShort() {
+        CookieSessionStore.encrypted("k1", "01234567".getBytes());
+    }
+
+    @Test public void
+    signsSessionContent() {
+        CookieSessionStore signed = CookieSessionStore.signed("k1", secret);
+        String value = signed.save(session("name", "Alice"));
+
+        assertThat("loaded attribute", signed.load(value).<String>get("name"), equalTo("Alice"));
+    }
+
+    @Test public void
+    rejectsTamperedCookies() {
+        String value = store.save(session("name", "Alice"));
+        String tampered = tamper(value);
+
+        assertThat("tampered session", store.load(tampered), nullValue());
+        assertThat("garbage", store.load("k1.not-a-session!"), nullValue());
+        assertThat("unknown key", store.load("k2" + value.substring(2)), nullValue());
+    }
+
+    @Test public void
+    rejectsTamperedSignedCookies() {
+        CookieSessionStore signed = CookieSessionStore.signed("k1", secret);
+        String value = signed.save(session("name", "Alice"));
+        String tampered = tamper(value);
+
+        assertThat("tampered session", signed.load(tampered), nullValue());
+    }
+
+    @Test public void
+    acceptsSessionsProtectedWithPreviousKeysUntilRevoked() {
+        String old = store.save(session("name", "Alice"));
+        store.encryptWith("k2", otherSecret);
+
+        assertThat("old session", store.load(old), notNullValue());
+        assertThat("new session", store.save(session("name", "Bob")), startsWith("k2."));
+
+        store.revoke("k1");
+        assertThat("revoked session", store.load(old), nullValue());
+    }
+
+    @Test public void
+    reprotectsSessionsWithCurrentKeyWhenModified() {
+        Session session = store.load(store.save(session("name", "Alice")));
+        store.signWith("k2", otherSecret);
+
+        session.put("name", "Bob");
+        assertThat("new value", store.save(session), startsWith("k2."));
+    }
+
+    @Test public void
+    reprotectsUnchangedSessionsWithCurrentKey() {
+        Session session = store.load(store.save(session("name", "Alice")));
+        store.encryptWith("k2", otherSecret);
+
+        String value = store.save(session);
+        assertThat("new value", value, startsWith("k2."));
+        store.revoke("k1");
+        assertThat("attribute", store.load(value).<String>get("name"), equalTo("Alice"));
+    }
+
+    @Test public void
+    keepsCookieValueOfUnchangedSessions() {
+        String value = store.save(session("name", "Alice"));
+        assertThat("unchanged value", store.save(store.load(value)), equalTo(value));
+    }
+
+    @Test public void
+    rejectsCookiesPastTheirLifetimeEvenWithoutMaxAge() {
+        store.expireAfter(1, TimeUnit.HOURS);
+        String value = store.save(session("name", "Alice"));
+
+        delorean.travelInTime(TimeUnit.MINUTES.toMillis(59));
+        assertThat("live session", store.load(value), notNullValue());
+        delorean.travelInTime(TimeUnit.MINUTES.toMillis(61));
+        assertThat("expired session", store.load(value), nullValue());
+    }
+
+    @Test public void
+    resealsUnchangedSessionsHalfwayThroughTheirLifetime() {
+        store.expireAfter(1, TimeUnit.HOURS);
+        String value = store.save(session("name", "Alice"));
+
+        delorean.travelInTime(TimeUnit.MINUTES.toMillis(20));
+        assertThat("unchanged value", store.save(store.load(value)), equalTo(value));
+
+        delorean.travelInTime(TimeUnit.MINUTES.toMillis(40));
+        String resealed = store.save(store.load(value));
+        assertThat("resealed value", resealed, not(equalTo(value)));
+
+        delorean.travelInTime(TimeUnit.MINUTES.toMillis(90));
+        assertThat("resealed session", store.load(resealed), notNullValue());
+    }
+
+    @Test public void
+    rejectsExpiredSessions() {
+        Session data = session("name", "Alice");
+        data.maxAge((int) TimeUnit.MINUTES.toSeconds(30));
+        String value = store.save(data);
+
+        delorean.travelInTime(TimeUnit.MINUTES.toMillis(31));
+        assertThat("expired session", store.load(value), nullValue());
+    }
+
+    @Test public void
+    compressesLargeSessions() {
+        Session data = session("text", repeat("Lorem ipsum dolor sit amet ", 40));
+        int plainSize = store.save(data).length();
+
+        store.compressAbove(256);
+        String compressed = store.save(data);
+        assertThat("compressed size", compressed.length(), lessThan(plainSize / 2));
+        assertThat("attribute", store.load(compressed).<String>get("text"), equalTo(data.<String>get("text")));
+    }
+
+    @Test(expected = IllegalStateException.class) public void
+    refusesSessionsTooLargeForACookie() {
+        store.save(session("text", repeat("x", 4096)));
+    }
+
+    private String tamper(String value) {
+        int middle = value.length() / 2;
+        char c = value.charAt(middle);
+        return value.substring(0, middle) + (c == 'A' ? 'B' : 'A') + value.substring(middle + 1);
+    }
+
+    private Session session(String key, Object value) {
+        Session session = new Session();
+        session.put(key, value);
+        return session;
+    }
+
+    private String repeat(String text, int times) {
+        StringBuilder repeated = new StringBuilder();
+        for (int i = 0; i < times; i++) repeated.append(text);
+        return repeated.toString();
+    }
+}
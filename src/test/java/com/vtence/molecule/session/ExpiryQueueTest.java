@@ -0,0 +1,62 @@
+package com.vtence.molecule.session;
+
+import org.junit.Test;
+
+import java.util.Date;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+
+public class ExpiryQueueTest {
+
+    ExpiryQueue queue = new ExpiryQueue();
+    long now = 1000000;
+
+    @Test public void
+    findsSessionsDueForExpiration() {
+        queue.schedule("expired", at(now - 5000));
+        queue.schedule("expiring", at(now));
+        queue.schedule("later", at(now + 5000));
+
+        assertThat("due", queue.due(now), containsInAnyOrder("expired", "expiring"));
+    }
+
+    @Test public void
+    includesSessionsExpiringWithinTheCurrentSecond() {
+        queue.schedule("soon", at(now + 500));
+        assertThat("due", queue.due(now), containsInAnyOrder("soon"));
+    }
+
+    @Test public void
+    reschedulesSessions() {
+        queue.schedule("session", at(now - 5000));
+        queue.schedule("session", at(now + 5000));
+
+        assertThat("due", queue.due(now), empty());
+        assertThat("due later", queue.due(now + 5000), containsInAnyOrder("session"));
+        assertThat("scheduled", queue.size(), equalTo(1));
+    }
+
+    @Test public void
+    unschedulesSessions() {
+        queue.schedule("session", at(now - 5000));
+        queue.unschedule("session");
+
+        assertThat("due", queue.due(now), empty());
+        assertThat("scheduled", queue.size(), equalTo(0));
+    }
+
+    @Test public void
+    unschedulesSessionsThatNoLongerExpire() {
+        queue.schedule("session", at(now - 5000));
+        queue.schedule("session", null);
+
+        assertThat("due", queue.due(now), empty());
+    }
+
+    private Date at(long time) {
+        return new Date(time);
+    }
+}
@@ -0,0 +1,206 @@
+package com.vtence.molecule.session;
+
+import com.vtence.molecule.support.Delorean;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.fail;
+
+public class FileSessionStoreTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    Delorean delorean = new Delorean();
+    File dir;
+    FileSessionStore store;
+
+    @Before public void
+    openStore() throws IOException {
+        dir = folder.getRoot();
+        store = reopen();
+    }
+
+    @After public void
+    closeStore() throws IOException {
+        store.close();
+    }
+
+    @Test public void
+    restoresSessionsFromJournalAfterCrash() throws IOException {
+        String id = save("name", "Alice");
+        store.houseKeeping();
+
+        FileSessionStore restarted = reopen();
+        try {
+            Session session = restarted.load(id);
+            assertThat("restored session", session, notNullValue());
+            assertThat("restored attribute", session.<String>get("name"), equalTo("Alice"));
+        } finally {
+            restarted.close();
+        }
+    }
+
+    @Test public void
+    restoresSessionsFromSnapshotAfterShutdown() throws IOException {
+        String id = save("name", "Alice");
+        store.close();
+
+        store = reopen();
+        assertThat("restored attribute", store.load(id).<String>get("name"), equalTo("Alice"));
+        assertThat("journal after shutdown", new File(dir, "sessions.journal").length(), equalTo(0L));
+    }
+
+    @Test public void
+    replaysChangesMadeAfterSnapshot() throws IOException {
+        String id = save("name", "Alice");
+        store.snapshot();
+
+        Session session = store.load(id);
+        session.put("name", "Bob");
+        store.save(session);
+        String other = save("name", "Chris");
+
+        store = restart();
+        assertThat("updated attribute", store.load(id).<String>get("name"), equalTo("Bob"));
+        assertThat("new session", store.load(other).<String>get("name"), equalTo("Chris"));
+    }
+
+    @Test public void
+    forgetsDestroyedSessions() throws IOException {
+        String id = save("name", "Alice");
+        store.snapshot();
+        store.destroy(id);
+
+        store = restart();
+        assertThat("destroyed session", store.load(id), nullValue());
+    }
+
+    @Test public void
+    skipsSessionsThatExpiredWhileDown() throws IOException {
+        Session data = new Session();
+        data.maxAge((int) TimeUnit.MINUTES.toSeconds(30));
+        String id = store.save(data);
+        store.close();
+
+        delorean.travelInTime(TimeUnit.MINUTES.toMillis(31));
+        store = reopen();
+        assertThat("expired session", store.load(id), nullValue());
+    }
+
+    @Test public void
+    compactsJournalDuringHouseKeepingWhenOverLimit() throws IOException {
+        store.journalLimit(0);
+        String id = save("name", "Alice");
+        store.houseKeeping();
+
+        assertThat("journal after compaction", new File(dir, "sessions.journal").length(), equalTo(0L));
+        store = restart();
+        assertThat("restored attribute", store.load(id).<String>get("name"), equalTo("Alice"));
+    }
+
+    @Test public void
+    keepsSessionsThatCannotBeEncodedInMemoryOnly() throws IOException {
+        String unencodable = save("lock", new Object());
+        String persistent = save("name", "Alice");
+        assertThat("in memory", store.load(unencodable), notNullValue());
+        store.houseKeeping();
+
+        store = restart();
+        assertThat("unencodable session", store.load(unencodable), nullValue());
+        assertThat("persistent session", store.load(persistent), notNullValue());
+    }
+
+    @Test public void
+    journalsNewExpirationOfUnchangedSessions() throws IOException {
+        Session data = new Session();
+        data.maxAge((int) TimeUnit.MINUTES.toSeconds(30));
+        String id = store.save(data);
+        store.snapshot();
+
+        delorean.travelInTime(TimeUnit.MINUTES.toMillis(20));
+        store.save(store.load(id));
+        store.houseKeeping();
+        assertThat("journal size", new File(dir, "sessions.journal").length(), lessThan(64L));
+
+        delorean.travelInTime(TimeUnit.MINUTES.toMillis(40));
+        FileSessionStore restarted = reopen();
+        try {
+            assertThat("touched session", restarted.load(id), notNullValue());
+        } finally {
+            restarted.close();
+        }
+    }
+
+    @Test public void
+    keepsChangesOfFailedSnapshots() throws IOException {
+        File blocker = new File(dir, "sessions.snapshot.tmp");
+        assertThat("blocking snapshot", blocker.mkdir(), equalTo(true));
+        String first = save("name", "Alice");
+        failSnapshot();
+        String second = save("name", "Bob");
+        failSnapshot();
+        assertThat("unblocking snapshot", blocker.delete(), equalTo(true));
+
+        FileSessionStore restarted = reopen();
+        try {
+            assertThat("first session", restarted.load(first), notNullValue());
+            assertThat("second session", restarted.load(second), notNullValue());
+        } finally {
+            restarted.close();
+        }
+    }
+
+    @Test public void
+    keepsJournalingWhenJournalCannotBeRotated() throws IOException {
+        File blocker = new File(dir, "sessions.journal.old");
+        assertThat("blocking rotation", blocker.mkdir(), equalTo(true));
+        String first = save("name", "Alice");
+        failSnapshot();
+        String second = save("name", "Bob");
+        store.houseKeeping();
+        assertThat("unblocking rotation", blocker.delete(), equalTo(true));
+
+        FileSessionStore restarted = reopen();
+        try {
+            assertThat("first session", restarted.load(first), notNullValue());
+            assertThat("second session", restarted.load(second), notNullValue());
+        } finally {
+            restarted.close();
+        }
+    }
+
+    private void failSnapshot() {
+        try {
+            store.snapshot();
+            fail("Snapshot did not fail");
+        } catch (IOException expected) {
+        }
+    }
+
+    private String save(String key, Object value) {
+        Session data = new Session();
+        data.put(key, value);
+        return store.save(data);
+    }
+
+    private FileSessionStore restart() throws IOException {
+        store.close();
+        return reopen();
+    }
+
+    private FileSessionStore reopen() throws IOException {
+        return new FileSessionStore(dir, new SessionPool(new SecureIdentifierPolicy(), delorean)).open();
+    }
+}
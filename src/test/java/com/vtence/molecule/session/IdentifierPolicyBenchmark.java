@@ -0,0 +1,50 @@
+package com.vtence.molecule.session;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput of session id policies when many threads create sessions at once.
+ * Run with an optional thread count and number of ids per thread.
+ */
+public class IdentifierPolicyBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors() * 2;
+        int ids = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+
+        for (int round = 0; round < 3; round++) {
+            report("uuid", threads, ids, run(new SecureIdentifierPolicy(), threads, ids));
+            report("random", threads, ids, run(new RandomIdentifierPolicy(), threads, ids));
+        }
+    }
+
+    private static long run(final SessionIdentifierPolicy policy, int threads, final int ids)
+            throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                        for (int n = 0; n < ids; n++) policy.generateId();
+                    } catch (InterruptedException ignored) {
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        return System.nanoTime() - begin;
+    }
+
+    private static void report(String name, int threads, int ids, long elapsed) {
+        long total = (long) threads * ids;
+        System.out.printf("%-8s %d threads: %,d ids/s%n", name, threads,
+                total * TimeUnit.SECONDS.toNanos(1) / elapsed);
+    }
+}
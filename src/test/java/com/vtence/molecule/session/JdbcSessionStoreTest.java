@@ -0,0 +1,334 @@
+package com.vtence.molecule.session;
+
+import com.vtence.molecule.support.Delorean;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Blob;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.fail;
+
+public class JdbcSessionStoreTest {
+
+    static int databases;
+
+    JdbcDataSource dataSource = new JdbcDataSource();
+    Connection connection;
+    Delorean delorean = new Delorean();
+    ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    JdbcSessionStore store = new JdbcSessionStore(dataSource, new SecureIdentifierPolicy(), delorean);
+
+    @Before public void
+    createSessionsTable() throws SQLException {
+        dataSource.setURL("jdbc:h2:mem:sessions" + databases++);
+        // Keep the in-memory database open for the duration of the test
+        connection = dataSource.getConnection();
+        execute("CREATE TABLE sessions (id VARCHAR(64) PRIMARY KEY, expires_at BIGINT, data BLOB NOT NULL)");
+        execute("CREATE INDEX sessions_expiration ON sessions (expires_at)");
+    }
+
+    @After public void
+    dropDatabase() throws SQLException {
+        scheduler.shutdownNow();
+        connection.close();
+    }
+
+    @Test public void
+    storesSessionsInTable() throws SQLException {
+        String id = save("name", "Alice");
+        assertThat("rows", rowCount(), equalTo(1));
+
+        Session session = otherServer().load(id);
+        assertThat("loaded session", session, notNullValue());
+        assertThat("attribute", session.<String>get("name"), equalTo("Alice"));
+    }
+
+    @Test public void
+    updatesExistingSessions() throws SQLException {
+        String id = save("name", "Alice");
+        Session session = store.load(id);
+        session.put("name", "Bob");
+
+        assertThat("saved id", store.save(session), equalTo(id));
+        assertThat("rows", rowCount(), equalTo(1));
+        assertThat("updated attribute", otherServer().load(id).<String>get("name"), equalTo("Bob"));
+    }
+
+    @Test public void
+    destroysSessions() throws SQLException {
+        String id = save("name", "Alice");
+        store.destroy(id);
+
+        assertThat("rows", rowCount(), equalTo(0));
+        assertThat("destroyed session", store.load(id), nullValue());
+    }
+
+    @Test public void
+    coalescesQueuedSavesOfSameSession() throws SQLException {
+        store.writeBehind(scheduler, 1, TimeUnit.HOURS);
+        String id = save("name", "Alice");
+        for (String name : new String[] { "Bob", "Chris" }) {
+            Session session = store.load(id);
+            session.put("name", name);
+            store.save(session);
+        }
+
+        assertThat("queued", store.queued(), equalTo(1));
+        assertThat("rows before flush", rowCount(), equalTo(0));
+        assertThat("queued session", store.load(id).<String>get("name"), equalTo("Chris"));
+
+        store.flush();
+        assertThat("queued after flush", store.queued(), equalTo(0));
+        assertThat("written session", otherServer().load(id).<String>get("name"), equalTo("Chris"));
+    }
+
+    @Test public void
+    writesQueuedSessionsInBackground() throws Exception {
+        store.writeBehind(scheduler, 10, TimeUnit.MILLISECONDS);
+        save("name", "Alice");
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (rowCount() == 0 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        assertThat("rows", rowCount(), equalTo(1));
+    }
+
+    @Test public void
+    skipsWritingUnchangedSessions() throws SQLException {
+        store.writeBehind(scheduler, 1, TimeUnit.HOURS);
+        String id = save("name", "Alice");
+        store.flush();
+
+        store.save(store.load(id));
+        assertThat("queued", store.queued(), equalTo(0));
+    }
+
+    @Test public void
+    cachesSessionsReadFromDatabaseBriefly() throws SQLException {
+        store.cache(100, 1, TimeUnit.SECONDS);
+        String id = save("name", "Alice");
+        JdbcSessionStore other = otherServer();
+        Session session = other.load(id);
+        session.put("name", "Bob");
+        other.save(session);
+
+        assertThat("cached attribute", store.load(id).<String>get("name"), equalTo("Alice"));
+        delorean.travelInTime(TimeUnit.SECONDS.toMillis(2));
+        assertThat("fresh attribute", store.load(id).<String>get("name"), equalTo("Bob"));
+    }
+
+    @Test public void
+    deletesExpiredSessionsDuringHouseKeeping() throws SQLException {
+        Session data = new Session();
+        data.maxAge((int) TimeUnit.MINUTES.toSeconds(30));
+        String expiring = store.save(data);
+        String permanent = save("name", "Alice");
+
+        delorean.travelInTime(TimeUnit.MINUTES.toMillis(31));
+        assertThat("expired session", store.load(expiring), nullValue());
+        store.houseKeeping();
+
+        assertThat("rows", rowCount(), equalTo(1));
+        assertThat("permanent session", store.load(permanent), notNullValue());
+    }
+
+    @Test public void
+    doesNotBringBackSessionsDestroyedByOtherServers() throws SQLException {
+        String id = save("name", "Alice");
+        Session session = store.load(id);
+        otherServer().destroy(id);
+
+        session.put("name", "Bob");
+        store.save(session);
+        assertThat("rows", rowCount(), equalTo(0));
+    }
+
+    @Test public void
+    refusesSessionsThatCannotBeEncoded() throws SQLException {
+        try {
+            save("lock", new Object());
+            fail("Saved a session that cannot be encoded");
+        } catch (IllegalStateException expected) {
+        }
+        assertThat("queued", store.queued(), equalTo(0));
+
+        save("name", "Alice");
+        assertThat("rows", rowCount(), equalTo(1));
+    }
+
+    @Test public void
+    dropsWritesRejectedByDatabaseWithoutHoldingBackOthers() throws SQLException {
+        store.writeBehind(scheduler, 1, TimeUnit.HOURS);
+        String rejected = save("name", "Alice");
+        String accepted = save("name", "Bob");
+        reject(rejected);
+
+        try {
+            store.flush();
+            fail("Reported no failure");
+        } catch (IllegalStateException expected) {
+        }
+        assertThat("queued", store.queued(), equalTo(0));
+        assertThat("failed writes", store.failedWrites(), equalTo(1L));
+        assertThat("accepted session", contains(accepted), equalTo(true));
+        assertThat("rejected session", contains(rejected), equalTo(false));
+    }
+
+    @Test public void
+    insertsSessionsAgainOnceTheirInsertWasRejected() throws SQLException {
+        store.writeBehind(scheduler, 1, TimeUnit.HOURS);
+        String id = save("name", "Alice");
+        reject(id);
+        try {
+            store.flush();
+            fail("Reported no failure");
+        } catch (IllegalStateException expected) {
+        }
+
+        acceptAll();
+        Session session = store.load(id);
+        session.put("name", "Bob");
+        store.save(session);
+        store.flush();
+        assertThat("inserted session", otherServer().load(id).<String>get("name"), equalTo("Bob"));
+    }
+
+    @Test public void
+    onlyUpdatesExpirationOfUnchangedSessions() throws SQLException {
+        Session data = new Session();
+        data.put("name", "Alice");
+        data.maxAge((int) TimeUnit.MINUTES.toSeconds(30));
+        String id = store.save(data);
+        byte[] written = dataOf(id);
+
+        delorean.travelInTime(TimeUnit.MINUTES.toMillis(20));
+        long touchedAt = delorean.freeze().getTime();
+        store.save(store.load(id));
+        assertThat("expiration", expirationOf(id), equalTo(touchedAt + TimeUnit.MINUTES.toMillis(30)));
+        assertThat("data", dataOf(id), equalTo(written));
+
+        delorean.unfreeze();
+        delorean.travelInTime(TimeUnit.MINUTES.toMillis(40));
+        assertThat("touched session", otherServer().load(id), notNullValue());
+    }
+
+    @Test public void
+    doesNotRetryWritesOnceDropped() throws SQLException {
+        goOffline();
+        try {
+            save("name", "Alice");
+            fail("Reported no failure");
+        } catch (IllegalStateException expected) {
+        }
+
+        goOnline();
+        save("name", "Bob");
+        assertThat("rows", rowCount(), equalTo(1));
+        assertThat("failed writes", store.failedWrites(), equalTo(1L));
+    }
+
+    @Test public void
+    writesQueueOnceFull() throws SQLException {
+        store.writeBehind(scheduler, 1, TimeUnit.HOURS).maxQueued(2);
+        save("name", "Alice");
+        assertThat("rows while queue has room", rowCount(), equalTo(0));
+
+        save("name", "Bob");
+        assertThat("queued", store.queued(), equalTo(0));
+        assertThat("rows", rowCount(), equalTo(2));
+    }
+
+    @Test public void
+    keepsHouseKeepingWhenDatabaseFails() throws SQLException {
+        store.writeBehind(scheduler, 1, TimeUnit.HOURS);
+        save("name", "Alice");
+        goOffline();
+
+        store.houseKeeping();
+        assertThat("failed writes", store.failedWrites(), equalTo(1L));
+    }
+
+    private String save(String key, Object value) {
+        Session data = new Session();
+        data.put(key, value);
+        return store.save(data);
+    }
+
+    private JdbcSessionStore otherServer() {
+        return new JdbcSessionStore(dataSource, new SecureIdentifierPolicy(), delorean);
+    }
+
+    private void execute(String sql) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            statement.execute(sql);
+        } finally {
+            statement.close();
+        }
+    }
+
+    private int rowCount() throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM sessions");
+            rs.next();
+            return rs.getInt(1);
+        } finally {
+            statement.close();
+        }
+    }
+
+    private boolean contains(String id) throws SQLException {
+        return dataOf(id) != null;
+    }
+
+    private byte[] dataOf(String id) throws SQLException {
+        return (byte[]) select("data", id);
+    }
+
+    private long expirationOf(String id) throws SQLException {
+        return (Long) select("expires_at", id);
+    }
+
+    private Object select(String column, String id) throws SQLException {
+        PreparedStatement select = connection.prepareStatement("SELECT " + column + " FROM sessions WHERE id = ?");
+        try {
+            select.setString(1, id);
+            ResultSet rs = select.executeQuery();
+            if (!rs.next()) return null;
+            Object value = rs.getObject(1);
+            return value instanceof Blob ? ((Blob) value).getBytes(1, (int) ((Blob) value).length()) : value;
+        } finally {
+            select.close();
+        }
+    }
+
+    private void reject(String id) throws SQLException {
+        execute("ALTER TABLE sessions ADD CONSTRAINT rejected CHECK (id <> '" + id + "')");
+    }
+
+    private void acceptAll() throws SQLException {
+        execute("ALTER TABLE sessions DROP CONSTRAINT rejected");
+    }
+
+    private void goOffline() throws SQLException {
+        execute("ALTER TABLE sessions RENAME TO offline_sessions");
+    }
+
+    private void goOnline() throws SQLException {
+        execute("ALTER TABLE offline_sessions RENAME TO sessions");
+    }
+}
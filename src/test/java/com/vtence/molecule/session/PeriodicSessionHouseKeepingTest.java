@@ -47,6 +47,15 @@ public class PeriodicSessionHouseKeepingTest {
         assertHouseKeepingChores(3);
     }
 
+    @Test public void
+    keepsSchedulingHouseKeepingAfterAFailure() throws Exception {
+        count.failNext();
+        tick(CHORES_INTERVAL);
+        assertHouseKeepingChores(1);
+        tick(CHORES_INTERVAL);
+        assertHouseKeepingChores(2);
+    }
+
     private void tick(int millis) {
         scheduler.tick(millis, TimeUnit.MILLISECONDS);
     }
@@ -57,9 +66,18 @@ public class PeriodicSessionHouseKeepingTest {
 
     private class CountChores implements SessionHouse {
         private int chores;
+        private boolean failing;
+
+        public void failNext() {
+            failing = true;
+        }
 
         public void houseKeeping() {
             chores++;
+            if (failing) {
+                failing = false;
+                throw new IllegalStateException("House keeping failed");
+            }
         }
     }
 }
\ No newline at end of file
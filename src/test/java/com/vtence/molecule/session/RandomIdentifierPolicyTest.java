@@ -0,0 +1,46 @@
+package com.vtence.molecule.session;
+
+import org.jmock.lib.concurrent.Blitzer;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class RandomIdentifierPolicyTest {
+
+    RandomIdentifierPolicy policy = new RandomIdentifierPolicy();
+
+    @Test public void
+    encodes128RandomBitsInUrlSafeCharacters() {
+        String id = policy.generateId();
+        assertThat("length", id.length(), equalTo(22));
+        assertThat("url safe", id.matches("[A-Za-z0-9_-]+"), equalTo(true));
+    }
+
+    @Test public void
+    supportsLongerIds() {
+        assertThat("length", new RandomIdentifierPolicy(32).generateId().length(), equalTo(43));
+    }
+
+    @Test(expected = IllegalArgumentException.class) public void
+    refusesIdsWithLessThan128Bits() {
+        new RandomIdentifierPolicy(8);
+    }
+
+    @Test public void
+    generatesUniqueIdsAcrossThreads() throws InterruptedException {
+        final Set<String> ids = Collections.synchronizedSet(new HashSet<String>());
+        Blitzer blitzer = new Blitzer(10000, 10);
+        blitzer.blitz(new Runnable() {
+            public void run() {
+                ids.add(policy.generateId());
+            }
+        });
+        blitzer.shutdown();
+        assertThat("unique ids", ids.size(), equalTo(10000));
+    }
+}
@@ -0,0 +1,279 @@
+package com.vtence.molecule.session;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+public class ReplicatedSessionStoreTest {
+
+    static final long TIMEOUT = TimeUnit.SECONDS.toMillis(5);
+
+    byte[] secret = "shared secret".getBytes();
+
+    ExecutorService executor = Executors.newCachedThreadPool();
+    List<ReplicatedSessionStore> nodes = new ArrayList<ReplicatedSessionStore>();
+
+    SessionPool firstPool = new SessionPool();
+    ReplicatedSessionStore first = node(firstPool);
+    SessionPool secondPool = new SessionPool();
+    ReplicatedSessionStore second = node(secondPool);
+
+    @After public void
+    stopNodes() throws IOException {
+        for (ReplicatedSessionStore node : nodes) node.stop();
+        executor.shutdownNow();
+    }
+
+    @Test public void
+    replicatesSavedSessionsToPeers() throws Exception {
+        connect(first, second);
+        String id = save(first, "name", "Alice");
+
+        awaitSize(secondPool, 1);
+        Session replica = secondPool.load(id);
+        assertThat("replicated attribute", replica.<String>get("name"), equalTo("Alice"));
+    }
+
+    @Test public void
+    replicatesLatestVersionOfSessions() throws Exception {
+        connect(first, second);
+        String id = save(first, "name", "Alice");
+        Session session = first.load(id);
+        session.put("name", "Bob");
+        first.save(session);
+
+        awaitAttribute(secondPool, id, "Bob");
+    }
+
+    @Test public void
+    removesDestroyedSessionsFromPeers() throws Exception {
+        connect(first, second);
+        String id = save(first, "name", "Alice");
+        awaitSize(secondPool, 1);
+
+        first.destroy(id);
+        awaitSize(secondPool, 0);
+    }
+
+    @Test public void
+    fetchesSessionsMissingLocallyFromPeers() throws Exception {
+        first.start();
+        second.replicateTo("localhost", first.port()).start();
+        String id = save(first, "name", "Alice");
+
+        Session session = second.load(id);
+        assertThat("fetched session", session, notNullValue());
+        assertThat("fetched attribute", session.<String>get("name"), equalTo("Alice"));
+        assertThat("kept session", secondPool.size(), equalTo(1));
+    }
+
+    @Test public void
+    keepsLocalVersionWhenOlderCopyArrivesLate() throws Exception {
+        int port = unusedPort();
+        first.replicateTo("localhost", port).timeout(100, TimeUnit.MILLISECONDS).start();
+        String id = save(first, "name", "Alice");
+
+        second.replicateTo("localhost", first.port()).listenOn(port);
+        Session session = second.load(id);
+        session.put("name", "Bob");
+        second.save(session);
+        second.start();
+        String later = save(first, "name", "Carol");
+
+        awaitAttribute(secondPool, later, "Carol");
+        assertThat("local version", nameIn(secondPool, id), equalTo("Bob"));
+    }
+
+    @Test public void
+    keepsWorkingWhenPeersAreDown() throws Exception {
+        first.replicateTo("localhost", unusedPort()).timeout(100, TimeUnit.MILLISECONDS).start();
+        String id = save(first, "name", "Alice");
+
+        assertThat("local session", first.load(id), notNullValue());
+        assertThat("unknown session", first.load("unknown"), nullValue());
+    }
+
+    @Test public void
+    ignoresNodesThatDoNotShareTheSecret() throws Exception {
+        SessionPool intruderPool = new SessionPool();
+        ReplicatedSessionStore intruder = node(intruderPool, "guessed secret".getBytes());
+        connect(intruder, second);
+        connect(first, second);
+        String forged = save(intruder, "user", "admin");
+        Thread.sleep(100);
+        String id = save(first, "name", "Alice");
+
+        awaitAttribute(secondPool, id, "Alice");
+        assertThat("forged session", secondPool.load(forged), nullValue());
+        assertThat("stolen session", intruder.load(id), nullValue());
+    }
+
+    @Test public void
+    keepsSessionsThatNeedJavaSerializationLocal() throws Exception {
+        connect(first, second);
+        Session data = new Session();
+        data.put("date", new Date());
+        String local = first.save(data);
+        String id = save(first, "name", "Alice");
+
+        awaitAttribute(secondPool, id, "Alice");
+        assertThat("local session", secondPool.load(local), nullValue());
+        assertThat("fetched session", second.load(local), nullValue());
+    }
+
+    @Test public void
+    skipsPeersThatFailToAnswer() throws Exception {
+        ServerSocket silent = new ServerSocket(0);
+        try {
+            first.replicateTo("localhost", silent.getLocalPort()).timeout(500, TimeUnit.MILLISECONDS).start();
+            assertThat("unanswered fetch", first.load("unknown"), nullValue());
+
+            long start = System.currentTimeMillis();
+            assertThat("skipped fetch", first.load("other"), nullValue());
+            assertThat("time spent", System.currentTimeMillis() - start, lessThan(250L));
+        } finally {
+            silent.close();
+        }
+    }
+
+    @Test public void
+    disconnectsPeersAnnouncingLargeMessagesBeforeAuthenticating() throws Exception {
+        first.start();
+        Socket attacker = handshake(first);
+        try {
+            new DataOutputStream(attacker.getOutputStream()).writeInt(64 * 1024 * 1024);
+            assertThat("end of stream", attacker.getInputStream().read(), equalTo(-1));
+        } finally {
+            attacker.close();
+        }
+    }
+
+    @Test public void
+    disconnectsPeersThatDoNotAuthenticateInTime() throws Exception {
+        first.timeout(100, TimeUnit.MILLISECONDS).start();
+        Socket idle = handshake(first);
+        try {
+            assertThat("end of stream", idle.getInputStream().read(), equalTo(-1));
+        } finally {
+            idle.close();
+        }
+    }
+
+    @Test public void
+    limitsConnectionsWaitingToAuthenticate() throws Exception {
+        first.timeout(TIMEOUT, TimeUnit.MILLISECONDS).start();
+        List<Socket> idle = new ArrayList<Socket>();
+        try {
+            while (idle.size() < 16) idle.add(handshake(first));
+            Socket refused = connectTo(first);
+            idle.add(refused);
+            assertThat("end of stream", refused.getInputStream().read(), equalTo(-1));
+
+            second.replicateTo("localhost", first.port()).start();
+            String id = save(second, "name", "Alice");
+            idle.get(0).close();
+            awaitAttribute(firstPool, id, "Alice");
+        } finally {
+            for (Socket socket : idle) socket.close();
+        }
+    }
+
+    @Test public void
+    splitsChangesInMessagesOfLimitedSize() throws Exception {
+        first.maxMessageSize(1024);
+        second.maxMessageSize(1024);
+        connect(first, second);
+        List<String> ids = new ArrayList<String>();
+        for (int i = 0; i < 10; i++) ids.add(save(first, "text", text(200)));
+        String large = save(first, "text", text(2000));
+        String id = save(first, "name", "Alice");
+
+        awaitAttribute(secondPool, id, "Alice");
+        for (String replicated : ids) assertThat("replicated session", secondPool.load(replicated), notNullValue());
+        assertThat("large session", secondPool.load(large), nullValue());
+        assertThat("fetched session", second.load(large), nullValue());
+    }
+
+    private ReplicatedSessionStore node(SessionPool pool) {
+        return node(pool, secret);
+    }
+
+    private ReplicatedSessionStore node(SessionPool pool, byte[] secret) {
+        ReplicatedSessionStore node = new ReplicatedSessionStore(pool, executor, secret);
+        nodes.add(node);
+        return node;
+    }
+
+    private void connect(ReplicatedSessionStore from, ReplicatedSessionStore to) throws IOException {
+        to.start();
+        from.replicateTo("localhost", to.port()).start();
+    }
+
+    private String save(SessionStore store, String key, Object value) {
+        Session data = new Session();
+        data.put(key, value);
+        return store.save(data);
+    }
+
+    private void awaitSize(SessionPool pool, int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (pool.size() != size && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        assertThat("pool size", pool.size(), equalTo(size));
+    }
+
+    private void awaitAttribute(SessionPool pool, String id, String name) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!name.equals(nameIn(pool, id)) && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        assertThat("replicated attribute", nameIn(pool, id), equalTo(name));
+    }
+
+    private String nameIn(SessionPool pool, String id) {
+        Session session = pool.load(id);
+        return session != null ? session.<String>get("name") : null;
+    }
+
+    private Socket connectTo(ReplicatedSessionStore node) throws IOException {
+        Socket socket = new Socket("localhost", node.port());
+        socket.setSoTimeout((int) TIMEOUT);
+        return socket;
+    }
+
+    private Socket handshake(ReplicatedSessionStore node) throws IOException {
+        Socket socket = connectTo(node);
+        byte[] nonce = new byte[16];
+        new DataInputStream(socket.getInputStream()).readFully(nonce);
+        return socket;
+    }
+
+    private String text(int length) {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < length) text.append('x');
+        return text.toString();
+    }
+
+    private int unusedPort() throws IOException {
+        ServerSocket socket = new ServerSocket(0);
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+}
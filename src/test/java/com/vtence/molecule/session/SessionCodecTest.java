@@ -0,0 +1,108 @@
+package com.vtence.molecule.session;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.NotSerializableException;
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+public class SessionCodecTest {
+
+    @Test public void
+    roundTripsSessionMetadata() throws IOException {
+        Session session = new Session("42");
+        session.createdTime(1000);
+        session.updatedTime(2000);
+        session.maxAge(60);
+
+        Session copy = roundTrip(session);
+        assertThat("id", copy.id(), equalTo("42"));
+        assertThat("creation time", copy.createdAt(), equalTo(new Date(1000)));
+        assertThat("update time", copy.updatedAt(), equalTo(new Date(2000)));
+        assertThat("max age", copy.maxAge(), equalTo(60));
+    }
+
+    @Test public void
+    roundTripsSessionsWithoutId() throws IOException {
+        assertThat("id", roundTrip(new Session()).id(), nullValue());
+    }
+
+    @Test public void
+    roundTripsCommonAttributeTypes() throws IOException {
+        Session session = new Session("42");
+        session.put("string", "Alice");
+        session.put("integer", 7);
+        session.put("long", 7L);
+        session.put("boolean", true);
+        session.put("double", 0.5);
+        session.put("bytes", new byte[] { 1, 2, 3 });
+
+        Session copy = roundTrip(session);
+        assertThat("string", copy.<String>get("string"), equalTo("Alice"));
+        assertThat("integer", copy.<Integer>get("integer"), equalTo(7));
+        assertThat("long", copy.<Long>get("long"), equalTo(7L));
+        assertThat("boolean", copy.<Boolean>get("boolean"), equalTo(true));
+        assertThat("double", copy.<Double>get("double"), equalTo(0.5));
+        assertThat("bytes", Arrays.equals(copy.<byte[]>get("bytes"), new byte[] { 1, 2, 3 }), equalTo(true));
+    }
+
+    @Test public void
+    fallsBackToJavaSerializationForOtherAttributes() throws IOException {
+        Session session = new Session("42");
+        session.put("date", new Date(1000));
+
+        assertThat("date", roundTrip(session).<Date>get("date"), equalTo(new Date(1000)));
+    }
+
+    @Test(expected = NotSerializableException.class) public void
+    rejectsAttributesThatCannotBeSerialized() throws IOException {
+        Session session = new Session("42");
+        session.put("object", new Object());
+        roundTrip(session);
+    }
+
+    @Test(expected = NotSerializableException.class) public void
+    writesOnlyTaggedTypesInPortableFormat() throws IOException {
+        Session session = new Session("42");
+        session.put("date", new Date(1000));
+        SessionCodec.writePortable(new DataOutputStream(new ByteArrayOutputStream()), session);
+    }
+
+    @Test(expected = InvalidObjectException.class) public void
+    refusesSerializedAttributesInPortableFormat() throws IOException {
+        Session session = new Session("42");
+        session.put("date", new Date(1000));
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        SessionCodec.write(new DataOutputStream(buffer), session);
+        SessionCodec.readPortable(new DataInputStream(new ByteArrayInputStream(buffer.toByteArray())));
+    }
+
+    @Test public void
+    roundTripsTaggedTypesInPortableFormat() throws IOException {
+        Session session = new Session("42");
+        session.put("name", "Alice");
+        session.put("count", 7);
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        SessionCodec.writePortable(new DataOutputStream(buffer), session);
+        Session copy = SessionCodec.readPortable(new DataInputStream(new ByteArrayInputStream(buffer.toByteArray())));
+        assertThat("string", copy.<String>get("name"), equalTo("Alice"));
+        assertThat("integer", copy.<Integer>get("count"), equalTo(7));
+    }
+
+    private Session roundTrip(Session session) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        SessionCodec.write(new DataOutputStream(buffer), session);
+        return SessionCodec.read(new DataInputStream(new ByteArrayInputStream(buffer.toByteArray())));
+    }
+}
@@ -15,6 +15,7 @@ import java.util.Date;
 import java.util.concurrent.TimeUnit;
 
 import static java.lang.String.valueOf;
+import static java.util.Arrays.asList;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
 
@@ -155,6 +156,122 @@ public class SessionPoolTest {
         assertNoLongerInPool(expiringSessions);
     }
 
+    @Test public void
+    touchesUnmodifiedSessionsWhenSaving() {
+        Session data = new Session();
+        data.put("a", "Alice");
+        data.maxAge(maxAge);
+        Session loaded = save(data);
+
+        delorean.travelInTime(timeJump(60));
+        Date touchTime = delorean.freeze();
+        Session touched = save(loaded);
+
+        assertThat("update time", touched.updatedAt(), equalTo(touchTime));
+        assertThat("touched session values", touched.values(), Matchers.<Object>contains("Alice"));
+    }
+
+    @Test public void
+    savesChangesMadeToLoadedSessions() {
+        Session data = new Session();
+        data.put("a", "Alice");
+        Session loaded = save(data);
+        loaded.put("b", "Bob");
+
+        assertThat("saved session keys", save(loaded).keys(), Matchers.<Object>containsInAnyOrder("a", "b"));
+    }
+
+    @Test public void
+    keepsSessionsWhoseExpirationWasPostponed() {
+        Session data = new Session();
+        data.maxAge(maxAge);
+        String sid = pool.save(data);
+
+        delorean.travelInTime(timeJump(maxAge / 2));
+        pool.save(pool.load(sid));
+        delorean.travelInTime(timeJump(maxAge));
+        pool.houseKeeping();
+
+        assertThat("postponed session", pool.load(sid), notNullValue());
+    }
+
+    @Test public void
+    keepsSessionsThatNoLongerExpire() {
+        Session data = new Session();
+        data.maxAge(maxAge);
+        String sid = pool.save(data);
+        Session session = pool.load(sid);
+        session.maxAge(-1);
+        pool.save(session);
+
+        delorean.travelInTime(timeJump(maxAge));
+        pool.houseKeeping();
+        assertThat("session", pool.load(sid), notNullValue());
+    }
+
+    @Test public void
+    notifiesWhenExpiredSessionsAreDestroyed() {
+        Session data = new Session();
+        data.maxAge(maxAge);
+        final String sid = pool.save(data);
+        pool.save(new Session());
+
+        pool.setSessionListener(listener);
+        context.checking(new Expectations() {{
+            oneOf(listener).sessionDropped(with(sid));
+        }});
+        delorean.travelInTime(timeJump(maxAge));
+        pool.houseKeeping();
+    }
+
+    @Test public void
+    dropsLeastRecentlyUsedSessionsWhenFull() {
+        pool.maxSessions(3);
+        String first = pool.save(new Session());
+        String second = pool.save(new Session());
+        String third = pool.save(new Session());
+        pool.load(first);
+        String fourth = pool.save(new Session());
+
+        assertThat("pool size", pool.size(), equalTo(3));
+        assertNoLongerInPool(asList(second));
+        assertStillInPool(asList(first, third, fourth));
+        assertThat("evictions", pool.evictions(), equalTo(1L));
+    }
+
+    @Test public void
+    dropsSessionsWhenEstimatedSizeIsExceeded() {
+        Session data = new Session();
+        data.put("text", "0123456789");
+        String sid = pool.save(data);
+        long sessionSize = pool.estimatedSize();
+        pool.destroy(sid);
+        assertThat("size once destroyed", pool.estimatedSize(), equalTo(0L));
+
+        pool.maxSize(sessionSize * 2);
+        for (int i = 0; i < 5; i++) {
+            Session session = new Session();
+            session.put("text", "0123456789");
+            pool.save(session);
+        }
+        assertThat("pool size", pool.size(), equalTo(2));
+        assertThat("estimated size", pool.estimatedSize(), equalTo(sessionSize * 2));
+        assertThat("evictions", pool.evictions(), equalTo(3L));
+    }
+
+    @Test public void
+    notifiesWhenSessionsAreEvicted() {
+        pool.maxSessions(1);
+        final String sid = pool.save(new Session());
+        pool.setSessionListener(listener);
+
+        context.checking(new Expectations() {{
+            allowing(listener).sessionCreated(with(any(String.class)));
+            oneOf(listener).sessionDropped(with(sid));
+        }});
+        pool.save(new Session());
+    }
+
     @Test public void
     notifiesWhenSessionsAreLoaded() {
         final String sid = pool.save(new Session());
@@ -198,6 +315,26 @@ public class SessionPoolTest {
         pool.destroy(sid);
     }
 
+    @Test public void
+    restoresOnlyCopiesUpdatedMoreRecently() {
+        long now = delorean.freeze().getTime();
+        Session data = new Session();
+        data.put("name", "Alice");
+        String id = pool.save(data);
+
+        assertThat("stale copy restored", pool.restoreIfNewer(copy(id, "Bob", now - 1000)), equalTo(false));
+        assertThat("kept version", pool.load(id).<String>get("name"), equalTo("Alice"));
+        assertThat("newer copy restored", pool.restoreIfNewer(copy(id, "Carol", now + 1000)), equalTo(true));
+        assertThat("restored version", pool.load(id).<String>get("name"), equalTo("Carol"));
+    }
+
+    private Session copy(String id, String name, long updatedTime) {
+        Session copy = new Session(id);
+        copy.put("name", name);
+        copy.updatedTime(updatedTime);
+        return copy;
+    }
+
     private long timeJump(int seconds) {
         return TimeUnit.SECONDS.toMillis(seconds);
     }
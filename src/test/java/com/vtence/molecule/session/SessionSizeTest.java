@@ -0,0 +1,37 @@
+package com.vtence.molecule.session;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+public class SessionSizeTest {
+
+    @Test public void
+    accountsForEmptySessions() {
+        assertThat("empty session", SessionSize.estimate(new Session()), greaterThan(0L));
+    }
+
+    @Test public void
+    growsWithSizeOfAttributes() {
+        Session session = new Session();
+        session.put("name", "Alice");
+        long small = SessionSize.estimate(session);
+
+        session.put("name", "Alice in Wonderland");
+        assertThat("longer string", SessionSize.estimate(session), greaterThan(small));
+    }
+
+    @Test public void
+    estimatesAttributesOfAnyType() {
+        Session session = new Session();
+        session.put("count", 42);
+        session.put("bytes", new byte[100]);
+        session.put("object", new Object());
+        long size = SessionSize.estimate(session);
+
+        session.put("bytes", new byte[200]);
+        assertThat("byte array length", SessionSize.estimate(session), equalTo(size + 100));
+    }
+}
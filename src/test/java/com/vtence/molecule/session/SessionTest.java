@@ -0,0 +1,103 @@
+package com.vtence.molecule.session;
+
+import org.junit.Test;
+
+import org.hamcrest.Matchers;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+public class SessionTest {
+
+    Session session = new Session("1");
+
+    @Test public void
+    isInitiallyUnmodified() {
+        assertThat("modified", session.modified(), equalTo(false));
+    }
+
+    @Test public void
+    tracksAttributeChanges() {
+        session.put("a", "Alice");
+        assertThat("modified", session.modified(), equalTo(true));
+    }
+
+    @Test public void
+    ignoresRemovalOfMissingAttributes() {
+        session.remove("a");
+        session.clear();
+        assertThat("modified", session.modified(), equalTo(false));
+    }
+
+    @Test public void
+    tracksChangesToMaxAgeOnly() {
+        session.maxAge(-1);
+        assertThat("modified", session.modified(), equalTo(false));
+        session.maxAge(60);
+        assertThat("modified", session.modified(), equalTo(true));
+    }
+
+    @Test public void
+    sharesAttributesWithCopiesUntilModified() {
+        session.put("a", "Alice");
+        session.maxAge(60);
+        Session copy = new Session("2", session);
+
+        assertThat("copy modified", copy.modified(), equalTo(false));
+        assertThat("copied attribute", copy.<String>get("a"), equalTo("Alice"));
+        assertThat("copied max age", copy.maxAge(), equalTo(60));
+
+        copy.put("a", "Annie");
+        copy.put("b", "Bob");
+        assertThat("original attribute", session.<String>get("a"), equalTo("Alice"));
+        assertThat("original attributes", session.size(), equalTo(1));
+
+        session.clear();
+        assertThat("copy attribute", copy.<String>get("a"), equalTo("Annie"));
+        assertThat("original attribute", session.get("a"), nullValue());
+    }
+
+    @Test public void
+    keepsAttributesInInsertionOrderAsSessionGrows() {
+        for (int i = 1; i <= 6; i++) {
+            session.put("key" + i, i);
+        }
+        session.put("key2", 20);
+
+        assertThat("keys", session.keys(), Matchers.<Object>contains("key1", "key2", "key3", "key4", "key5", "key6"));
+        assertThat("values", session.values(), Matchers.<Object>contains(1, 20, 3, 4, 5, 6));
+        assertThat("size", session.size(), equalTo(6));
+    }
+
+    @Test public void
+    removesAttributes() {
+        session.put("a", "Alice");
+        session.put("b", "Bob");
+        session.put("c", "Chris");
+
+        assertThat("removed", session.remove("b"), equalTo((Object) "Bob"));
+        assertThat("keys", session.keys(), Matchers.<Object>contains("a", "c"));
+        assertThat("missing", session.contains("b"), equalTo(false));
+    }
+
+    @Test public void
+    sharesLargeSessionsWithCopiesUntilModified() {
+        for (int i = 1; i <= 6; i++) {
+            session.put("key" + i, i);
+        }
+        Session copy = new Session("2", session);
+        copy.remove("key1");
+        session.put("key7", 7);
+
+        assertThat("original size", session.size(), equalTo(7));
+        assertThat("copy size", copy.size(), equalTo(5));
+    }
+
+    @Test public void
+    describesItsContent() {
+        session.put("a", "Alice");
+        session.put("b", "Bob");
+        assertThat("description", session.toString(), equalTo("1: {a=Alice, b=Bob}"));
+    }
+}
@@ -0,0 +1,74 @@
+package com.vtence.molecule.session;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class SlabTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    int segmentSize = 1024;
+    Slab slab;
+
+    @Before public void
+    createSlab() throws IOException {
+        slab = new Slab(folder.newFile("slab"), segmentSize);
+    }
+
+    @After public void
+    closeSlab() throws IOException {
+        slab.close();
+    }
+
+    @Test public void
+    readsBackWrittenRecords() throws IOException {
+        long first = slab.write(record(10, (byte) 1));
+        long second = slab.write(record(300, (byte) 2));
+
+        assertThat("first record", Arrays.equals(slab.read(first, 10), record(10, (byte) 1)), equalTo(true));
+        assertThat("second record", Arrays.equals(slab.read(second, 300), record(300, (byte) 2)), equalTo(true));
+    }
+
+    @Test public void
+    reusesFreedSlotsOfSameSizeClass() throws IOException {
+        long address = slab.write(record(100, (byte) 1));
+        slab.free(address, 100);
+
+        assertThat("reused address", slab.write(record(120, (byte) 2)), equalTo(address));
+    }
+
+    @Test public void
+    mapsNewSegmentsAsNeeded() throws IOException {
+        for (int i = 0; i < 3; i++) slab.write(record(segmentSize / 2, (byte) i));
+        assertThat("capacity", slab.capacity(), equalTo(2L * segmentSize));
+    }
+
+    @Test public void
+    neverSplitsRecordsAcrossSegments() throws IOException {
+        slab.write(record(100, (byte) 1));
+        long address = slab.write(record(segmentSize, (byte) 2));
+
+        assertThat("aligned address", address % segmentSize, equalTo(0L));
+        assertThat("record", Arrays.equals(slab.read(address, segmentSize), record(segmentSize, (byte) 2)), equalTo(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class) public void
+    rejectsRecordsLargerThanSegments() throws IOException {
+        slab.write(new byte[segmentSize + 1]);
+    }
+
+    private byte[] record(int length, byte value) {
+        byte[] record = new byte[length];
+        Arrays.fill(record, value);
+        return record;
+    }
+}
@@ -0,0 +1,171 @@
+package com.vtence.molecule.session;
+
+import com.vtence.molecule.support.Delorean;
+import org.jmock.Expectations;
+import org.jmock.integration.junit4.JUnitRuleMockery;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+public class TieredSessionStoreTest {
+
+    @Rule public JUnitRuleMockery context = new JUnitRuleMockery();
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    Delorean delorean = new Delorean();
+    SessionPool pool = new SessionPool(new SecureIdentifierPolicy(), delorean);
+    SessionPoolListener listener = context.mock(SessionPoolListener.class);
+    TieredSessionStore store;
+
+    @Before public void
+    createStore() throws IOException {
+        store = new TieredSessionStore(new Slab(folder.newFile("sessions"), 4096), pool, delorean)
+                .demoteAfter(10, TimeUnit.MINUTES);
+    }
+
+    @After public void
+    closeStore() throws IOException {
+        store.close();
+    }
+
+    @Test public void
+    keepsRecentlyUsedSessionsInMemory() {
+        save("name", "Alice");
+        delorean.travelInTime(TimeUnit.MINUTES.toMillis(5));
+        store.houseKeeping();
+
+        assertThat("demoted", store.demoted(), equalTo(0));
+        assertThat("in memory", pool.size(), equalTo(1));
+    }
+
+    @Test public void
+    movesIdleSessionsToDisk() {
+        save("name", "Alice");
+        delorean.travelInTime(TimeUnit.MINUTES.toMillis(11));
+        store.houseKeeping();
+
+        assertThat("demoted", store.demoted(), equalTo(1));
+        assertThat("in memory", pool.size(), equalTo(0));
+        assertThat("total", store.size(), equalTo(1));
+    }
+
+    @Test public void
+    demotesOnlySessionsIdleForLongEnough() {
+        String idle = save("name", "Alice");
+        delorean.travelInTime(TimeUnit.MINUTES.toMillis(6));
+        String recent = save("name", "Bob");
+        delorean.travelInTime(TimeUnit.MINUTES.toMillis(12));
+        store.houseKeeping();
+
+        assertThat("demoted", store.demoted(), equalTo(1));
+        assertThat("recent session in memory", pool.stored(recent), notNullValue());
+        assertThat("idle session in memory", pool.stored(idle), nullValue());
+    }
+
+    @Test public void
+    promotesDemotedSessionsWhenLoaded() {
+        String id = save("name", "Alice");
+        delorean.travelInTime(TimeUnit.MINUTES.toMillis(11));
+        store.houseKeeping();
+
+        Session session = store.load(id);
+        assertThat("promoted session", session, notNullValue());
+        assertThat("promoted attribute", session.<String>get("name"), equalTo("Alice"));
+        assertThat("demoted", store.demoted(), equalTo(0));
+        assertThat("in memory", pool.size(), equalTo(1));
+    }
+
+    @Test public void
+    keepsIdOfDemotedSessionsWhenSaved() {
+        String id = save("name", "Alice");
+        Session session = store.load(id);
+        delorean.travelInTime(TimeUnit.MINUTES.toMillis(11));
+        store.houseKeeping();
+
+        session.put("name", "Bob");
+        assertThat("saved id", store.save(session), equalTo(id));
+        assertThat("saved attribute", store.load(id).<String>get("name"), equalTo("Bob"));
+    }
+
+    @Test public void
+    destroysDemotedSessions() {
+        final String id = save("name", "Alice");
+        delorean.travelInTime(TimeUnit.MINUTES.toMillis(11));
+        store.houseKeeping();
+
+        store.setSessionListener(listener);
+        context.checking(new Expectations() {{
+            oneOf(listener).sessionDropped(id);
+        }});
+        store.destroy(id);
+        assertThat("destroyed session", store.load(id), nullValue());
+    }
+
+    @Test public void
+    dropsDemotedSessionsOnceExpired() {
+        Session data = new Session();
+        data.maxAge((int) TimeUnit.MINUTES.toSeconds(30));
+        final String id = store.save(data);
+        delorean.travelInTime(TimeUnit.MINUTES.toMillis(11));
+        store.houseKeeping();
+
+        store.setSessionListener(listener);
+        context.checking(new Expectations() {{
+            oneOf(listener).sessionDropped(id);
+        }});
+        delorean.travelInTime(TimeUnit.MINUTES.toMillis(31));
+        store.houseKeeping();
+        assertThat("expired session", store.size(), equalTo(0));
+    }
+
+    @Test public void
+    keepsSessionsTouchedWhileBeingDemotedInMemory() throws IOException {
+        final String[] touched = new String[1];
+        store.close();
+        store = new TieredSessionStore(new Slab(folder.newFile("touched"), 4096) {
+            public synchronized long write(byte[] record) throws IOException {
+                if (touched[0] != null) store.save(store.load(touched[0]));
+                return super.write(record);
+            }
+        }, pool, delorean).demoteAfter(10, TimeUnit.MINUTES);
+
+        Session data = new Session();
+        data.maxAge((int) TimeUnit.MINUTES.toSeconds(30));
+        String id = store.save(data);
+        touched[0] = id;
+        delorean.travelInTime(TimeUnit.MINUTES.toMillis(11));
+        store.houseKeeping();
+        touched[0] = null;
+        assertThat("demoted", store.demoted(), equalTo(0));
+
+        delorean.travelInTime(TimeUnit.MINUTES.toMillis(35));
+        store.houseKeeping();
+        assertThat("touched session", store.load(id), notNullValue());
+    }
+
+    @Test public void
+    keepsSessionsTooLargeForDiskInMemory() {
+        save("data", new byte[8192]);
+        delorean.travelInTime(TimeUnit.MINUTES.toMillis(11));
+        store.houseKeeping();
+
+        assertThat("demoted", store.demoted(), equalTo(0));
+        assertThat("in memory", pool.size(), equalTo(1));
+    }
+
+    private String save(String key, Object value) {
+        Session data = new Session();
+        data.put(key, value);
+        return store.save(data);
+    }
+}
@@ -0,0 +1,57 @@
+package com.vtence.molecule.templating;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class EncodingWriterTest {
+
+    Charset utf8 = Charset.forName("UTF-8");
+    PreEncodedText text = new PreEncodedText(utf8);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    String header = "<h1>\u00C6githales</h1>";
+    String footer = "</p>";
+
+    @Test public void
+    writesEncodedText() throws IOException {
+        render("\u00E6");
+
+        assertThat("output", out.toString("UTF-8"), equalTo("<h1>\u00C6githales</h1><p>\u00E6</p>"));
+    }
+
+    @Test public void
+    mixesPreEncodedAndEncodedText() throws IOException {
+        render("Alice");
+        render("Bob");
+        assertThat("learning", text.learning(), equalTo(false));
+
+        out.reset();
+        render("Caf\u00E9");
+        assertThat("output", out.toString("UTF-8"), equalTo("<h1>\u00C6githales</h1><p>Caf\u00E9</p>"));
+    }
+
+    @Test public void
+    doesNotLearnFromRendersThatDoNotComplete() throws IOException {
+        EncodingWriter writer = new EncodingWriter(out, utf8, text);
+        writer.write(header);
+        writer.flush();
+
+        render("Alice");
+        assertThat("learning", text.learning(), equalTo(true));
+    }
+
+    private void render(String value) throws IOException {
+        EncodingWriter writer = new EncodingWriter(out, utf8, text);
+        writer.write(header);
+        writer.write("<p>".toCharArray());
+        writer.write(new String(value));
+        writer.write(footer);
+        writer.done();
+    }
+}
@@ -0,0 +1,193 @@
+package com.vtence.molecule.templating;
+
+import com.samskivert.mustache.Mustache;
+import com.vtence.molecule.Body;
+import com.vtence.molecule.lib.TextBody;
+import com.vtence.molecule.support.Delorean;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+public class FragmentCacheTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    Charset utf8 = Charset.forName("UTF-8");
+    Delorean delorean = new Delorean();
+    FragmentCache cache = new FragmentCache(1024).clock(delorean);
+
+    CountingTemplate tile = new CountingTemplate();
+    Template cachedTile = cache.cache("tile", tile, new FragmentCache.KeyGenerator() {
+        public Object keyFor(Object context) {
+            return ((Product) context).id + ":" + ((Product) context).version;
+        }
+    });
+
+    @Test public void
+    rendersFragmentOnceForSameKey() throws IOException {
+        assertThat("first", render(cachedTile, new Product(1, 1, "Blue Pen")), equalTo("<li>Blue Pen</li>"));
+        assertThat("second", render(cachedTile, new Product(1, 1, "Renamed")), equalTo("<li>Blue Pen</li>"));
+        assertThat("renders", tile.renders, equalTo(1));
+    }
+
+    @Test public void
+    rendersFragmentAgainWhenKeyChanges() throws IOException {
+        render(cachedTile, new Product(1, 1, "Blue Pen"));
+        assertThat("new version", render(cachedTile, new Product(1, 2, "Red Pen")), equalTo("<li>Red Pen</li>"));
+        assertThat("renders", tile.renders, equalTo(2));
+    }
+
+    @Test public void
+    cachesFragmentsPerCharset() throws IOException {
+        render(cachedTile, new Product(1, 1, "Caf\u00E9"));
+        assertThat("latin-1", render(cachedTile, new Product(1, 1, "Caf\u00E9"), "ISO-8859-1"),
+                equalTo("<li>Caf\u00E9</li>"));
+        assertThat("renders", tile.renders, equalTo(2));
+    }
+
+    @Test public void
+    expiresFragmentsAfterTimeToLive() throws IOException {
+        cache.expireAfter(60, SECONDS);
+        render(cachedTile, new Product(1, 1, "Blue Pen"));
+        delorean.travelInTime(SECONDS.toMillis(30));
+        render(cachedTile, new Product(1, 1, "Blue Pen"));
+        assertThat("renders before expiry", tile.renders, equalTo(1));
+
+        delorean.travelInTime(SECONDS.toMillis(61));
+        render(cachedTile, new Product(1, 1, "Blue Pen"));
+        assertThat("renders after expiry", tile.renders, equalTo(2));
+    }
+
+    @Test public void
+    evictsLeastRecentlyUsedFragmentsWhenOverCapacity() {
+        cache = new FragmentCache(10);
+        cache.put("tile", 1, utf8, bytes(4));
+        cache.put("tile", 2, utf8, bytes(4));
+        cache.get("tile", 1, utf8);
+        cache.put("tile", 3, utf8, bytes(4));
+
+        assertThat("least recently used", cache.get("tile", 2, utf8), nullValue());
+        assertThat("recently used", cache.get("tile", 1, utf8), equalTo(bytes(4)));
+        assertThat("count", cache.count(), equalTo(2));
+        assertThat("size", cache.size(), equalTo(8L));
+    }
+
+    @Test public void
+    doesNotCacheFragmentsLargerThanCapacity() {
+        cache = new FragmentCache(10);
+        cache.put("tile", 1, utf8, bytes(11));
+        assertThat("count", cache.count(), equalTo(0));
+    }
+
+    @Test public void
+    invalidatesFragmentsByName() {
+        cache.put("tile", 1, utf8, bytes(4));
+        cache.put("tile", 2, utf8, bytes(4));
+        cache.put("menu", 1, utf8, bytes(4));
+        cache.invalidate("tile");
+
+        assertThat("count", cache.count(), equalTo(1));
+        assertThat("size", cache.size(), equalTo(4L));
+    }
+
+    @Test(expected = IllegalArgumentException.class) public void
+    rejectsFragmentsWithoutKey() throws IOException {
+        Template unkeyed = cache.cache("tile", tile, new FragmentCache.KeyGenerator() {
+            public Object keyFor(Object context) {
+                return null;
+            }
+        });
+        render(unkeyed, new Product(1, 1, "Blue Pen"));
+    }
+
+    @Test public void
+    cachesMustacheSectionsByKeyDerivedFromContext() throws IOException {
+        JMustacheRenderer mustache = new JMustacheRenderer().fromDir(folder.getRoot()).cacheTemplates();
+        write("page", "<nav>{{#menu}}<a>{{user}}</a>{{/menu}}</nav>");
+
+        assertThat("first", renderView(mustache, new Page("admin", "Alice")), equalTo("<nav><a>Alice</a></nav>"));
+        for (int i = 0; i < 3; i++) {
+            assertThat("cached", renderView(mustache, new Page("admin", "Bob")), equalTo("<nav><a>Alice</a></nav>"));
+        }
+        assertThat("other key", renderView(mustache, new Page("guest", "Bob")), equalTo("<nav><a>Bob</a></nav>"));
+    }
+
+    private String renderView(JMustacheRenderer mustache, Page page) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        mustache.render(out, utf8, "page", page);
+        return out.toString("UTF-8");
+    }
+
+    private String render(Template template, Object context) throws IOException {
+        return render(template, context, "UTF-8");
+    }
+
+    private String render(Template template, Object context, String charset) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        template.render(context).writeTo(out, Charset.forName(charset));
+        return out.toString(charset);
+    }
+
+    private byte[] bytes(int count) {
+        return new byte[count];
+    }
+
+    private void write(String name, String content) throws IOException {
+        OutputStream out = new FileOutputStream(new File(folder.getRoot(), name + ".mustache"));
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    public static class Product {
+        final int id;
+        final int version;
+        final String name;
+
+        public Product(int id, int version, String name) {
+            this.id = id;
+            this.version = version;
+            this.name = name;
+        }
+    }
+
+    FragmentCache.Section menu = cache.section("menu", new FragmentCache.KeyGenerator() {
+        public Object keyFor(Object context) {
+            return ((Page) context).role;
+        }
+    });
+
+    public class Page {
+        final Mustache.Lambda menu = FragmentCacheTest.this.menu.of(this);
+        final String role;
+        final String user;
+
+        public Page(String role, String user) {
+            this.role = role;
+            this.user = user;
+        }
+    }
+
+    public static class CountingTemplate implements Template {
+        int renders;
+
+        public Body render(Object context) throws IOException {
+            renders++;
+            return new TextBody().append("<li>" + ((Product) context).name + "</li>");
+        }
+    }
+}
@@ -1,17 +1,33 @@
 package com.vtence.molecule.templating;
 
+import com.samskivert.mustache.Mustache;
+import com.vtence.molecule.support.Delorean;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.xml.sax.SAXException;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
 
 import static com.vtence.molecule.testing.ResourceLocator.locateOnClasspath;
 import static com.vtence.molecule.support.TemplateRenderer.render;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
 
 public class JMustacheRendererTest {
 
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
     JMustacheRenderer mustache = new JMustacheRenderer().fromDir(locateOnClasspath(("views")));
 
     @Test public void
@@ -61,4 +77,134 @@ public class JMustacheRendererTest {
                 .asString(mustache);
         assertThat("view", view, containsString("Hello World"));
     }
-}
\ No newline at end of file
+
+    @Test public void
+    recompilesTemplatesOnEveryRenderByDefault() throws IOException {
+        mustache.fromDir(folder.getRoot());
+        File template = write("greeting", "Hello {{name}}");
+        assertThat("view", render("greeting").with(new Object() { String name = "World"; }).asString(mustache),
+                equalTo("Hello World"));
+
+        rewrite(template, "Goodbye {{name}}");
+        assertThat("view", render("greeting").with(new Object() { String name = "World"; }).asString(mustache),
+                equalTo("Goodbye World"));
+    }
+
+    @Test public void
+    keepsCompiledTemplatesWhenCachingIsEnabled() throws IOException {
+        mustache.fromDir(folder.getRoot()).cacheTemplates();
+        File template = write("greeting", "Hello");
+        assertThat("view", render("greeting").asString(mustache), equalTo("Hello"));
+
+        rewrite(template, "Goodbye");
+        assertThat("view", render("greeting").asString(mustache), equalTo("Hello"));
+    }
+
+    @Test public void
+    recompilesModifiedTemplatesAfterCheckInterval() throws IOException {
+        Delorean delorean = new Delorean();
+        mustache.fromDir(folder.getRoot()).clock(delorean).cacheTemplates(1, SECONDS);
+        File template = write("greeting", "Hello");
+        assertThat("view", render("greeting").asString(mustache), equalTo("Hello"));
+
+        rewrite(template, "Goodbye");
+        assertThat("view before interval", render("greeting").asString(mustache), equalTo("Hello"));
+        delorean.travelInTime(1000);
+        assertThat("view after interval", render("greeting").asString(mustache), equalTo("Goodbye"));
+    }
+
+    @Test public void
+    recompilesTemplatesWhenPartialsAreModified() throws IOException {
+        mustache.fromDir(folder.getRoot()).cacheTemplates(0, SECONDS);
+        write("page", "<p>{{>greeting}}</p>");
+        File partial = write("greeting", "Hello");
+        assertThat("view", render("page").asString(mustache), equalTo("<p>Hello</p>"));
+
+        rewrite(partial, "Goodbye");
+        assertThat("view", render("page").asString(mustache), equalTo("<p>Goodbye</p>"));
+    }
+
+    @Test public void
+    preloadsAllTemplatesFromTemplatesFolder() throws IOException {
+        mustache.fromDir(folder.getRoot());
+        File template = write("greeting", "Hello");
+        folder.newFolder("sub");
+        File nested = write("sub/greeting", "Hi");
+        mustache.preload();
+
+        assertThat("deleted", template.delete() && nested.delete(), equalTo(true));
+        assertThat("view", render("greeting").asString(mustache), equalTo("Hello"));
+        assertThat("nested view", render("sub/greeting").asString(mustache), equalTo("Hi"));
+    }
+
+    @Test public void
+    rendersCachedTemplatesAsBytes() throws IOException {
+        mustache.cacheTemplates();
+        assertThat("first view", renderAsBytes("full", "World", "UTF-8"), containsString("<h3>Hello World</h3>"));
+        assertThat("second view", renderAsBytes("full", "Alice", "UTF-8"), containsString("<h3>Hello Alice</h3>"));
+        assertThat("third view", renderAsBytes("full", "Caf\u00E9", "UTF-8"),
+                containsString("<h3>Hello Caf\u00E9</h3>"));
+        assertThat("latin-1 view", renderAsBytes("full", "\u00C6githales", "ISO-8859-1"),
+                containsString("<h3>Hello \u00C6githales</h3>"));
+    }
+
+    @Test public void
+    rendersAsBytesInCharsetsThatCannotBePreEncoded() throws IOException {
+        mustache.cacheTemplates();
+        for (int i = 0; i < 3; i++) {
+            assertThat("view", renderAsBytes("hello", "World", "UTF-16"), containsString("Hello World"));
+        }
+    }
+
+    @Test public void
+    listsValuesReadByTemplatesAndTheirPartials() throws IOException {
+        mustache.fromDir(folder.getRoot());
+        write("layout", "<title>{{title}}</title>{{! comment }}{{#meta.description}}{{.}}{{/meta.description}}{{>main}}");
+        write("main", "<main>{{{body}}}</main>{{^body}}{{& empty}}{{/body}}{{>main}}");
+
+        assertThat("variables", mustache.variablesOf("layout"),
+                containsInAnyOrder("title", "meta", "body", "empty"));
+    }
+
+    @Test public void
+    cannotListValuesOfTemplatesThatChangeDelimiters() throws IOException {
+        mustache.fromDir(folder.getRoot());
+        write("layout", "{{=<% %>=}}<title><% title %></title>");
+        assertThat("variables", mustache.variablesOf("layout"), nullValue());
+    }
+
+    @Test public void
+    cannotListValuesWhenCompilerUsesOtherDelimiters() throws IOException {
+        mustache = new JMustacheRenderer(Mustache.compiler().withDelims("<% %>")).fromDir(folder.getRoot());
+        write("layout", "<title><% title %></title>");
+        assertThat("variables", mustache.variablesOf("layout"), nullValue());
+    }
+
+    private String renderAsBytes(String view, final String value, String charset) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        mustache.render(out, Charset.forName(charset), view, new Object() { String name = value; });
+        return out.toString(charset);
+    }
+
+    private File write(String name, String content) throws IOException {
+        File file = new File(folder.getRoot(), name + ".mustache");
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private void rewrite(File file, String content) throws IOException {
+        long lastModified = file.lastModified();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        assertThat("touched", file.setLastModified(lastModified + 2000), equalTo(true));
+    }
+}
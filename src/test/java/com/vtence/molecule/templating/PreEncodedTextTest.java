@@ -0,0 +1,69 @@
+package com.vtence.molecule.templating;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+public class PreEncodedTextTest {
+
+    Charset latin1 = Charset.forName("ISO-8859-1");
+    PreEncodedText text = new PreEncodedText(latin1);
+
+    String header = "<h1>caf\u00E9</h1>";
+
+    @Test public void
+    learnsOverTwoRenders() {
+        assertThat("learning initially", text.learning(), equalTo(true));
+        text.learn(written(header));
+        assertThat("learning after first render", text.learning(), equalTo(true));
+        text.learn(written(header));
+        assertThat("learning after second render", text.learning(), equalTo(false));
+    }
+
+    @Test public void
+    encodesTextWrittenOnBothRenders() {
+        text.learn(written(header));
+        text.learn(written(header));
+
+        assertThat("bytes", text.bytesOf(header), equalTo(header.getBytes(latin1)));
+    }
+
+    @Test public void
+    doesNotEncodeTextThatVariesBetweenRenders() {
+        String first = new String("Alice");
+        String second = new String("Alice");
+        text.learn(written(header, first));
+        text.learn(written(header, second));
+
+        assertThat("first value", text.bytesOf(first), nullValue());
+        assertThat("second value", text.bytesOf(second), nullValue());
+    }
+
+    @Test public void
+    matchesTextByIdentity() {
+        text.learn(written(header));
+        text.learn(written(header));
+
+        assertThat("equal text", text.bytesOf(new String(header)), nullValue());
+    }
+
+    @Test public void
+    supportsOnlyCharsetsWithoutByteOrderMarks() {
+        assertThat("utf-8", PreEncodedText.supports(Charset.forName("UTF-8")), equalTo(true));
+        assertThat("latin-1", PreEncodedText.supports(latin1), equalTo(true));
+        assertThat("utf-16", PreEncodedText.supports(Charset.forName("UTF-16")), equalTo(false));
+    }
+
+    private Set<String> written(String... texts) {
+        Set<String> written = Collections.newSetFromMap(new IdentityHashMap<String, Boolean>());
+        Collections.addAll(written, texts);
+        return written;
+    }
+}
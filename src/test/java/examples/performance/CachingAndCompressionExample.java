@@ -42,8 +42,8 @@ public class CachingAndCompressionExample {
         FileServer files = new FileServer(content).header(CACHE_CONTROL, "public; max-age=60");
         // Serve static assets for css, js and image files from the content dir
         StaticAssets assets = new StaticAssets(files).serve("/css", "/js", "/images");
-        // We use Mustache templates with an .html extension
-        Templates templates = new Templates(new JMustacheRenderer().fromDir(content).extension("html"));
+        // We use Mustache templates with an .html extension, compiled once and kept in memory
+        Templates templates = new Templates(new JMustacheRenderer().fromDir(content).extension("html").cacheTemplates());
         final Template index = templates.named("index");
 
               // Add content length header when size of content is known